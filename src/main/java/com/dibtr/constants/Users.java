@@ -1,6 +1,6 @@
 package com.dibtr.constants;
 
-import java.security.SecureRandom;
+import com.dibtr.util.TestDataRandom;
 
 public class Users {
   
@@ -29,8 +29,7 @@ public class Users {
     }
 
     public static User getRandom() {
-      SecureRandom random = new SecureRandom();
-      return values()[random.nextInt(values().length)];
+      return TestDataRandom.pick(values());
     }
   }
 
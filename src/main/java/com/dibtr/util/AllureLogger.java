@@ -1,34 +1,31 @@
 package com.dibtr.util;
 
+import java.util.UUID;
 import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.model.Status;
+import io.qameta.allure.model.StepResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class AllureLogger {
+  private static final Object[] NO_ARGS = new Object[0];
   private Logger logger;
 
   /**
-   * Constructor
-   *
-   * @param clazz class to log against
+   * Levels supported by this logger.
    */
-  public AllureLogger(Class<?> clazz) {
-    logger = LoggerFactory.getLogger(clazz);
+  enum Level {
+    TRACE, INFO, WARN, ERROR
   }
 
   /**
-   * Method which takes a string containing {} and sequentially replaces it with the supplied args
+   * Constructor
    *
-   * @param logMsg the string to replace {} in
-   * @param args the values to replace {} with
-   * @return the reconstructed string
+   * @param clazz class to log against
    */
-  private String replaceArguments(String logMsg, Object... args) {
-    String logString = logMsg;
-    for (int i = 0; i < args.length; i++) {
-      logString = logString.replaceFirst("\\{}", args[i].toString());
-    }
-    return logString;
+  public AllureLogger(Class<?> clazz) {
+    logger = LoggerFactory.getLogger(clazz);
   }
 
   /**
@@ -37,10 +34,7 @@ public class AllureLogger {
    * @param logMsg value to log
    */
   public void trace(String logMsg) {
-    if (logger.isTraceEnabled()) {
-      Allure.step(logMsg);
-      logger.trace(logMsg);
-    }
+    log(Level.TRACE, logMsg, NO_ARGS);
   }
 
   /**
@@ -50,10 +44,7 @@ public class AllureLogger {
    * @param arg value to insert
    */
   public void trace(String logMsg, Object arg) {
-    if (logger.isTraceEnabled()) {
-      Allure.step(logMsg.replaceFirst("\\{}", arg.toString()));
-      logger.trace(logMsg, arg);
-    }
+    log(Level.TRACE, logMsg, new Object[] {arg});
   }
 
   /**
@@ -63,10 +54,7 @@ public class AllureLogger {
    * @param args values to insert
    */
   public void trace(String logMsg, Object... args) {
-    if (logger.isTraceEnabled()) {
-      Allure.step(replaceArguments(logMsg, args));
-      logger.info(logMsg, args);
-    }
+    log(Level.TRACE, logMsg, args);
   }
 
   /**
@@ -75,10 +63,7 @@ public class AllureLogger {
    * @param logMsg value to log
    */
   public void info(String logMsg) {
-    if (logger.isInfoEnabled()) {
-      Allure.step(logMsg);
-      logger.info(logMsg);
-    }
+    log(Level.INFO, logMsg, NO_ARGS);
   }
 
   /**
@@ -88,10 +73,7 @@ public class AllureLogger {
    * @param arg value to insert
    */
   public void info(String logMsg, Object arg) {
-    if (logger.isInfoEnabled()) {
-      Allure.step(logMsg.replaceFirst("\\{}", arg.toString()));
-      logger.info(logMsg, arg);
-    }
+    log(Level.INFO, logMsg, new Object[] {arg});
   }
 
   /**
@@ -101,10 +83,7 @@ public class AllureLogger {
    * @param args values to insert
    */
   public void info(String logMsg, Object... args) {
-    if (logger.isInfoEnabled()) {
-      Allure.step(replaceArguments(logMsg, args));
-      logger.info(logMsg, args);
-    }
+    log(Level.INFO, logMsg, args);
   }
 
   /**
@@ -113,10 +92,7 @@ public class AllureLogger {
    * @param logMsg value to log
    */
   public void warn(String logMsg) {
-    if (logger.isWarnEnabled()) {
-      Allure.step(logMsg);
-      logger.warn(logMsg);
-    }
+    log(Level.WARN, logMsg, NO_ARGS);
   }
 
   /**
@@ -126,10 +102,7 @@ public class AllureLogger {
    * @param arg value to insert
    */
   public void warn(String logMsg, Object arg) {
-    if (logger.isWarnEnabled()) {
-      Allure.step(logMsg.replaceFirst("\\{}", arg.toString()));
-      logger.warn(logMsg, arg);
-    }
+    log(Level.WARN, logMsg, new Object[] {arg});
   }
 
   /**
@@ -139,10 +112,7 @@ public class AllureLogger {
    * @param args values to insert
    */
   public void warn(String logMsg, Object... args) {
-    if (logger.isWarnEnabled()) {
-      Allure.step(replaceArguments(logMsg, args));
-      logger.warn(logMsg, args);
-    }
+    log(Level.WARN, logMsg, args);
   }
 
   /**
@@ -151,10 +121,7 @@ public class AllureLogger {
    * @param logMsg value to log
    */
   public void error(String logMsg) {
-    if (logger.isErrorEnabled()) {
-      Allure.step(logMsg);
-      logger.error(logMsg);
-    }
+    log(Level.ERROR, logMsg, NO_ARGS);
   }
 
   /**
@@ -164,10 +131,7 @@ public class AllureLogger {
    * @param arg value to insert
    */
   public void error(String logMsg, Object arg) {
-    if (logger.isErrorEnabled()) {
-      Allure.step(logMsg.replaceFirst("\\{}", arg.toString()));
-      logger.error(logMsg, arg);
-    }
+    log(Level.ERROR, logMsg, new Object[] {arg});
   }
 
   /**
@@ -177,9 +141,97 @@ public class AllureLogger {
    * @param args values to insert
    */
   public void error(String logMsg, Object... args) {
-    if (logger.isErrorEnabled()) {
-      Allure.step(replaceArguments(logMsg, args));
-      logger.error(logMsg, args);
+    log(Level.ERROR, logMsg, args);
+  }
+
+  /**
+   * Hands the event to the async pipeline when it is enabled, otherwise writes it right away.
+   * Disabled levels return before anything is captured; the step name is only rendered when an
+   * Allure test case is running, slf4j formats its own output.
+   */
+  private void log(Level level, String logMsg, Object[] args) {
+    if (!isEnabled(level)) {
+      return;
+    }
+    args = resolveCaller(args);
+    String parentUuid = Allure.getLifecycle().getCurrentTestCaseOrStep().orElse(null);
+    AsyncLogPipeline pipeline = PipelineHolder.PIPELINE;
+    if (pipeline == null) {
+      write(level, parentUuid, logMsg, args);
+    } else {
+      pipeline.enqueue(new AsyncLogPipeline.LogEvent(this, level, parentUuid, logMsg, args));
+    }
+  }
+
+  /**
+   * Writes the event as an Allure step under the given parent and to slf4j. Called on the test
+   * thread in synchronous mode and on the pipeline's writer thread in async mode.
+   *
+   * @param level - Level - Log level
+   * @param parentUuid - String - Allure test case or step that was current when logging, or null
+   * @param logMsg - String - Message template
+   * @param args - Object[] - Values to insert
+   */
+  void write(Level level, String parentUuid, String logMsg, Object[] args) {
+    if (parentUuid != null) {
+      AllureLifecycle lifecycle = Allure.getLifecycle();
+      String uuid = UUID.randomUUID().toString();
+      lifecycle.startStep(parentUuid, uuid, new StepResult()
+          .setName(LogTemplate.of(logMsg).render(args))
+          .setStatus(Status.PASSED));
+      lifecycle.stopStep(uuid);
+    }
+    switch (level) {
+      case TRACE:
+        logger.trace(logMsg, args);
+        break;
+      case INFO:
+        logger.info(logMsg, args);
+        break;
+      case WARN:
+        logger.warn(logMsg, args);
+        break;
+      default:
+        logger.error(logMsg, args);
+        break;
+    }
+  }
+
+  /**
+   * Replaces a CLog.caller() placeholder with the caller tag. This runs on the logging thread,
+   * the only place where the caller's frames are still on the stack.
+   */
+  private static Object[] resolveCaller(Object[] args) {
+    if (args == null) {
+      return null;
+    }
+    for (int i = 0; i < args.length; i++) {
+      if (CLog.isCaller(args[i])) {
+        Object[] resolved = args.clone();
+        resolved[i] = CallerResolver.resolve();
+        return resolved;
+      }
+    }
+    return args;
+  }
+
+  private boolean isEnabled(Level level) {
+    switch (level) {
+      case TRACE:
+        return logger.isTraceEnabled();
+      case INFO:
+        return logger.isInfoEnabled();
+      case WARN:
+        return logger.isWarnEnabled();
+      default:
+        return logger.isErrorEnabled();
     }
   }
+
+  /**
+   * Lazily resolves the shared pipeline the first time anything is logged.
+   */
+  private static final class PipelineHolder {
+    private static final AsyncLogPipeline PIPELINE = AsyncLogPipeline.getInstance();
+  }
 }
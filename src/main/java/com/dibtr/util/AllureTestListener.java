@@ -2,20 +2,25 @@ package com.dibtr.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.IInvokedMethod;
+import org.testng.IInvokedMethodListener;
 import org.testng.ITestContext;
 import org.testng.ITestListener;
 import org.testng.ITestResult;
 import io.qameta.allure.Attachment;
 
-public class AllureTestListener implements ITestListener {
+public class AllureTestListener implements ITestListener, IInvokedMethodListener {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AllureTestListener.class);
+  private static final long SCREENSHOT_FLUSH_SECONDS = 60;
+  private static final long ARTIFACT_FLUSH_SECONDS = 120;
 
   private static String getTestMethodName(ITestResult iTestResult) {
     return iTestResult.getMethod().getConstructorOrMethod().getName();
@@ -43,6 +48,20 @@ public class AllureTestListener implements ITestListener {
     return message;
   }
 
+  /**
+   * This function is used to append a finished test to the result journal, so the custom report
+   * can be rendered while the suite is still running and survives a crash of the run.
+   *
+   * @param iTestResult - ITestResult - Finished test instance.
+   */
+  private static void journalResult(ITestResult iTestResult) {
+    ResultJournal journal = ResultJournal.getInstance();
+    ReportRow row = CustomizedReport.toReportRow(iTestResult);
+    if (journal != null && row != null) {
+      journal.append(row);
+    }
+  }
+
   @Override
   public void onStart(ITestContext iTestContext) {
     WebDriver driver = null;
@@ -62,6 +81,20 @@ public class AllureTestListener implements ITestListener {
 
   @Override
   public void onFinish(ITestContext iTestContext) {
+    AsyncLogPipeline pipeline = AsyncLogPipeline.getInstance();
+    if (pipeline != null) {
+      pipeline.flushAll();
+    }
+    WaitStatistics.getInstance().logSummary();
+    TypingEngine.getInstance().logSummary();
+    ScreenshotService screenshotService = ScreenshotService.getInstance();
+    screenshotService.flush(SCREENSHOT_FLUSH_SECONDS, TimeUnit.SECONDS);
+    screenshotService.logStatistics();
+    ArtifactUploader artifactUploader = ArtifactUploader.getInstance();
+    if (artifactUploader != null) {
+      artifactUploader.flush(ARTIFACT_FLUSH_SECONDS, TimeUnit.SECONDS);
+      artifactUploader.logStatistics();
+    }
     try {
       File envProps =
           new File(System.getProperty("user.dir") + "/allure-results/environment.properties");
@@ -85,6 +118,8 @@ public class AllureTestListener implements ITestListener {
     System.out.println("*****");
     LOGGER.info("$$$ Pass: {}-{}", iTestResult.getMethod().getMethodName(),
         iTestResult.getMethod().getDescription());
+    journalResult(iTestResult);
+    DriverFactory.releaseTestMobileSession();
   }
 
   @Override
@@ -99,18 +134,42 @@ public class AllureTestListener implements ITestListener {
     } catch (Exception e) {
       LOGGER.error("Got exception in onTestFailure ", e);
     }
+    ScreenshotService.getInstance().capture(getTestMethodName(iTestResult), driver);
     LOGGER.info("Screenshot captured for test case: {} ", getTestMethodName(iTestResult));
-    saveScreenshotPNG(driver);
     saveTextLog(getTestMethodName(iTestResult) + " failed and screenshot taken!");
+    DeviceLogCollector deviceLogCollector = DriverFactory.getDeviceLogCollector();
+    if (deviceLogCollector != null) {
+      deviceLogCollector.attachToAllure("Device log " + getTestMethodName(iTestResult),
+          iTestResult.getStartMillis());
+    }
+    journalResult(iTestResult);
+    DriverFactory.releaseTestMobileSession();
   }
 
   @Override
   public void onTestSkipped(ITestResult iTestResult) {
     LOGGER.info("@@@ Skipped: {} {} {}", iTestResult.getMethod().getMethodName(), "-",
         iTestResult.getMethod().getDescription());
+    journalResult(iTestResult);
+    DriverFactory.releaseTestMobileSession();
   }
 
   @Override
   public void onTestFailedButWithinSuccessPercentage(ITestResult iTestResult) {}
 
+  @Override
+  public void beforeInvocation(IInvokedMethod method, ITestResult testResult) {}
+
+  /**
+   * Flush barrier for async logging. Runs on the test thread right after the test method returns,
+   * before the result listeners let Allure close the test case, so queued steps still find it.
+   */
+  @Override
+  public void afterInvocation(IInvokedMethod method, ITestResult testResult) {
+    AsyncLogPipeline pipeline = AsyncLogPipeline.getInstance();
+    if (pipeline != null) {
+      pipeline.flush();
+    }
+  }
+
 }
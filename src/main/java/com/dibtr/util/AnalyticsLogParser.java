@@ -0,0 +1,291 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class extracts analytics events from device logs without loading the log into memory. The
+ * log is split into whitespace separated tokens; every token containing the event marker ("Sent"
+ * by default) is an event and its payload is the token without the five character "Sent:" prefix
+ * and the trailing delimiter.</br>
+ * </br>
+ * Logs can be read from a Reader, an InputStream or a memory-mapped file. Memory use is bounded by
+ * the read buffer and the longest token kept (maxTokenLength), not by the size of the log; longer
+ * tokens are skipped.
+ */
+public class AnalyticsLogParser {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long MAP_WINDOW = 256L * 1024 * 1024;
+  private static final int PREFIX_LENGTH = 5;
+
+  private final char[] eventMarker;
+  private final int maxTokenLength;
+
+  /**
+   * Instantiates a parser for "Sent" events, skipping tokens longer than 1 MB.
+   */
+  public AnalyticsLogParser() {
+    this("Sent", 1024 * 1024);
+  }
+
+  /**
+   * Instantiates a new parser.
+   *
+   * @param eventMarker - String - ASCII text identifying an event token.
+   * @param maxTokenLength - int - Longest token kept, longer ones are skipped.
+   */
+  public AnalyticsLogParser(String eventMarker, int maxTokenLength) {
+    this.eventMarker = eventMarker.toCharArray();
+    this.maxTokenLength = maxTokenLength;
+  }
+
+  /**
+   * This function is used to stream the events of a log to a callback.
+   *
+   * @param log - Reader - Log to parse, not closed.
+   * @param onEvent - Consumer - Receives the payload of every event in log order.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parse(Reader log, Consumer<String> onEvent) throws IOException {
+    parseSince(log, null, onEvent);
+  }
+
+  /**
+   * This function is used to stream the events of a log to a callback.
+   *
+   * @param log - InputStream - UTF-8 encoded log to parse, not closed.
+   * @param onEvent - Consumer - Receives the payload of every event in log order.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parse(InputStream log, Consumer<String> onEvent) throws IOException {
+    parseSince(log, null, onEvent);
+  }
+
+  /**
+   * This function is used to stream the events of a log file to a callback. The file is memory
+   * mapped window by window instead of being read through the heap.
+   *
+   * @param log - Path - UTF-8 encoded log file.
+   * @param onEvent - Consumer - Receives the payload of every event in log order.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parse(Path log, Consumer<String> onEvent) throws IOException {
+    parseSince(log, null, onEvent);
+  }
+
+  /**
+   * Streams only the events logged after the first token containing the marker, e.g. a test start
+   * marker written to the device log. Without marker every event is streamed.
+   *
+   * @param log - Reader - Log to parse, not closed.
+   * @param marker - String - ASCII text marking where to start, null for the whole log.
+   * @param onEvent - Consumer - Receives the payload of every event after the marker.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parseSince(Reader log, String marker, Consumer<String> onEvent) throws IOException {
+    Tokenizer tokenizer = new Tokenizer(marker, onEvent);
+    char[] buffer = new char[BUFFER_SIZE];
+    int read;
+    while ((read = log.read(buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        tokenizer.accept(buffer[i]);
+      }
+    }
+    tokenizer.endToken();
+  }
+
+  /**
+   * Streams only the events logged after the first token containing the marker.
+   *
+   * @param log - InputStream - UTF-8 encoded log to parse, not closed.
+   * @param marker - String - ASCII text marking where to start, null for the whole log.
+   * @param onEvent - Consumer - Receives the payload of every event after the marker.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parseSince(InputStream log, String marker, Consumer<String> onEvent)
+      throws IOException {
+    Tokenizer tokenizer = new Tokenizer(marker, onEvent);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = log.read(buffer)) != -1) {
+      tokenizer.accept(buffer, read);
+    }
+    tokenizer.endToken();
+  }
+
+  /**
+   * Streams only the events logged after the first token containing the marker.
+   *
+   * @param log - Path - UTF-8 encoded log file, memory mapped.
+   * @param marker - String - ASCII text marking where to start, null for the whole log.
+   * @param onEvent - Consumer - Receives the payload of every event after the marker.
+   * @throws IOException if the log cannot be read.
+   */
+  public void parseSince(Path log, String marker, Consumer<String> onEvent) throws IOException {
+    Tokenizer tokenizer = new Tokenizer(marker, onEvent);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += MAP_WINDOW) {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(MAP_WINDOW, size - position));
+        while (window.hasRemaining()) {
+          int length = Math.min(buffer.length, window.remaining());
+          window.get(buffer, 0, length);
+          tokenizer.accept(buffer, length);
+        }
+      }
+    }
+    tokenizer.endToken();
+  }
+
+  /**
+   * Collects the last N events of a parse in a bounded ring, e.g. new LastEvents(1) for the most
+   * recent event only.
+   */
+  public static final class LastEvents implements Consumer<String> {
+    private final int capacity;
+    private final Deque<String> events;
+
+    public LastEvents(int capacity) {
+      this.capacity = capacity;
+      this.events = new ArrayDeque<>(capacity);
+    }
+
+    @Override
+    public void accept(String event) {
+      if (events.size() == capacity) {
+        events.pollFirst();
+      }
+      events.addLast(event);
+    }
+
+    /**
+     * The collected events, oldest first.
+     *
+     * @return List - Up to capacity events.
+     */
+    public List<String> getEvents() {
+      return new ArrayList<>(events);
+    }
+
+    /**
+     * The most recent event.
+     *
+     * @return String - Last event, null if the log had none.
+     */
+    public String getLast() {
+      return events.peekLast();
+    }
+  }
+
+  /**
+   * Splits characters or bytes on whitespace, the same separators as split("\\s"), keeping at most
+   * maxTokenLength units of the current token. Byte tokens are only decoded when they are an
+   * event.
+   */
+  private final class Tokenizer {
+    private final char[] markerChars;
+    private final Consumer<String> onEvent;
+    private char[] charToken = new char[Math.min(maxTokenLength, BUFFER_SIZE)];
+    private byte[] byteToken = new byte[Math.min(maxTokenLength, BUFFER_SIZE)];
+    private int length;
+    private boolean overflow;
+    private boolean bytes;
+    private boolean started;
+
+    private Tokenizer(String startMarker, Consumer<String> onEvent) {
+      this.markerChars = startMarker == null ? null : startMarker.toCharArray();
+      this.started = startMarker == null;
+      this.onEvent = onEvent;
+    }
+
+    private void accept(char c) {
+      if (isWhitespace(c)) {
+        endToken();
+      } else if (!overflow) {
+        if (length == charToken.length && !grow()) {
+          return;
+        }
+        charToken[length++] = c;
+      }
+    }
+
+    private void accept(byte[] buffer, int count) {
+      bytes = true;
+      for (int i = 0; i < count; i++) {
+        byte b = buffer[i];
+        if (isWhitespace((char) b)) {
+          endToken();
+        } else if (!overflow) {
+          if (length == byteToken.length && !grow()) {
+            continue;
+          }
+          byteToken[length++] = b;
+        }
+      }
+    }
+
+    private boolean grow() {
+      if (length >= maxTokenLength) {
+        overflow = true;
+        length = 0;
+        return false;
+      }
+      int newLength = (int) Math.min((long) length * 2, maxTokenLength);
+      if (bytes) {
+        byte[] grown = new byte[newLength];
+        System.arraycopy(byteToken, 0, grown, 0, length);
+        byteToken = grown;
+      } else {
+        char[] grown = new char[newLength];
+        System.arraycopy(charToken, 0, grown, 0, length);
+        charToken = grown;
+      }
+      return true;
+    }
+
+    private void endToken() {
+      if (length > 0 && !overflow) {
+        if (!started) {
+          started = contains(markerChars);
+        } else if (contains(eventMarker) && length > PREFIX_LENGTH) {
+          onEvent.accept(bytes
+              ? new String(byteToken, PREFIX_LENGTH, length - PREFIX_LENGTH - 1,
+                  StandardCharsets.UTF_8)
+              : new String(charToken, PREFIX_LENGTH, length - PREFIX_LENGTH - 1));
+        }
+      }
+      length = 0;
+      overflow = false;
+    }
+
+    private boolean contains(char[] text) {
+      outer: for (int start = 0; start <= length - text.length; start++) {
+        for (int i = 0; i < text.length; i++) {
+          char c = bytes ? (char) (byteToken[start + i] & 0xFF) : charToken[start + i];
+          if (c != text[i]) {
+            continue outer;
+          }
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private boolean isWhitespace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+  }
+}
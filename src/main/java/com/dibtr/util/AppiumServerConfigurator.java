@@ -2,7 +2,6 @@ package com.dibtr.util;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import io.appium.java_client.ios.IOSDriver;
@@ -10,9 +9,7 @@ import io.appium.java_client.ios.IOSElement;
 
 public class AppiumServerConfigurator implements ServerConfigurator {
   private static final AllureLogger LOGGER = new AllureLogger(AppiumServerConfigurator.class);
-  private Properties configProperties = EnvironmentSettings.getInstance().getProperties();
-  private static ThreadLocal<IOSDriver<IOSElement>> iosDriver = new ThreadLocal<>();
-  private static ThreadLocal<IOSPageDriver> pageDriver = new ThreadLocal<>();
+  private static ThreadLocal<DeviceSession> deviceSession = new ThreadLocal<>();
 
   /**
    * This function is used to Spin up device as per user device requirement & to start test session
@@ -31,43 +28,165 @@ public class AppiumServerConfigurator implements ServerConfigurator {
   @Override
   public void stopDeviceSession() {
     LOGGER.info("Stopping device session");
+    DeviceSession session = deviceSession.get();
+    deviceSession.remove();
+    if (session == null) {
+      LOGGER.warn("No device session is bound to the current thread");
+      return;
+    }
+    session.getPageDriver().getPageSourceCache().logStatistics();
+    if (session.getLogCollector() != null) {
+      session.getLogCollector().close();
+    }
+    MobileSessionPool.PooledSession pooledSession = session.getPooledSession();
     try {
-      iosDriver.get().closeApp();
-      iosDriver.get().quit();
-      LOGGER.info("Stopped device session");
+      session.getDriver().closeApp();
+      if (pooledSession != null) {
+        MobileSessionPool.getInstance().release(pooledSession);
+        LOGGER.info("Returned device session to pool");
+      } else {
+        session.getDriver().quit();
+        LOGGER.info("Stopped device session");
+      }
     } catch (Exception e) {
       LOGGER.error("Failed to close device session{} ", e);
+      MobileSessionPool.getInstance().discard(pooledSession);
+    } finally {
+      if (session.getLease() != null) {
+        session.getLease().release();
+      }
     }
   }
 
   @Override
   public IOSDriver<IOSElement> getWebDriver() {
-    return iosDriver.get();
+    DeviceSession session = deviceSession.get();
+    return session == null ? null : session.getDriver();
   }
 
   @Override
   public IOSPageDriver getPageDriver() {
-    return pageDriver.get();
+    DeviceSession session = deviceSession.get();
+    return session == null ? null : session.getPageDriver();
+  }
+
+  @Override
+  public DeviceLogCollector getDeviceLogCollector() {
+    DeviceSession session = deviceSession.get();
+    return session == null ? null : session.getLogCollector();
+  }
+
+  @Override
+  public DeviceSession detachDeviceSession() {
+    DeviceSession session = deviceSession.get();
+    deviceSession.remove();
+    if (session != null && session.getLease() != null) {
+      session.getLease().detach();
+    }
+    return session;
+  }
+
+  @Override
+  public void attachDeviceSession(DeviceSession session) {
+    if (session.getLease() != null) {
+      session.getLease().transferToCurrentThread();
+    }
+    deviceSession.set(session);
   }
 
   @Override
   public void startDeviceSession(String platformVersion, String deviceName, boolean fullReset) {
+    this.startDeviceSession(DeviceSlot.standalone(platformVersion, deviceName), fullReset);
+  }
+
+  /**
+   * Starts a session on the given device once this thread holds the lease on it, so parallel tests
+   * never drive the same device. The lease is released by stopDeviceSession, or right away if the
+   * session cannot be started. A session still bound to this thread is stopped first, so its lease
+   * is not left behind.
+   */
+  @Override
+  public void startDeviceSession(DeviceSlot slot, boolean fullReset) {
+    if (deviceSession.get() != null) {
+      LOGGER.warn("Stopping the device session still bound to the current thread");
+      stopDeviceSession();
+    }
+    DeviceLeaseRegistry.Lease lease = leaseDevice(slot);
+    if (lease == null) {
+      return;
+    }
+    // Full reset sessions reinstall the app, so they are never shared through the pool.
+    if (fullReset || !isSessionPoolEnabled()) {
+      IOSDriver<IOSElement> driver = createDriver(slot, fullReset);
+      if (driver != null) {
+        deviceSession.set(new DeviceSession(driver, null, lease));
+      }
+    } else {
+      MobileSessionPool.SessionKey key = new MobileSessionPool.SessionKey(
+          slot.getPlatformVersion(), slot.getDeviceName(), slot.getUdid(), slot.getEndpoint(),
+          EnvironmentSettings.config().getString("mobile.appium.bundleId"));
+      MobileSessionPool.PooledSession session = null;
+      try {
+        session = MobileSessionPool.getInstance().acquire(key, () -> createDriver(slot, false));
+        if (session != null) {
+          if (session.isReused()) {
+            session.getDriver().launchApp();
+          }
+          deviceSession.set(new DeviceSession(session.getDriver(), session, lease));
+        }
+      } catch (Exception e) {
+        LOGGER.error("Failed to lease device session from pool.", e);
+        // A session which failed to relaunch the app is in an unknown state, quit it before the
+        // device lease is released below.
+        MobileSessionPool.getInstance().discard(session);
+      }
+    }
+    if (deviceSession.get() == null) {
+      lease.release();
+    }
+  }
+
+  private DeviceLeaseRegistry.Lease leaseDevice(DeviceSlot slot) {
+    long timeout = EnvironmentSettings.config().getLong("device.lease.wait.timeout.seconds", 600);
+    try {
+      DeviceLeaseRegistry.Lease lease = DeviceLeaseRegistry.getInstance()
+          .acquire(slot.getLeaseKey(), timeout, TimeUnit.SECONDS);
+      if (lease == null) {
+        LOGGER.error("Device {} is still in use by another test after {} seconds", slot, timeout);
+      }
+      return lease;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.error("Interrupted while waiting for device {}", slot);
+      return null;
+    }
+  }
+
+  private boolean isSessionPoolEnabled() {
+    return EnvironmentSettings.config().getBoolean("mobile.session.pool.enabled", true);
+  }
+
+  private IOSDriver<IOSElement> createDriver(DeviceSlot slot, boolean fullReset) {
+    ConfigSnapshot config = EnvironmentSettings.config();
     // Set Capabilities
     DesiredCapabilities desiredCapabilities = new DesiredCapabilities();
     desiredCapabilities.setCapability("automationName", "appium");
     desiredCapabilities.setCapability("platformName", "ios");
-    desiredCapabilities.setCapability("platformVersion", platformVersion);
-    desiredCapabilities.setCapability("deviceName", deviceName);
-    desiredCapabilities.setCapability("app",
-        configProperties.getProperty("mobile.device.app.path.local"));
-    desiredCapabilities.setCapability("bundleId",
-        configProperties.getProperty("mobile.appium.bundleId"));
-    desiredCapabilities.setCapability("xcodeOrgId",
-        configProperties.getProperty("mobile.appium.xcodeOrgId"));
+    desiredCapabilities.setCapability("platformVersion", slot.getPlatformVersion());
+    desiredCapabilities.setCapability("deviceName", slot.getDeviceName());
+    desiredCapabilities.setCapability("app", config.getString("mobile.device.app.path.local"));
+    desiredCapabilities.setCapability("bundleId", config.getString("mobile.appium.bundleId"));
+    desiredCapabilities.setCapability("xcodeOrgId", config.getString("mobile.appium.xcodeOrgId"));
     desiredCapabilities.setCapability("xcodeSigningId",
-        configProperties.getProperty("mobile.appium.xcodeSigningId"));
-    // desiredCapabilities.setCapability("udid",
-    // configProperties.getProperty("mobile.device.udid"));
+        config.getString("mobile.appium.xcodeSigningId"));
+    if (slot.getUdid() != null) {
+      desiredCapabilities.setCapability("udid", slot.getUdid());
+    }
+    if (slot.isMatrixSlot()) {
+      // Devices driven from one host need their own WebDriverAgent port
+      desiredCapabilities.setCapability("wdaLocalPort",
+          config.getInt("device.matrix.wda.base.port", 8100) + slot.getIndex());
+    }
     desiredCapabilities.setCapability("showIosLog", true);
     desiredCapabilities.setCapability("showXcodeLog", true);
     if (fullReset) {
@@ -75,19 +194,21 @@ public class AppiumServerConfigurator implements ServerConfigurator {
     }
     URL gridURL = null;
     try {
-      gridURL = new URL(configProperties.getProperty("environment.local.grid.location"));
+      gridURL = new URL(slot.getEndpoint());
     } catch (MalformedURLException e) {
       LOGGER.error("Error: URL Malformed provided for grid URL.", e);
     }
+    IOSDriver<IOSElement> driver = null;
     try {
       LOGGER.info("{} {}", gridURL, desiredCapabilities);
-      iosDriver.set(new IOSDriver<>(gridURL, desiredCapabilities));
-      pageDriver.set(new IOSPageDriver(getWebDriver()));
-      iosDriver.get().manage().timeouts().implicitlyWait(5, TimeUnit.SECONDS);
+      driver = new IOSDriver<>(gridURL, desiredCapabilities);
+      driver.manage().timeouts().implicitlyWait(
+          EnvironmentSettings.config().getInt("mobile.implicit.wait.seconds", 5),
+          TimeUnit.SECONDS);
     } catch (Exception e) {
       LOGGER.error("Used Desired Capabilities {} :", desiredCapabilities);
       LOGGER.error("Failed to start Appium session.", e);
     }
-
+    return driver;
   }
 }
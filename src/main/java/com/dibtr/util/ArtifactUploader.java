@@ -0,0 +1,421 @@
+package com.dibtr.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class uploads results and telemetry artifacts to the dashboard in the background. Test
+ * threads only enqueue; one sender thread groups artifacts into multipart posts by count, size and
+ * time, and retries failed posts with exponential backoff.</br>
+ * </br>
+ * Artifacts are spilled to disk when the queue is full or a batch still fails after the last
+ * retry. Spilled artifacts are sent again once the endpoint accepts batches, also by the next run
+ * if this one ends first. Call flush at the end of the suite.
+ */
+public class ArtifactUploader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactUploader.class);
+  private static final String SPILL_SUFFIX = ".artifact";
+  private static ArtifactUploader instance;
+
+  private final String url;
+  private final BlockingQueue<Artifact> queue;
+  private final int batchSize;
+  private final long batchBytes;
+  private final long lingerMillis;
+  private final int maxAttempts;
+  private final PollingSchedule backoff;
+  private final Path spillDirectory;
+  private final HttpClientProvider httpClientProvider;
+  private final Thread sender;
+  private final Object idle = new Object();
+  private final AtomicLong spillSequence = new AtomicLong();
+  private final AtomicLong pending = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong spilled = new AtomicLong();
+  private volatile long nextSpillAttempt;
+  private volatile boolean running = true;
+
+  /**
+   * Instantiates a new uploader and starts its sender thread. Artifacts left in the spill
+   * directory by an earlier run are picked up.
+   *
+   * @param url - String - Endpoint receiving the multipart posts.
+   * @param queueCapacity - int - Artifacts buffered in memory before enqueue spills to disk.
+   * @param batchSize - int - Maximum artifacts per post.
+   * @param batchBytes - long - A batch is sent once its artifacts reach this size.
+   * @param lingerMillis - long - Maximum time the first artifact of a batch waits for more.
+   * @param maxAttempts - int - Attempts per batch before it is spilled.
+   * @param backoff - PollingSchedule - Delay before retry n, also paces spill resends.
+   * @param spillDirectory - Path - Directory holding spilled artifacts.
+   * @param httpClientProvider - HttpClientProvider - Pooled client used for the posts.
+   */
+  public ArtifactUploader(String url, int queueCapacity, int batchSize, long batchBytes,
+      long lingerMillis, int maxAttempts, PollingSchedule backoff, Path spillDirectory,
+      HttpClientProvider httpClientProvider) {
+    this.url = url;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSize = batchSize;
+    this.batchBytes = batchBytes;
+    this.lingerMillis = lingerMillis;
+    this.maxAttempts = maxAttempts;
+    this.backoff = backoff;
+    this.spillDirectory = spillDirectory;
+    this.httpClientProvider = httpClientProvider;
+    pending.addAndGet(listSpilled(Integer.MAX_VALUE).size());
+    this.sender = new Thread(this::sendLoop, "artifact-uploader");
+    this.sender.setDaemon(true);
+    this.sender.start();
+  }
+
+  /**
+   * Get the shared uploader configured by the artifact.upload.* keys, or null when no upload url
+   * is configured.
+   *
+   * @return ArtifactUploader - The shared uploader, null if uploads are disabled.
+   */
+  public static synchronized ArtifactUploader getInstance() {
+    if (instance == null) {
+      EnvironmentSettings settings = EnvironmentSettings.getInstance();
+      String url = settings.getProperty("artifact.upload.url", "");
+      if (url.trim().isEmpty()) {
+        return null;
+      }
+      instance = new ArtifactUploader(url,
+          Integer.parseInt(settings.getProperty("artifact.upload.queue.capacity", "256")),
+          Integer.parseInt(settings.getProperty("artifact.upload.batch.size", "20")),
+          Long.parseLong(settings.getProperty("artifact.upload.batch.bytes", "5242880")),
+          Long.parseLong(settings.getProperty("artifact.upload.batch.linger.ms", "2000")),
+          Integer.parseInt(settings.getProperty("artifact.upload.retry.attempts", "5")),
+          PollingSchedule.exponential(
+              Long.parseLong(settings.getProperty("artifact.upload.retry.initial.ms", "500")), 2,
+              Long.parseLong(settings.getProperty("artifact.upload.retry.max.ms", "30000"))),
+          Paths.get(settings.getProperty("artifact.upload.spill.directory",
+              "target/artifact-spill")),
+          HttpClientProvider.getInstance());
+      Runtime.getRuntime().addShutdownHook(new Thread(
+          () -> instance.flush(30, TimeUnit.SECONDS), "artifact-uploader-flush"));
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to queue an artifact for upload. It never waits for the network; when
+   * the queue is full the artifact is spilled to disk instead.
+   *
+   * @param name - String - File name reported to the endpoint.
+   * @param contentType - String - MIME type, e.g. image/png.
+   * @param content - byte[] - Artifact content.
+   */
+  public void enqueue(String name, String contentType, byte[] content) {
+    Artifact artifact = new Artifact(name, contentType, content);
+    pending.incrementAndGet();
+    if (!queue.offer(artifact)) {
+      spill(Collections.singletonList(artifact));
+    }
+  }
+
+  /**
+   * This function is used to queue a file for upload, see enqueue(String, String, byte[]).
+   *
+   * @param file - Path - File to upload.
+   * @param contentType - String - MIME type, e.g. image/png.
+   * @throws IOException if the file cannot be read.
+   */
+  public void enqueue(Path file, String contentType) throws IOException {
+    enqueue(file.getFileName().toString(), contentType, Files.readAllBytes(file));
+  }
+
+  /**
+   * Waits until every artifact enqueued so far was delivered, spilled ones included.
+   *
+   * @param timeout - long - Maximum time to wait.
+   * @param unit - TimeUnit - Unit of the timeout.
+   * @return boolean - 'true' if everything was delivered, 'false' if artifacts are still queued
+   *         or spilled.
+   */
+  public boolean flush(long timeout, TimeUnit unit) {
+    nextSpillAttempt = 0;
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (idle) {
+      while (pending.get() > 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0 || !sender.isAlive()) {
+          LOGGER.warn("{} artifacts not uploaded yet, spilled artifacts are kept in {}",
+              pending.get(), spillDirectory);
+          return false;
+        }
+        try {
+          idle.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Flushes and stops the sender thread.
+   *
+   * @param timeout - long - Maximum time to wait for the flush.
+   * @param unit - TimeUnit - Unit of the timeout.
+   */
+  public void shutdown(long timeout, TimeUnit unit) {
+    flush(timeout, unit);
+    running = false;
+    sender.interrupt();
+  }
+
+  /**
+   * Logs delivered, batch, retry and spill counts.
+   */
+  public void logStatistics() {
+    LOGGER.info("Artifacts uploaded {} in {} batches, retries {}, spilled {}, pending {}",
+        delivered.get(), batches.get(), retries.get(), spilled.get(), pending.get());
+  }
+
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  public long getRetries() {
+    return retries.get();
+  }
+
+  public long getSpilled() {
+    return spilled.get();
+  }
+
+  public long getPending() {
+    return pending.get();
+  }
+
+  private void sendLoop() {
+    while (running) {
+      try {
+        List<Artifact> batch = nextBatch();
+        if (!batch.isEmpty()) {
+          if (send(batch, maxAttempts)) {
+            completed(batch.size());
+            resendSpilled();
+          } else {
+            spill(batch);
+          }
+        } else {
+          resendSpilled();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        LOGGER.error("Artifact uploader failed, continuing", e);
+      }
+    }
+  }
+
+  /**
+   * Collects the next batch: waits up to the linger time for a first artifact, then adds more until
+   * the batch is full or the first artifact lingered long enough.
+   */
+  private List<Artifact> nextBatch() throws InterruptedException {
+    List<Artifact> batch = new ArrayList<>(batchSize);
+    Artifact first = queue.poll(lingerMillis, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return batch;
+    }
+    batch.add(first);
+    long bytes = first.content.length;
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    while (batch.size() < batchSize && bytes < batchBytes) {
+      Artifact next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+      bytes += next.content.length;
+    }
+    return batch;
+  }
+
+  /**
+   * Posts the batch as one multipart request, retrying with backoff.
+   *
+   * @return boolean - 'true' once the endpoint accepted the batch.
+   */
+  private boolean send(List<Artifact> batch, int attempts) throws InterruptedException {
+    for (int attempt = 1; attempt <= attempts; attempt++) {
+      MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+      for (Artifact artifact : batch) {
+        builder.addBinaryBody("file", artifact.content, ContentType.parse(artifact.contentType),
+            artifact.name);
+      }
+      HttpPost post = new HttpPost(url);
+      post.setEntity(builder.build());
+      try {
+        httpClientProvider.execute(post, response -> {
+          int status = response.getStatusLine().getStatusCode();
+          EntityUtils.consume(response.getEntity());
+          if (status >= 300) {
+            throw new HttpResponseException(status, response.getStatusLine().getReasonPhrase());
+          }
+          return status;
+        });
+        batches.incrementAndGet();
+        delivered.addAndGet(batch.size());
+        return true;
+      } catch (IOException e) {
+        LOGGER.warn("Upload of {} artifacts failed (attempt {} of {}): {}", batch.size(), attempt,
+            attempts, e.getMessage());
+      }
+      if (attempt < attempts) {
+        retries.incrementAndGet();
+        Thread.sleep(backoff.nextDelayMillis(attempt));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sends spilled artifacts, one batch at a time, while the endpoint accepts them. After a failure
+   * the next attempt is delayed along the backoff schedule.
+   */
+  private void resendSpilled() throws InterruptedException {
+    int failures = 0;
+    while (running && System.currentTimeMillis() >= nextSpillAttempt && queue.isEmpty()) {
+      List<Path> files = listSpilled(batchSize);
+      if (files.isEmpty()) {
+        return;
+      }
+      List<Artifact> batch = new ArrayList<>(files.size());
+      for (Path file : files) {
+        Artifact artifact = readSpilled(file);
+        if (artifact != null) {
+          batch.add(artifact);
+        }
+      }
+      if (!batch.isEmpty() && !send(batch, 1)) {
+        nextSpillAttempt = System.currentTimeMillis() + backoff.nextDelayMillis(++failures);
+        return;
+      }
+      for (Path file : files) {
+        deleteQuietly(file);
+      }
+      completed(files.size());
+    }
+  }
+
+  private void spill(List<Artifact> batch) {
+    for (Artifact artifact : batch) {
+      String fileName = String.format("%013d-%06d%s", System.currentTimeMillis(),
+          spillSequence.incrementAndGet() % 1000000, SPILL_SUFFIX);
+      Path temp = spillDirectory.resolve(fileName + ".tmp");
+      try {
+        Files.createDirectories(spillDirectory);
+        try (OutputStream file = Files.newOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(file)) {
+          out.writeUTF(artifact.name);
+          out.writeUTF(artifact.contentType);
+          out.writeInt(artifact.content.length);
+          out.write(artifact.content);
+        }
+        Files.move(temp, spillDirectory.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+        spilled.incrementAndGet();
+      } catch (IOException e) {
+        LOGGER.error("Unable to spill artifact {}, it is dropped", artifact.name, e);
+        deleteQuietly(temp);
+        completed(1);
+      }
+    }
+  }
+
+  private List<Path> listSpilled(int max) {
+    List<Path> files = new ArrayList<>();
+    if (!Files.isDirectory(spillDirectory)) {
+      return files;
+    }
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(spillDirectory, "*" + SPILL_SUFFIX)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Unable to list spilled artifacts in {}", spillDirectory, e);
+    }
+    Collections.sort(files);
+    return files.size() > max ? files.subList(0, max) : files;
+  }
+
+  private static Artifact readSpilled(Path file) {
+    try (InputStream stream = Files.newInputStream(file);
+        DataInputStream in = new DataInputStream(stream)) {
+      String name = in.readUTF();
+      String contentType = in.readUTF();
+      byte[] content = new byte[in.readInt()];
+      in.readFully(content);
+      return new Artifact(name, contentType, content);
+    } catch (IOException e) {
+      LOGGER.error("Dropping unreadable spilled artifact {}", file, e);
+      return null;
+    }
+  }
+
+  private void completed(int count) {
+    if (pending.addAndGet(-count) <= 0) {
+      synchronized (idle) {
+        idle.notifyAll();
+      }
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to delete {}", file, e);
+    }
+  }
+
+  /**
+   * One artifact waiting for upload.
+   */
+  private static final class Artifact {
+    private final String name;
+    private final String contentType;
+    private final byte[] content;
+
+    private Artifact(String name, String contentType, byte[] content) {
+      this.name = name;
+      this.contentType = contentType;
+      this.content = content;
+    }
+  }
+}
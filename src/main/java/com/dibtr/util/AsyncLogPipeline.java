@@ -0,0 +1,278 @@
+package com.dibtr.util;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class moves AllureLogger output off the test threads. Every producing thread owns a
+ * bounded lock-free ring buffer; one background writer drains all buffers in batches and performs
+ * the Allure step and slf4j calls.</br>
+ * </br>
+ * The Allure test case or step that was current on the producing thread is captured with every
+ * event, so steps end up under the right test UUID even though they are written later from the
+ * writer thread. Test listeners must call flush before Allure closes the test case.
+ */
+public class AsyncLogPipeline {
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static AsyncLogPipeline instance;
+
+  private final List<EventQueue> queues = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<EventQueue> threadQueue = ThreadLocal.withInitial(this::register);
+  private final int capacity;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread writer;
+  private volatile boolean running = true;
+
+  /**
+   * What a producer does when its buffer is full.
+   */
+  public enum OverflowPolicy {
+    /** Wait until the writer has made room. */
+    BLOCK,
+    /** Drop trace events, wait for room for everything else. */
+    DROP_DEBUG,
+    /** Discard the oldest queued event. */
+    DROP_OLDEST
+  }
+
+  /**
+   * Instantiates a new pipeline and starts its writer thread.
+   *
+   * @param capacity - int - Buffer size per producing thread, rounded up to a power of two.
+   * @param batchSize - int - Maximum events drained from one buffer before moving to the next.
+   * @param overflowPolicy - OverflowPolicy - Behaviour when a buffer is full.
+   */
+  public AsyncLogPipeline(int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+    this.capacity = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+    this.batchSize = batchSize;
+    this.overflowPolicy = overflowPolicy;
+    this.writer = new Thread(this::drainLoop, "allure-log-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Get the shared pipeline configured by the environment.automationlogger.async.* keys, or null
+   * when async logging is disabled.
+   *
+   * @return AsyncLogPipeline - The shared pipeline, null in synchronous mode.
+   */
+  public static synchronized AsyncLogPipeline getInstance() {
+    if (instance == null) {
+      EnvironmentSettings settings = EnvironmentSettings.getInstance();
+      String async = settings.getProperty("environment.automationlogger.async", "false");
+      if (!Boolean.parseBoolean(async)) {
+        return null;
+      }
+      instance = new AsyncLogPipeline(
+          Integer.parseInt(settings.getProperty("environment.automationlogger.async.capacity",
+              "1024")),
+          Integer.parseInt(settings.getProperty("environment.automationlogger.async.batch.size",
+              "256")),
+          OverflowPolicy.valueOf(settings
+              .getProperty("environment.automationlogger.async.overflow", "BLOCK").toUpperCase()));
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "allure-log-flush"));
+    }
+    return instance;
+  }
+
+  /**
+   * Queues an event from the calling thread, applying the overflow policy if its buffer is full.
+   *
+   * @param event - LogEvent - Event to write.
+   */
+  void enqueue(LogEvent event) {
+    EventQueue queue = threadQueue.get();
+    while (!queue.offer(event)) {
+      if (overflowPolicy == OverflowPolicy.DROP_OLDEST && queue.dropOldest()) {
+        dropped.incrementAndGet();
+      } else if (overflowPolicy == OverflowPolicy.DROP_DEBUG
+          && event.getLevel() == AllureLogger.Level.TRACE) {
+        dropped.incrementAndGet();
+        return;
+      } else {
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Flush barrier for the calling thread: returns once every event it queued so far is written.
+   */
+  public void flush() {
+    EventQueue queue = threadQueue.get();
+    long target = queue.tail;
+    while (queue.completed.get() < target && writer.isAlive()) {
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+    }
+  }
+
+  /**
+   * Flush barrier for all threads, used at the end of a test context or of the run.
+   */
+  public void flushAll() {
+    for (EventQueue queue : queues) {
+      long target = queue.tail;
+      while (queue.completed.get() < target && writer.isAlive()) {
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Writes everything still queued and stops the writer thread.
+   */
+  public void shutdown() {
+    flushAll();
+    running = false;
+    LockSupport.unpark(writer);
+  }
+
+  /**
+   * Number of events discarded by the overflow policy.
+   *
+   * @return long - Dropped event count.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private EventQueue register() {
+    EventQueue queue = new EventQueue(capacity, Thread.currentThread());
+    queues.add(queue);
+    return queue;
+  }
+
+  private void drainLoop() {
+    while (running) {
+      int drained = 0;
+      for (EventQueue queue : queues) {
+        drained += queue.drain(batchSize);
+        if (queue.isAbandoned()) {
+          queues.remove(queue);
+        }
+      }
+      if (drained == 0) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * One log call captured on the producing thread.
+   */
+  static final class LogEvent {
+    private final AllureLogger logger;
+    private final AllureLogger.Level level;
+    private final String parentUuid;
+    private final String logMsg;
+    private final Object[] args;
+
+    LogEvent(AllureLogger logger, AllureLogger.Level level, String parentUuid, String logMsg,
+        Object[] args) {
+      this.logger = logger;
+      this.level = level;
+      this.parentUuid = parentUuid;
+      this.logMsg = logMsg;
+      this.args = args;
+    }
+
+    AllureLogger.Level getLevel() {
+      return level;
+    }
+
+    void write() {
+      logger.write(level, parentUuid, logMsg, args);
+    }
+  }
+
+  /**
+   * Bounded ring buffer with a single producer (the owning thread) and a single consumer (the
+   * writer). The head is advanced with CAS so the producer can also discard the oldest entry.
+   */
+  private static final class EventQueue {
+    private final AtomicReferenceArray<LogEvent> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final WeakReference<Thread> owner;
+    private volatile long tail;
+
+    private EventQueue(int capacity, Thread owner) {
+      this.slots = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+      this.owner = new WeakReference<>(owner);
+    }
+
+    private boolean offer(LogEvent event) {
+      long currentTail = tail;
+      if (currentTail - head.get() > mask) {
+        return false;
+      }
+      slots.lazySet((int) currentTail & mask, event);
+      tail = currentTail + 1;
+      return true;
+    }
+
+    private boolean dropOldest() {
+      long currentHead = head.get();
+      if (currentHead >= tail) {
+        return false;
+      }
+      LogEvent event = slots.get((int) currentHead & mask);
+      if (head.compareAndSet(currentHead, currentHead + 1)) {
+        release(currentHead, event);
+        completed.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    private int drain(int max) {
+      int count = 0;
+      while (count < max) {
+        long currentHead = head.get();
+        if (currentHead >= tail) {
+          break;
+        }
+        LogEvent event = slots.get((int) currentHead & mask);
+        if (!head.compareAndSet(currentHead, currentHead + 1)) {
+          continue;
+        }
+        release(currentHead, event);
+        try {
+          event.write();
+        } catch (RuntimeException e) {
+          // A failing appender must not kill the writer thread.
+        }
+        completed.incrementAndGet();
+        count++;
+      }
+      return count;
+    }
+
+    /**
+     * Clears a consumed slot so the queue does not keep the event and its arguments reachable. The
+     * producer may already have reused the slot, which the compare-and-set leaves alone.
+     */
+    private void release(long position, LogEvent event) {
+      slots.compareAndSet((int) position & mask, event, null);
+    }
+
+    private boolean isAbandoned() {
+      Thread thread = owner.get();
+      return (thread == null || !thread.isAlive()) && head.get() >= tail;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+package com.dibtr.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * This class keeps warm browsers so that a test leases a running browser instead of paying for
+ * the browser and driver start on every test.</br>
+ * </br>
+ * A browser returned to the pool is reset before it is kept: the alert is dismissed, every window
+ * is replaced by one fresh about:blank window, the cookies of the whole browser are cleared and
+ * the storage of every origin the lease reached is cleared. Selenium 3 only reaches the cookies
+ * of the page it is on, which misses e.g. the cookies a sign-in origin set during a redirect, so
+ * the reset goes through DevTools, see ChromeDevTools. The origins come from the navigation
+ * history of each window and the pages recorded through visited; redirect hops are in neither,
+ * but they run no script and only leave cookies behind. A browser is quit instead of kept when it
+ * has no DevTools, when it reached the configured max-uses, when its reset fails or when it fails
+ * the health check on the next lease, e.g. after a crash.
+ */
+public class BrowserPool {
+  private static final AllureLogger LOGGER = new AllureLogger(BrowserPool.class);
+  private static BrowserPool instance;
+
+  private final Map<String, Deque<PooledBrowser>> idleBrowsers = new ConcurrentHashMap<>();
+  private final Map<WebDriver, PooledBrowser> leasedBrowsers = new IdentityHashMap<>();
+  private final boolean enabled;
+  private final int maxUses;
+  private final int maxIdle;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Instantiates a new browser pool.
+   *
+   * @param enabled - boolean - False to quit every browser on release.
+   * @param maxUses - int - Maximum number of leases served by one browser.
+   * @param maxIdle - int - Maximum number of idle browsers kept per browser name.
+   */
+  public BrowserPool(boolean enabled, int maxUses, int maxIdle) {
+    this.enabled = enabled;
+    this.maxUses = maxUses;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Get the shared browser pool configured from config.properties.
+   *
+   * @return BrowserPool - Shared pool instance.
+   */
+  public static synchronized BrowserPool getInstance() {
+    if (instance == null) {
+      ConfigSnapshot config = EnvironmentSettings.config();
+      instance = new BrowserPool(config.getBoolean("web.browser.pool.enabled", true),
+          config.getInt("web.browser.pool.max.uses", 50),
+          config.getInt("web.browser.pool.max.idle", 4));
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "browser-pool"));
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to lease a browser. An idle browser is reused when it is still healthy,
+   * otherwise the factory is used to start a new one.
+   *
+   * @param browserName - String - Browser name like chrome, browsers are pooled per name.
+   * @param factory - Supplier - Starts a new browser on pool miss.
+   * @return WebDriver - The leased browser, null if the factory failed to start one.
+   */
+  public WebDriver acquire(String browserName, Supplier<WebDriver> factory) {
+    String key = browserName.toLowerCase();
+    if (!enabled) {
+      return factory.get();
+    }
+    Deque<PooledBrowser> idle = idleBrowsers.get(key);
+    PooledBrowser browser;
+    while (idle != null && (browser = idle.pollFirst()) != null) {
+      if (isHealthy(browser)) {
+        hits.incrementAndGet();
+        return lease(browser);
+      }
+      evict(browser, "failed health check");
+    }
+    misses.incrementAndGet();
+    LOGGER.info("No pooled {} browser available, starting a new one", key);
+    WebDriver driver = factory.get();
+    return driver == null ? null : lease(new PooledBrowser(key, driver));
+  }
+
+  /**
+   * This function is used to remember the page a leased browser shows after a navigation, so the
+   * release also clears the storage of a page the navigation history no longer lists, e.g. one
+   * left through location.replace. Browsers not leased from the pool are not asked for their URL.
+   *
+   * @param driver - WebDriver - Leased browser.
+   */
+  public void visited(WebDriver driver) {
+    PooledBrowser browser;
+    synchronized (leasedBrowsers) {
+      browser = leasedBrowsers.get(driver);
+    }
+    if (browser == null) {
+      return;
+    }
+    try {
+      recordOrigin(browser, driver.getCurrentUrl());
+    } catch (WebDriverException e) {
+      // A page which is not known cannot be cleared either
+      browser.untracked = true;
+    }
+  }
+
+  /**
+   * This function is used to hand a browser back. It is reset and kept idle, or quit when it is
+   * not pooled, used up or cannot be reset completely.
+   *
+   * @param driver - WebDriver - Browser returned by acquire.
+   */
+  public void release(WebDriver driver) {
+    PooledBrowser browser = unlease(driver);
+    if (browser == null) {
+      quitQuietly(driver);
+      return;
+    }
+    String resetFailure;
+    if (browser.uses >= maxUses) {
+      evict(browser, "reached " + maxUses + " uses");
+    } else if ((resetFailure = reset(browser)) != null) {
+      evict(browser, resetFailure);
+    } else {
+      Deque<PooledBrowser> idle =
+          idleBrowsers.computeIfAbsent(browser.key, k -> new ConcurrentLinkedDeque<>());
+      if (idle.size() >= maxIdle) {
+        evict(browser, "pool is full");
+      } else {
+        idle.offerFirst(browser);
+      }
+    }
+  }
+
+  /**
+   * This function is used to quit a browser which must not be reused, e.g. after a crash.
+   *
+   * @param driver - WebDriver - Browser returned by acquire.
+   */
+  public void discard(WebDriver driver) {
+    PooledBrowser browser = unlease(driver);
+    if (browser == null) {
+      quitQuietly(driver);
+    } else {
+      evict(browser, "discarded");
+    }
+  }
+
+  /**
+   * Quits every idle browser held by the pool.
+   */
+  public void shutdown() {
+    logStatistics();
+    for (Deque<PooledBrowser> idle : idleBrowsers.values()) {
+      PooledBrowser browser;
+      while ((browser = idle.pollFirst()) != null) {
+        quitQuietly(browser.driver);
+      }
+    }
+  }
+
+  /**
+   * Logs how often leases were served by a warm browser.
+   */
+  public void logStatistics() {
+    long leases = hits.get() + misses.get();
+    LOGGER.info("Browser pool hits {} misses {} evictions {} reuse rate {}%", hits.get(),
+        misses.get(), evictions.get(), leases == 0 ? 0 : Math.round(100.0 * hits.get() / leases));
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private WebDriver lease(PooledBrowser browser) {
+    browser.uses++;
+    browser.origins.clear();
+    browser.untracked = false;
+    synchronized (leasedBrowsers) {
+      leasedBrowsers.put(browser.driver, browser);
+    }
+    return browser.driver;
+  }
+
+  private PooledBrowser unlease(WebDriver driver) {
+    synchronized (leasedBrowsers) {
+      return leasedBrowsers.remove(driver);
+    }
+  }
+
+  /**
+   * Cheap liveness probe, the window handles are answered without touching the page.
+   */
+  private boolean isHealthy(PooledBrowser browser) {
+    try {
+      return !browser.driver.getWindowHandles().isEmpty();
+    } catch (WebDriverException e) {
+      LOGGER.warn("Pooled browser health check failed: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Resets the browser for the next lease.
+   *
+   * @return String - Null once reset, otherwise why the browser cannot be reused.
+   */
+  private String reset(PooledBrowser browser) {
+    WebDriver driver = browser.driver;
+    if (browser.untracked) {
+      return "a page of the lease could not be recorded";
+    }
+    try {
+      ExecutesCdpCommand devTools = ChromeDevTools.of(driver);
+      if (devTools == null) {
+        return "cookies of the whole browser cannot be cleared without DevTools";
+      }
+      try {
+        driver.switchTo().alert().dismiss();
+      } catch (NoAlertPresentException e) {
+        // nothing to dismiss
+      }
+      // A window keeps the sessionStorage and history of its pages, a fresh one has neither
+      Set<String> windows = driver.getWindowHandles();
+      devTools.executeCdpCommand("Target.createTarget",
+          Collections.<String, Object>singletonMap("url", "about:blank"));
+      List<String> fresh = new ArrayList<>(driver.getWindowHandles());
+      fresh.removeAll(windows);
+      if (fresh.size() != 1) {
+        return "no fresh window could be opened";
+      }
+      for (String handle : windows) {
+        driver.switchTo().window(handle);
+        recordOrigin(browser, driver.getCurrentUrl());
+        recordHistory(browser, devTools);
+        driver.close();
+      }
+      driver.switchTo().window(fresh.get(0));
+      devTools.executeCdpCommand("Network.clearBrowserCookies", Collections.emptyMap());
+      for (String origin : browser.origins) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("origin", origin);
+        parameters.put("storageTypes", "all");
+        devTools.executeCdpCommand("Storage.clearDataForOrigin", parameters);
+      }
+      return null;
+    } catch (WebDriverException | ClassCastException e) {
+      LOGGER.warn("Failed to reset pooled browser: {}", e.getMessage());
+      return "reset failed";
+    }
+  }
+
+  /**
+   * Records the origins of every entry in the navigation history of the current window.
+   */
+  private static void recordHistory(PooledBrowser browser, ExecutesCdpCommand devTools) {
+    Object entries = devTools.executeCdpCommand("Page.getNavigationHistory",
+        Collections.emptyMap()).get("entries");
+    if (entries instanceof List) {
+      for (Object entry : (List<?>) entries) {
+        if (entry instanceof Map) {
+          recordOrigin(browser, String.valueOf(((Map<?, ?>) entry).get("url")));
+        }
+      }
+    }
+  }
+
+  private static void recordOrigin(PooledBrowser browser, String url) {
+    String origin = originOf(url);
+    if (origin != null) {
+      browser.origins.add(origin);
+    }
+  }
+
+  private static String originOf(String url) {
+    try {
+      URL parsed = new URL(url);
+      if (!parsed.getProtocol().startsWith("http")) {
+        return null;
+      }
+      return parsed.getProtocol() + "://" + parsed.getHost()
+          + (parsed.getPort() != -1 ? ":" + parsed.getPort() : "");
+    } catch (MalformedURLException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  private void evict(PooledBrowser browser, String reason) {
+    evictions.incrementAndGet();
+    LOGGER.info("Evicting pooled {} browser ({})", browser.key, reason);
+    quitQuietly(browser.driver);
+  }
+
+  private void quitQuietly(WebDriver driver) {
+    if (driver == null) {
+      return;
+    }
+    try {
+      driver.quit();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to quit browser: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * A browser owned by the pool together with its usage bookkeeping.
+   */
+  private static final class PooledBrowser {
+    private final String key;
+    private final WebDriver driver;
+    private final Set<String> origins = new LinkedHashSet<>();
+    private boolean untracked;
+    private int uses;
+
+    private PooledBrowser(String key, WebDriver driver) {
+      this.key = key;
+      this.driver = driver;
+    }
+  }
+}
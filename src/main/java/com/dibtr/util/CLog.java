@@ -15,20 +15,43 @@ public class CLog {
   }
 
   /**
-   * This utility function is used to retrieve calling function name from StackTrace.
+   * Placeholder argument which AllureLogger replaces with the caller tag, resolved only when the
+   * message is actually emitted.
+   */
+  private static final Object CALLER = new Object() {
+    @Override
+    public String toString() {
+      return CallerResolver.resolve();
+    }
+  };
+
+  /**
+   * This utility function is used to retrieve calling function name from the stack, skipping
+   * framework frames.
    * 
    * @return - String - Calling function name.
    */
   public static String getTag() {
-    StringBuilder sb = new StringBuilder(4);
     try {
-      StackTraceElement caller = Thread.currentThread().getStackTrace()[4];
-      sb.append(caller.getMethodName());
+      return CallerResolver.resolve();
     } catch (Exception e) {
       LOGGER.error("Got error to featch caller method name :", e);
-      sb.append(TAG);
+      return TAG;
     }
-    return sb.toString();
   }
 
+  /**
+   * Lazy variant of getTag to be passed as a log argument, e.g.
+   * LOGGER.info("Trying to perform : {}", CLog.caller()). The stack is only walked when the level
+   * is enabled.
+   * 
+   * @return - Object - Caller tag placeholder.
+   */
+  public static Object caller() {
+    return CALLER;
+  }
+
+  static boolean isCaller(Object arg) {
+    return arg == CALLER;
+  }
 }
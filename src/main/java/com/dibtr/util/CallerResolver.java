@@ -0,0 +1,109 @@
+package com.dibtr.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * This class finds the first stack frame outside of the framework, i.e. the test or helper method
+ * that called into the page drivers. On Java 9+ it uses StackWalker so only the frames up to the
+ * caller are walked; on Java 8 it falls back to a full stack trace. Whether a frame's class is a
+ * framework class is decided once per class and cached. The resolved tag itself is not cached per
+ * call site: a page driver line logs on behalf of every test that calls it, so only the frames
+ * above it tell the caller apart. The frames are read through method handles, and only the
+ * class name is read until the caller is found.
+ */
+final class CallerResolver {
+  private static final String DEFAULT_TAG = "App";
+  private static final String[] SKIPPED_PACKAGES =
+      {"com.dibtr.util.", "org.slf4j.", "org.apache.log4j.", "java.", "sun.", "jdk."};
+  private static final Map<String, Boolean> SKIPPED_CLASSES = new ConcurrentHashMap<>();
+  private static final Object WALKER;
+  private static final Method WALK;
+  private static final MethodHandle GET_CLASS_NAME;
+  private static final MethodHandle GET_METHOD_NAME;
+
+  static {
+    Object walker = null;
+    Method walk = null;
+    MethodHandle getClassName = null;
+    MethodHandle getMethodName = null;
+    try {
+      Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+      Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+      walker = walkerClass.getMethod("getInstance").invoke(null);
+      walk = walkerClass.getMethod("walk", Function.class);
+      MethodType frameToString = MethodType.methodType(String.class, Object.class);
+      getClassName = MethodHandles.publicLookup()
+          .unreflect(frameClass.getMethod("getClassName")).asType(frameToString);
+      getMethodName = MethodHandles.publicLookup()
+          .unreflect(frameClass.getMethod("getMethodName")).asType(frameToString);
+    } catch (ReflectiveOperationException e) {
+      // Java 8, resolve() uses Throwable.getStackTrace()
+      walker = null;
+    }
+    WALKER = walker;
+    WALK = walk;
+    GET_CLASS_NAME = getClassName;
+    GET_METHOD_NAME = getMethodName;
+  }
+
+  private CallerResolver() {
+    // Hide implicit default ctor
+  }
+
+  /**
+   * Resolves the calling test or helper method name.
+   *
+   * @return String - Caller method name, "App" if it cannot be determined.
+   */
+  static String resolve() {
+    if (WALKER != null) {
+      try {
+        Function<Stream<Object>, String> firstCaller =
+            frames -> frames.filter(frame -> !isSkippedClass(nameOf(GET_CLASS_NAME, frame)))
+                .findFirst().map(frame -> nameOf(GET_METHOD_NAME, frame)).orElse(DEFAULT_TAG);
+        return (String) WALK.invoke(WALKER, firstCaller);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        return DEFAULT_TAG;
+      }
+    }
+    for (StackTraceElement element : new Throwable().getStackTrace()) {
+      if (!isSkippedClass(element.getClassName())) {
+        return element.getMethodName();
+      }
+    }
+    return DEFAULT_TAG;
+  }
+
+  private static String nameOf(MethodHandle getter, Object frame) {
+    try {
+      return (String) getter.invokeExact(frame);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException("Unable to read stack frame", e);
+    }
+  }
+
+  /**
+   * Whether a frame of the class belongs to the framework and has to be skipped.
+   */
+  private static boolean isSkippedClass(String className) {
+    return SKIPPED_CLASSES.computeIfAbsent(className, CallerResolver::isSkipped);
+  }
+
+  private static boolean isSkipped(String className) {
+    for (String skipped : SKIPPED_PACKAGES) {
+      if (className.startsWith(skipped)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
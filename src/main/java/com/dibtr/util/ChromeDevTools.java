@@ -0,0 +1,91 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.BrowserType;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * This class sends DevTools commands to a chromedriver session. Selenium 3 has no client API for
+ * them, so the command is posted to the goog/cdp/execute endpoint of the session, which
+ * chromedriver runs against the current window.
+ */
+public class ChromeDevTools implements ExecutesCdpCommand {
+  private static final Json JSON = new Json();
+
+  private final String endpoint;
+
+  private ChromeDevTools(URL server, String sessionId) {
+    String base = server.toString();
+    endpoint = (base.endsWith("/") ? base : base + "/") + "session/" + sessionId
+        + "/goog/cdp/execute";
+  }
+
+  /**
+   * This function is used to get the DevTools of a browser.
+   *
+   * @param driver - WebDriver - Browser to talk to.
+   * @return ExecutesCdpCommand - DevTools of the browser, null when it is no Chrome session.
+   */
+  public static ExecutesCdpCommand of(WebDriver driver) {
+    if (driver instanceof ExecutesCdpCommand) {
+      return (ExecutesCdpCommand) driver;
+    }
+    if (!(driver instanceof RemoteWebDriver)) {
+      return null;
+    }
+    RemoteWebDriver remote = (RemoteWebDriver) driver;
+    CommandExecutor executor = remote.getCommandExecutor();
+    if (!(executor instanceof HttpCommandExecutor) || remote.getSessionId() == null
+        || !BrowserType.CHROME.equals(remote.getCapabilities().getBrowserName())) {
+      return null;
+    }
+    return new ChromeDevTools(((HttpCommandExecutor) executor).getAddressOfRemoteServer(),
+        remote.getSessionId().toString());
+  }
+
+  @Override
+  public Map<String, Object> executeCdpCommand(String commandName,
+      Map<String, Object> parameters) {
+    Map<String, Object> command = new HashMap<>();
+    command.put("cmd", commandName);
+    command.put("params", parameters);
+    HttpPost post = new HttpPost(endpoint);
+    post.setEntity(new StringEntity(JSON.toJson(command), ContentType.APPLICATION_JSON));
+    String body;
+    try {
+      body = HttpClientProvider.getInstance().execute(post, response -> {
+        int status = response.getStatusLine().getStatusCode();
+        String content = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+        if (status >= 300) {
+          throw new HttpResponseException(status, content);
+        }
+        return content;
+      });
+    } catch (IOException e) {
+      throw new WebDriverException("DevTools command " + commandName + " failed", e);
+    }
+    Map<String, Object> reply = JSON.toType(body, Json.MAP_TYPE);
+    Object value = reply.get("value");
+    if (!(value instanceof Map)) {
+      return Collections.emptyMap();
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> result = (Map<String, Object>) value;
+    return result;
+  }
+}
@@ -1,139 +1,118 @@
 package com.dibtr.util;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
-import java.util.Random;
-import org.apache.commons.io.FileUtils;
+import java.util.concurrent.CompletableFuture;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.remote.Augmenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.testng.Reporter;
 
 public class CommonUtility {
   private static final Logger LOGGER = LoggerFactory.getLogger(CommonUtility.class);
   private static final String CHAR_LIST = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
-  private int mCount = 0;
-
-  public static String getAnalyticsFilterData(String fullAnalyticsData) {
-    ArrayList<String> onlySentRequests = null;
-    String filteredData = null;
-    try {
-      onlySentRequests = new ArrayList<>();
-      LOGGER.info("Received data from getAnalyticsFilterData ");
-      // Take raw analytics data from logcat to process & separate it by space character.
-      String[] aftersplit = fullAnalyticsData.split("\\s");
-
-      // Here filter space separate data & consider only those data which contains Sent request
-      // information.
-      int i = 0;
-      for (String strLocal : aftersplit) {
-        if (aftersplit[i].contains("Sent")) {
-          onlySentRequests.add(strLocal.substring(5, strLocal.length() - 1));
+  private static final String NUMERIC_CHAR_LIST = "2345678";
+  private static final ResponseHandler<String> RESPONSE_BODY_HANDLER = response -> {
+    StringBuilder result = new StringBuilder();
+    HttpEntity entity = response.getEntity();
+    if (entity != null) {
+      try (BufferedReader rd = new BufferedReader(
+          new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = rd.readLine()) != null) {
+          result.append(line);
         }
-        i++;
       }
-    } catch (Exception e) {
-      LOGGER.error("Got exception while processing getAnalyticsFilterData ", e);
     }
-    if (onlySentRequests != null) {
-      LOGGER.info("Analytics Filter Data {} ", onlySentRequests.get(onlySentRequests.size() - 1));
-      filteredData = onlySentRequests.get(onlySentRequests.size() - 1);
-    }
-    return filteredData;
-  }
+    return result.toString();
+  };
+  private int mCount = 0;
 
+  /**
+   * This function is used to get the payload of the last analytics "Sent" event of a device log.
+   * 
+   * @param fullAnalyticsData - String - Raw device log.
+   * @return String - Last event payload, null if the log has none.
+   */
+  public static String getAnalyticsFilterData(String fullAnalyticsData) {
+    return getAnalyticsFilterData(new StringReader(fullAnalyticsData));
+  }
 
   /**
-   * This method will return the random alphabetic string with the length passed as parameter.
+   * This function is used to get the payload of the last analytics "Sent" event of a device log,
+   * streaming the log instead of holding it in memory.
    * 
-   * @Param length
-   * @returns result
+   * @param deviceLog - Reader - Device log, not closed.
+   * @return String - Last event payload, null if the log has none.
    */
-  public static String getRandomAlphabeticString(int length) {
-    StringBuilder randStr = new StringBuilder();
-    for (int i = 0; i < length; i++) {
-      int number = getRandomNumber();
-      char ch = CHAR_LIST.charAt(number);
-      randStr.append(ch);
+  public static String getAnalyticsFilterData(Reader deviceLog) {
+    LOGGER.info("Received data from getAnalyticsFilterData ");
+    AnalyticsLogParser.LastEvents lastEvent = new AnalyticsLogParser.LastEvents(1);
+    try {
+      new AnalyticsLogParser().parse(deviceLog, lastEvent);
+    } catch (IOException e) {
+      LOGGER.error("Got exception while processing getAnalyticsFilterData ", e);
     }
-    return randStr.toString();
+    LOGGER.info("Analytics Filter Data {} ", lastEvent.getLast());
+    return lastEvent.getLast();
   }
 
   /**
-   * This method will return the random Numeric string with the length passed as parameter.
+   * This function is used to get the payload of the last analytics "Sent" event of a device log
+   * file, which is memory mapped instead of being read into the heap.
    * 
-   * @Param length - int - Length for which want to generate random number string.
-   * @returns result - Random number string.
+   * @param deviceLog - Path - Device log file.
+   * @return String - Last event payload, null if the log has none.
    */
-  public static String getRandomNumericString(int charLength) {
-    ArrayList<Integer> list = new ArrayList<>();
-    int randomNumber = 0;
-    int low = 2;
-    int high = 9;
-    for (int i = 0; i <= charLength; i++) {
-      randomNumber = new Random().nextInt(high - low) + low;
-      list.add(randomNumber);
+  public static String getAnalyticsFilterData(Path deviceLog) {
+    AnalyticsLogParser.LastEvents lastEvent = new AnalyticsLogParser.LastEvents(1);
+    try {
+      new AnalyticsLogParser().parse(deviceLog, lastEvent);
+    } catch (IOException e) {
+      LOGGER.error("Got exception while processing getAnalyticsFilterData ", e);
     }
-    return convertToString(list);
+    LOGGER.info("Analytics Filter Data {} ", lastEvent.getLast());
+    return lastEvent.getLast();
   }
 
+
   /**
-   * This function is used to convert arraylist to String.
+   * This method will return the random alphabetic string with the length passed as parameter.
    * 
-   * @param numbers - Arraylist<Integer> - Random number list to convert into string
-   * @return - random number string.
+   * @Param length
+   * @returns result
    */
-  private static String convertToString(ArrayList<Integer> numbers) {
-    StringBuilder builder = new StringBuilder();
-    for (int number : numbers) {
-      builder.append(number);
-    }
-    builder.setLength(builder.length() - 1);
-    return builder.toString();
+  public static String getRandomAlphabeticString(int length) {
+    return TestDataRandom.fromAlphabet(length, CHAR_LIST);
   }
 
   /**
-   * This method generates random numbers
+   * This method will return the random Numeric string with the length passed as parameter. Digits
+   * are between 2 and 8.
    * 
-   * @return int - random number.
+   * @Param length - int - Length for which want to generate random number string.
+   * @returns result - Random number string.
    */
-  private static int getRandomNumber() {
-    int randomInt = 0;
-    try {
-      Random rand = SecureRandom.getInstanceStrong();
-      randomInt = rand.nextInt(CHAR_LIST.length());
-    } catch (NoSuchAlgorithmException e) {
-      LOGGER.error("Got exception while performing getRandomNumber()", e);
-    }
-    if (randomInt - 1 == -1) {
-      return randomInt;
-    } else {
-      return randomInt - 1;
-    }
+  public static String getRandomNumericString(int charLength) {
+    return TestDataRandom.fromAlphabet(charLength, NUMERIC_CHAR_LIST);
   }
 
   /**
@@ -146,20 +125,20 @@ public class CommonUtility {
   }
 
   /**
-   * This utility function is used to get random number within specified range.
+   * This utility function is used to get random number within specified range. Both ends are
+   * exclusive.
    * 
    * @param startRange - int - Start point of range.
    * @param endRange - int - End point of range.
    * @return - Random number within user specified range.
+   * @throws IllegalArgumentException if no number lies strictly between startRange and endRange.
    */
   public static int getRandomNumberWithinRange(int startRange, int endRange) {
-    int rand = startRange;
-    while (true) {
-      rand = new Random().nextInt(endRange);
-      if (rand > startRange)
-        break;
+    if (endRange - startRange < 2) {
+      throw new IllegalArgumentException(
+          "No number between " + startRange + " and " + endRange + " (both exclusive)");
     }
-    return rand;
+    return TestDataRandom.nextInt(startRange + 1, endRange);
   }
 
   /**
@@ -267,71 +246,18 @@ public class CommonUtility {
    * @return
    */
   public static Properties loadProperties() {
-    Properties testParams = new Properties();
-    try (InputStream input = new FileInputStream("config.properties")) {
-      testParams.load(input);
-    } catch (Exception ex) {
-      LOGGER.error("Got exception while performing loadProperties() ", ex);
-    }
-    updateProperties(testParams);
-    return testParams;
+    return ConfigSnapshot.load(Paths.get("config.properties")).toProperties();
   }
 
   /**
-   * Update current properties with any found in the corresponding environment variables from the
-   * maven command line options.
+   * This function is used to capture a failure screenshot, see ScreenshotService.
+   *
+   * @param testCaseId - String - ID of the test case
+   * @param driver - WebDriver - Driver instance to capture.
+   * @return String - Path to the screenshot, written in the background.
    */
-  private static void updateProperties(Properties testParams) {
-    Enumeration<?> e = testParams.keys();
-    String currentPropValue = "";
-    String currentEnvValue = "";
-    String currentKey = "";
-    while (e.hasMoreElements()) {
-      currentKey = (String) e.nextElement();
-      currentPropValue = System.getProperty(currentKey);
-      currentEnvValue = System.getenv(currentKey);
-      if (currentPropValue != null) {
-        testParams.setProperty(currentKey, currentPropValue);
-      }
-      if (currentEnvValue != null && currentKey.equals("TUNNEL_IDENTIFIER")) {
-        testParams.setProperty(currentKey, currentEnvValue);
-      }
-      LOGGER.info("{} -- {} ", currentKey, testParams.getProperty(currentKey));
-    }
-  }
-
-  /***
-   * captureDesktop
-   * 
-   * @return
-   ***/
   public String captureDesktop(String testCaseId, WebDriver driver) {
-    SimpleDateFormat sdfDate = new SimpleDateFormat("MM-dd-yyyy_HH-mm-ss");
-    Date now = new Date();
-    String strDate = sdfDate.format(now);
-    String fileName = "failImage-" + testCaseId + "_" + strDate + "_.png";
-    String filePath = "target//surefire-reports//" + fileName;
-
-    try {
-      WebDriver augmentedDriver = new Augmenter().augment(driver);
-
-      File screenshot = ((TakesScreenshot) augmentedDriver).getScreenshotAs(OutputType.FILE);
-      FileUtils.copyFile(screenshot, new File(filePath));
-      // This file is for Jenkins
-      FileUtils.copyFile(screenshot,
-          new File("target//surefire-reports//Report Testing Suite//" + fileName));
-
-      String imageURl = filePath.replace("target//surefire-reports//" + fileName, fileName);
-      Reporter.log("\r * screenshot for Test Case: " + testCaseId + " <a href='.//" + imageURl
-          + "' target='_blank' >View Image </a>"
-          + "<div style='height:200px; width: 375px; overflow:scroll'><img src='./" + imageURl
-          + "'></div> \r\n", true);
-    } catch (RuntimeException ex) {
-      LOGGER.error("Got RuntimeException while performing captureDesktop() ", ex);
-    } catch (Exception e) {
-      LOGGER.error("Got exception while performing captureDesktop() ", e);
-    }
-    return filePath;
+    return ScreenshotService.getInstance().capture(testCaseId, driver);
   }
 
   /**
@@ -347,30 +273,38 @@ public class CommonUtility {
   }
 
   /**
-   * Do http post
+   * Do http post on the shared pooled client, see HttpClientProvider.
    * 
    * @param url
    * @param urlParameters
-   * @return
+   * @return Response body, empty if the request failed.
    */
   public String doPost(String url, List<NameValuePair> urlParameters) {
-    StringBuilder result = new StringBuilder();
-    try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
-      HttpPost httppost = new HttpPost(url);
-      // add header
-      httppost.setHeader("User-Agent", "Mozilla/5.0");
-      httppost.setEntity(new UrlEncodedFormEntity(urlParameters));
-      HttpResponse response = httpclient.execute(httppost);
-      BufferedReader rd =
-          new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
-      String line = "";
-      while ((line = rd.readLine()) != null) {
-        result.append(line);
-      }
+    try {
+      return HttpClientProvider.getInstance().execute(formPost(url, urlParameters),
+          RESPONSE_BODY_HANDLER);
     } catch (Exception e) {
       LOGGER.error("Got exception while performing doPost() ", e);
     }
-    return result.toString();
+    return "";
+  }
+
+  /**
+   * Do http post on the shared pooled client without blocking the caller.
+   * 
+   * @param url
+   * @param urlParameters
+   * @return Future of the response body, completed exceptionally if the request failed.
+   */
+  public CompletableFuture<String> doPostAsync(String url, List<NameValuePair> urlParameters) {
+    try {
+      return HttpClientProvider.getInstance().executeAsync(formPost(url, urlParameters),
+          RESPONSE_BODY_HANDLER);
+    } catch (UnsupportedEncodingException e) {
+      CompletableFuture<String> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
   }
 
   /**
@@ -380,21 +314,19 @@ public class CommonUtility {
    * @param builder
    */
   public void doPost(String url, MultipartEntityBuilder builder) {
-    StringBuilder result = new StringBuilder();
-    try (CloseableHttpClient httpclient = HttpClients.createDefault()) {
-      HttpPost httppost = new HttpPost(url);
-      httppost.setHeader("User-Agent", "Mozilla/5.0");
-      HttpEntity entity = builder.build();
-      httppost.setEntity(entity);
-      HttpResponse response = httpclient.execute(httppost);
-      BufferedReader rd =
-          new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
-      String line = "";
-      while ((line = rd.readLine()) != null) {
-        result.append(line);
-      }
+    HttpPost httppost = new HttpPost(url);
+    httppost.setEntity(builder.build());
+    try {
+      HttpClientProvider.getInstance().execute(httppost, RESPONSE_BODY_HANDLER);
     } catch (Exception e) {
       LOGGER.error("Got exception while performing do post ", e);
     }
   }
+
+  private static HttpPost formPost(String url, List<NameValuePair> urlParameters)
+      throws UnsupportedEncodingException {
+    HttpPost httppost = new HttpPost(url);
+    httppost.setEntity(new UrlEncodedFormEntity(urlParameters));
+    return httppost;
+  }
 }
@@ -0,0 +1,199 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is an immutable view of the framework configuration. It is built once from layered
+ * sources, later layers overriding earlier ones:</br>
+ * - the properties file (config.properties),</br>
+ * - environment variables named like a file key listed in environment.variable.overrides, either
+ * verbatim or upper case with '.' replaced by '_' (environment.code or ENVIRONMENT_CODE),</br>
+ * - system properties named like a file key (-Denvironment.code=...).</br>
+ * </br>
+ * Environment variables only override the listed keys, by default TUNNEL_IDENTIFIER, so a CI
+ * variable which happens to share a name with a file key cannot change the configuration.</br>
+ * </br>
+ * Lookups read a plain map that is never modified after construction, so parallel threads read it
+ * without locking. Changes produce a new snapshot, see with.
+ */
+public final class ConfigSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshot.class);
+  private static final String ENVIRONMENT_OVERRIDES = "environment.variable.overrides";
+  private static final String DEFAULT_ENVIRONMENT_OVERRIDES = "TUNNEL_IDENTIFIER";
+  private final Map<String, String> values;
+
+  private ConfigSnapshot(Map<String, String> values) {
+    this.values = Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * This function is used to build a snapshot from a properties file, overridden by environment
+   * variables and system properties.
+   *
+   * @param file - Path - Properties file, a missing file yields an empty file layer.
+   * @return ConfigSnapshot - The layered configuration.
+   */
+  public static ConfigSnapshot load(Path file) {
+    Properties fileProperties = new Properties();
+    try (InputStream input = Files.newInputStream(file)) {
+      fileProperties.load(input);
+    } catch (IOException ex) {
+      LOGGER.error("Got exception while loading configuration from {} ", file, ex);
+    }
+    return layer(fileProperties, System.getenv(), System.getProperties());
+  }
+
+  /**
+   * This function is used to layer environment variables and system properties over the keys of a
+   * properties file. Environment variables only override the keys listed in
+   * environment.variable.overrides.
+   *
+   * @param fileProperties - Properties - Keys and defaults of the file layer.
+   * @param environment - Map - Environment variables.
+   * @param systemProperties - Properties - System properties.
+   * @return ConfigSnapshot - The layered configuration.
+   */
+  public static ConfigSnapshot layer(Properties fileProperties, Map<String, String> environment,
+      Properties systemProperties) {
+    Map<String, String> values = new HashMap<>();
+    Set<String> overridable = new HashSet<>();
+    for (String key : systemProperties.getProperty(ENVIRONMENT_OVERRIDES, fileProperties
+        .getProperty(ENVIRONMENT_OVERRIDES, DEFAULT_ENVIRONMENT_OVERRIDES)).split(",")) {
+      overridable.add(key.trim());
+    }
+    for (String key : fileProperties.stringPropertyNames()) {
+      String value = fileProperties.getProperty(key);
+      String environmentValue = null;
+      if (overridable.contains(key)) {
+        environmentValue = environment.get(key);
+        if (environmentValue == null) {
+          environmentValue = environment.get(key.toUpperCase(Locale.ROOT).replace('.', '_'));
+        }
+      }
+      if (environmentValue != null) {
+        value = environmentValue;
+      }
+      value = systemProperties.getProperty(key, value);
+      values.put(key, value);
+      LOGGER.info("{} -- {} ", key, value);
+    }
+    return new ConfigSnapshot(values);
+  }
+
+  /**
+   * This function is used to derive a snapshot with one key changed; this snapshot is unchanged.
+   *
+   * @param key - String - Configuration key.
+   * @param value - String - New value.
+   * @return ConfigSnapshot - Copy holding the new value.
+   */
+  public ConfigSnapshot with(String key, String value) {
+    Map<String, String> changed = new HashMap<>(values);
+    changed.put(key, value);
+    return new ConfigSnapshot(changed);
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param key - String - Configuration key.
+   * @return String - The value, null if the key is not configured.
+   */
+  public String getString(String key) {
+    return values.get(key);
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param key - String - Configuration key.
+   * @param defaultValue - String - Returned if the key is not configured.
+   * @return String - The value.
+   */
+  public String getString(String key, String defaultValue) {
+    String value = values.get(key);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Get a value as int.
+   *
+   * @param key - String - Configuration key.
+   * @param defaultValue - int - Returned if the key is not configured or empty.
+   * @return int - The value.
+   * @throws NumberFormatException if the value is not an integer.
+   */
+  public int getInt(String key, int defaultValue) {
+    String value = trimmed(key);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  /**
+   * Get a value as long.
+   *
+   * @param key - String - Configuration key.
+   * @param defaultValue - long - Returned if the key is not configured or empty.
+   * @return long - The value.
+   * @throws NumberFormatException if the value is not an integer.
+   */
+  public long getLong(String key, long defaultValue) {
+    String value = trimmed(key);
+    return value == null ? defaultValue : Long.parseLong(value);
+  }
+
+  /**
+   * Get a value as double.
+   *
+   * @param key - String - Configuration key.
+   * @param defaultValue - double - Returned if the key is not configured or empty.
+   * @return double - The value.
+   * @throws NumberFormatException if the value is not a number.
+   */
+  public double getDouble(String key, double defaultValue) {
+    String value = trimmed(key);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  /**
+   * Get a value as boolean, 'true' ignoring case is true and anything else false.
+   *
+   * @param key - String - Configuration key.
+   * @param defaultValue - boolean - Returned if the key is not configured or empty.
+   * @return boolean - The value.
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String value = trimmed(key);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  /**
+   * Copy of the configuration as Properties, for APIs that need one.
+   *
+   * @return Properties - Detached copy, changes are not reflected in the snapshot.
+   */
+  public Properties toProperties() {
+    Properties properties = new Properties();
+    properties.putAll(values);
+    return properties;
+  }
+
+  private String trimmed(String key) {
+    String value = values.get(key);
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+    return value.trim();
+  }
+}
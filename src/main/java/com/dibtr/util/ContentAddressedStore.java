@@ -0,0 +1,206 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class stores files under the SHA-256 digest of their content, so identical artifacts (the
+ * same error dialog captured across retries and devices) are kept once.</br>
+ * </br>
+ * Entries are written to a temporary file in the store directory and then published under their
+ * digest name in one atomic step, so parallel threads or forks storing the same content never
+ * expose a partial file.
+ */
+public class ContentAddressedStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedStore.class);
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Path root;
+  private final String suffix;
+  private final Set<String> known = ConcurrentHashMap.newKeySet();
+  private final AtomicLong stored = new AtomicLong();
+  private final AtomicLong deduplicated = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  /**
+   * Instantiates a new store.
+   *
+   * @param root - Path - Directory holding the entries.
+   * @param suffix - String - Appended to the digest to form the file name, e.g. ".png".
+   */
+  public ContentAddressedStore(Path root, String suffix) {
+    this.root = root;
+    this.suffix = suffix;
+  }
+
+  /**
+   * This function is used to compute the hex encoded SHA-256 digest of the content.
+   *
+   * @param content - byte[] - Content to hash.
+   * @return String - 64 character lower case digest.
+   */
+  public static String digest(byte[] content) {
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("SHA-256").digest(content);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    char[] hex = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Location of the entry with the given digest, whether it is stored yet or not.
+   *
+   * @param digest - String - Content digest.
+   * @return Path - Entry path.
+   */
+  public Path resolve(String digest) {
+    return root.resolve(digest + suffix);
+  }
+
+  /**
+   * This function is used to store content under its digest unless it is stored already.
+   *
+   * @param digest - String - Digest of the content, see digest(byte[]).
+   * @param content - byte[] - Content to store.
+   * @return Path - Entry path.
+   * @throws IOException if the entry cannot be written.
+   */
+  public Path put(String digest, byte[] content) throws IOException {
+    Path target = resolve(digest);
+    if (isStored(digest, target, content.length)) {
+      return target;
+    }
+    Path temp = temporary(digest);
+    try {
+      Files.write(temp, content);
+      commit(digest, temp, target, content.length);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return target;
+  }
+
+  /**
+   * This function is used to add an existing file to the store without writing its bytes again.
+   * The entry is a hard link to the source, falling back to a symbolic link, then to a copy.
+   *
+   * @param digest - String - Digest of the source content.
+   * @param source - Path - File holding the content.
+   * @return Path - Entry path.
+   * @throws IOException if the entry cannot be created.
+   */
+  public Path putFile(String digest, Path source) throws IOException {
+    Path target = resolve(digest);
+    long size = Files.size(source);
+    if (isStored(digest, target, size)) {
+      return target;
+    }
+    Path temp = temporary(digest);
+    try {
+      link(source, temp);
+      commit(digest, temp, target, size);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return target;
+  }
+
+  public long getStored() {
+    return stored.get();
+  }
+
+  public long getDeduplicated() {
+    return deduplicated.get();
+  }
+
+  public long getBytesSaved() {
+    return bytesSaved.get();
+  }
+
+  private boolean isStored(String digest, Path target, long size) {
+    if (known.contains(digest) || Files.exists(target)) {
+      known.add(digest);
+      deduplicated.incrementAndGet();
+      bytesSaved.addAndGet(size);
+      return true;
+    }
+    return false;
+  }
+
+  private Path temporary(String digest) throws IOException {
+    Files.createDirectories(root);
+    return root.resolve(digest + "." + UUID.randomUUID() + ".tmp");
+  }
+
+  /**
+   * Publishes the temporary file under its digest name. A hard link never replaces an existing
+   * entry, so links other stores made to the first copy stay valid; file systems without hard
+   * links fall back to an atomic rename.
+   */
+  private void commit(String digest, Path temp, Path target, long size) throws IOException {
+    try {
+      try {
+        Files.createLink(target, temp);
+      } catch (FileAlreadyExistsException e) {
+        throw e;
+      } catch (FileSystemException | UnsupportedOperationException e) {
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      }
+      stored.incrementAndGet();
+    } catch (FileAlreadyExistsException e) {
+      // Another writer stored the same content first.
+      deduplicated.incrementAndGet();
+      bytesSaved.addAndGet(size);
+    }
+    known.add(digest);
+  }
+
+  /**
+   * Makes a file available at a second location without writing it again: a hard link, falling
+   * back to a relative symbolic link, then to a copy.
+   *
+   * @param source - Path - Existing file.
+   * @param link - Path - Location to create, replaced if it exists.
+   * @throws IOException if not even a copy can be made.
+   */
+  static void link(Path source, Path link) throws IOException {
+    Files.deleteIfExists(link);
+    try {
+      Files.createLink(link, source);
+      return;
+    } catch (FileSystemException | UnsupportedOperationException e) {
+      LOGGER.trace("Hard link to {} not possible: {}", source, e.getMessage());
+    }
+    try {
+      Path parent = link.toAbsolutePath().getParent();
+      Files.createSymbolicLink(link, parent.relativize(source.toAbsolutePath()));
+      return;
+    } catch (FileSystemException | UnsupportedOperationException e) {
+      LOGGER.trace("Symbolic link to {} not possible: {}", source, e.getMessage());
+    }
+    Files.copy(source, link, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
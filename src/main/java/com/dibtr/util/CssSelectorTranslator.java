@@ -0,0 +1,261 @@
+package com.dibtr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openqa.selenium.InvalidSelectorException;
+
+/**
+ * This class translates the CSS selectors tests commonly use into XPath, for drivers that search a
+ * parsed DOM. Supported are selector groups (a, b), the descendant, child (&gt;), adjacent (+)
+ * and sibling (~) combinators, type and universal selectors, #id, .class, attribute selectors
+ * ([a], [a=v], [a~=v], [a|=v], [a^=v], [a$=v], [a*=v]) and the pseudo classes first-child,
+ * last-child, nth-child(n), checked, disabled and enabled.
+ */
+final class CssSelectorTranslator {
+  private final String css;
+  private int position;
+
+  private CssSelectorTranslator(String css) {
+    this.css = css;
+  }
+
+  /**
+   * This function is used to translate a selector.
+   *
+   * @param css - String - CSS selector.
+   * @param relative - boolean - True to search below a context element instead of the document.
+   * @return String - Equivalent XPath expression.
+   * @throws InvalidSelectorException if the selector uses unsupported syntax.
+   */
+  static String toXPath(String css, boolean relative) {
+    return new CssSelectorTranslator(css.trim()).translate(relative ? ".//" : "//");
+  }
+
+  private String translate(String root) {
+    List<String> groups = new ArrayList<>();
+    StringBuilder xpath = new StringBuilder(root);
+    boolean expectStep = true;
+    while (position < css.length()) {
+      char c = css.charAt(position);
+      if (c == ',') {
+        position++;
+        groups.add(finish(xpath, expectStep));
+        xpath = new StringBuilder(root);
+        expectStep = true;
+        skipWhitespace();
+      } else if (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~') {
+        skipWhitespace();
+        char combinator = position < css.length() ? css.charAt(position) : ',';
+        if (combinator == ',') {
+          continue;
+        }
+        if (combinator == '>' || combinator == '+' || combinator == '~') {
+          position++;
+          skipWhitespace();
+        } else {
+          combinator = ' ';
+        }
+        if (expectStep) {
+          throw invalid("combinator without a preceding selector");
+        }
+        xpath.append(compound(combinator));
+      } else {
+        xpath.append(compound(null));
+        expectStep = false;
+      }
+    }
+    groups.add(finish(xpath, expectStep));
+    return String.join(" | ", groups);
+  }
+
+  private String finish(StringBuilder xpath, boolean expectStep) {
+    if (expectStep) {
+      throw invalid("empty selector");
+    }
+    return xpath.toString();
+  }
+
+  /**
+   * Translates one compound selector, e.g. input.big[name=q], reached through the given
+   * combinator (null for the first compound of a group).
+   */
+  private String compound(Character combinator) {
+    int start = position;
+    String tag = "*";
+    if (position < css.length() && (css.charAt(position) == '*')) {
+      position++;
+    } else if (position < css.length() && isIdentifier(css.charAt(position))) {
+      tag = identifier().toLowerCase();
+    }
+    StringBuilder predicates = new StringBuilder();
+    while (position < css.length()) {
+      char c = css.charAt(position);
+      if (c == '#') {
+        position++;
+        predicates.append("[@id=").append(literal(identifier())).append(']');
+      } else if (c == '.') {
+        position++;
+        predicates.append(containsWord("@class", identifier()));
+      } else if (c == '[') {
+        position++;
+        predicates.append(attribute());
+      } else if (c == ':') {
+        position++;
+        predicates.append(pseudoClass());
+      } else {
+        break;
+      }
+    }
+    if (position == start) {
+      throw invalid("unexpected character '" + current() + "'");
+    }
+    if (combinator == null || combinator == ' ') {
+      return (combinator == null ? "" : "//") + tag + predicates;
+    }
+    if (combinator == '>') {
+      return "/" + tag + predicates;
+    }
+    if (combinator == '~') {
+      return "/following-sibling::" + tag + predicates;
+    }
+    return "/following-sibling::*[1]" + ("*".equals(tag) ? "" : "[self::" + tag + "]")
+        + predicates;
+  }
+
+  private String attribute() {
+    skipWhitespace();
+    String name = "@" + identifier();
+    skipWhitespace();
+    char c = current();
+    if (c == ']') {
+      position++;
+      return "[" + name + "]";
+    }
+    String operator;
+    if (c == '=') {
+      operator = "=";
+      position++;
+    } else {
+      operator = css.substring(position, Math.min(position + 2, css.length()));
+      position += 2;
+    }
+    skipWhitespace();
+    String value = value();
+    skipWhitespace();
+    if (current() != ']') {
+      throw invalid("unterminated attribute selector");
+    }
+    position++;
+    switch (operator) {
+      case "=":
+        return "[" + name + "=" + literal(value) + "]";
+      case "~=":
+        return containsWord(name, value);
+      case "|=":
+        return "[" + name + "=" + literal(value) + " or starts-with(" + name + ", "
+            + literal(value + "-") + ")]";
+      case "^=":
+        return "[starts-with(" + name + ", " + literal(value) + ")]";
+      case "$=":
+        return "[substring(" + name + ", string-length(" + name + ") - " + value.length()
+            + " + 1) = " + literal(value) + "]";
+      case "*=":
+        return "[contains(" + name + ", " + literal(value) + ")]";
+      default:
+        throw invalid("unsupported attribute operator " + operator);
+    }
+  }
+
+  private String pseudoClass() {
+    String name = identifier();
+    switch (name) {
+      case "first-child":
+        return "[not(preceding-sibling::*)]";
+      case "last-child":
+        return "[not(following-sibling::*)]";
+      case "checked":
+        return "[@checked or @selected]";
+      case "disabled":
+        return "[@disabled]";
+      case "enabled":
+        return "[not(@disabled)]";
+      case "nth-child":
+        int close = css.indexOf(')', position);
+        if (current() != '(' || close < 0) {
+          throw invalid("nth-child needs an index");
+        }
+        String index = css.substring(position + 1, close).trim();
+        position = close + 1;
+        try {
+          return "[count(preceding-sibling::*) = " + (Integer.parseInt(index) - 1) + "]";
+        } catch (NumberFormatException e) {
+          throw invalid("only numeric nth-child indexes are supported");
+        }
+      default:
+        throw invalid("unsupported pseudo class :" + name);
+    }
+  }
+
+  private String value() {
+    char quote = current();
+    if (quote != '"' && quote != '\'') {
+      return identifier();
+    }
+    int end = css.indexOf(quote, position + 1);
+    if (end < 0) {
+      throw invalid("unterminated string");
+    }
+    String value = css.substring(position + 1, end);
+    position = end + 1;
+    return value;
+  }
+
+  private String identifier() {
+    int start = position;
+    while (position < css.length() && isIdentifier(css.charAt(position))) {
+      position++;
+    }
+    if (start == position) {
+      throw invalid("identifier expected");
+    }
+    return css.substring(start, position);
+  }
+
+  private char current() {
+    return position < css.length() ? css.charAt(position) : '\0';
+  }
+
+  private void skipWhitespace() {
+    while (position < css.length() && Character.isWhitespace(css.charAt(position))) {
+      position++;
+    }
+  }
+
+  private InvalidSelectorException invalid(String reason) {
+    return new InvalidSelectorException(
+        "Unsupported CSS selector '" + css + "' at " + position + ": " + reason);
+  }
+
+  private static boolean isIdentifier(char c) {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+  }
+
+  private static String containsWord(String attribute, String word) {
+    return "[contains(concat(' ', normalize-space(" + attribute + "), ' '), " + literal(" " + word
+        + " ") + ")]";
+  }
+
+  /**
+   * Quotes a string as XPath literal; XPath 1.0 has no escapes, so text holding both quote kinds
+   * is built with concat.
+   */
+  static String literal(String value) {
+    if (value.indexOf('\'') < 0) {
+      return "'" + value + "'";
+    }
+    if (value.indexOf('"') < 0) {
+      return "\"" + value + "\"";
+    }
+    return "concat('" + value.replace("'", "', \"'\", '") + "')";
+  }
+}
@@ -1,21 +1,14 @@
 package com.dibtr.util;
 
-import static java.util.stream.Collectors.toList;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.IReporter;
@@ -27,93 +20,121 @@ import org.testng.xml.XmlSuite;
 
 public class CustomizedReport implements IReporter {
   private static final Logger LOGGER = LoggerFactory.getLogger(CustomizedReport.class);
-  private Properties testParams = EnvironmentSettings.getInstance().getProperties();
   private static final String NA = "NA";
   private static final String REASON = "reason";
   private static final String REPORT_LINK = "reportLink";
   private static final String VISUAL_REPORT_LINK = "visualReportLink";
   private static final String TEST_STATUS = "testStatus";
-  private static final String ROW_TEMPLATE =
-      "<tr class=\"%s\"><td>%s</td><td>%s</td><td>%s</td><td>%s</td><td>%s</td><td>%s</td><td>%s</td></tr>";
+  private static final long ARTIFACT_FLUSH_SECONDS = 120;
 
   /**
    * This function is implementation of generateReport function from IReporter interface. It will be
-   * invoked by the CustomizedReport at the time of report generation.
+   * invoked by the CustomizedReport at the time of report generation. Rows are streamed to the
+   * report file as they are produced. When this run fed the result journal the report is replayed
+   * from it, so it matches what ReportRenderer shows mid-run; otherwise the suites are walked.
+   * When artifact uploads are configured the report and the journal are sent to the dashboard.
    */
   public void generateReport(List<XmlSuite> xmlSuites, List<ISuite> suites,
       String outputDirectory) {
 
+    ResultJournal journal = ResultJournal.getInstance();
+    if (journal != null && journal.isActive()) {
+      try {
+        ReportRenderer.render(journal.getPath(), getReportPath());
+      } catch (IOException | SecurityException e) {
+        LOGGER.error("ERROR : An exception was thrown while replaying the result journal.", e);
+      }
+      uploadReport(journal.getPath());
+      return;
+    }
     String reportTemplate = initReportTemplate();
-
-    String appVersionNumber = "<header><center><b>" + "Build Type ::"
-        + testParams.getProperty("application.build.type") + " Application Build Version :: "
-        + testParams.getProperty("environment.application.build") + " Execution Environment "
-        + testParams.getProperty("environment.code") + "</b></center></header>";
-    reportTemplate = appVersionNumber.concat(reportTemplate);
-    final String body = suites.stream().flatMap(suiteToResults()).collect(Collectors.joining());
-    reportTemplate = reportTemplate.replaceFirst("</tbody>", String.format("%s</tbody>", body));
-    try {
-      saveReportTemplate(reportTemplate);
-    } catch (IOException e) {
+    if (reportTemplate == null) {
+      return;
+    }
+    try (StreamingReportWriter reportWriter =
+        new StreamingReportWriter(getReportPath(), reportTemplate, ReportRenderer.buildHeader())) {
+      for (ISuite suite : suites) {
+        for (ISuiteResult suiteResult : suite.getResults().values()) {
+          ITestContext testContext = suiteResult.getTestContext();
+          writeRows(reportWriter, testContext.getFailedTests().getAllResults());
+          writeRows(reportWriter, testContext.getPassedTests().getAllResults());
+          writeRows(reportWriter, testContext.getSkippedTests().getAllResults());
+        }
+      }
+    } catch (IOException | SecurityException e) {
       LOGGER.error("ERROR : An exception was thrown while writing custom report to filesystem.", e);
     }
+    uploadReport(null);
   }
 
-  private Function<ISuite, Stream<? extends String>> suiteToResults() {
-    return suite -> suite.getResults().entrySet().stream().flatMap(resultsToRows(suite));
-  }
-
-  private Function<Map.Entry<String, ISuiteResult>, Stream<? extends String>> resultsToRows(
-      ISuite suite) {
-    return e -> {
-      ITestContext testContext = e.getValue().getTestContext();
-      Set<ITestResult> failedTests = testContext.getFailedTests().getAllResults();
-      Set<ITestResult> passedTests = testContext.getPassedTests().getAllResults();
-      Set<ITestResult> skippedTests = testContext.getSkippedTests().getAllResults();
-      String suiteName = suite.getName();
-      return Stream.of(failedTests, passedTests, skippedTests)
-          .flatMap(results -> generateReportRows(e.getKey(), suiteName, results).stream());
-    };
+  /**
+   * Sends the report, and the journal it was replayed from, through the ArtifactUploader and
+   * waits for the upload. Nothing is sent when no artifact.upload.url is configured.
+   *
+   * @param journalPath - Path - Journal the report was replayed from, null if none.
+   */
+  private void uploadReport(Path journalPath) {
+    ArtifactUploader artifactUploader = ArtifactUploader.getInstance();
+    if (artifactUploader == null) {
+      return;
+    }
+    try {
+      Path report = getReportPath();
+      if (Files.exists(report)) {
+        artifactUploader.enqueue(report.getFileName().toString(), "text/html",
+            Files.readAllBytes(report));
+      }
+      if (journalPath != null && Files.exists(journalPath)) {
+        artifactUploader.enqueue(journalPath.getFileName().toString(),
+            "text/tab-separated-values", Files.readAllBytes(journalPath));
+      }
+    } catch (IOException e) {
+      LOGGER.error("ERROR : Unable to read the report for upload.", e);
+    }
+    artifactUploader.flush(ARTIFACT_FLUSH_SECONDS, TimeUnit.SECONDS);
   }
 
-  private List<String> generateReportRows(String testName, String suiteName,
-      Set<ITestResult> allTestResults) {
-    return allTestResults.stream().map(testResultToResultRow(testName, suiteName))
-        .collect(toList());
+  private void writeRows(StreamingReportWriter reportWriter, Set<ITestResult> testResults)
+      throws IOException {
+    for (ITestResult testResult : testResults) {
+      ReportRow row = toReportRow(testResult);
+      if (row != null) {
+        reportWriter.writeRow(row);
+      }
+    }
   }
 
-  private Function<ITestResult, String> testResultToResultRow(String testName, String suiteName) {
-    return testResult -> {
-      switch (testResult.getStatus()) {
-        case ITestResult.FAILURE:
-          return String.format(ROW_TEMPLATE, "danger", this.getDeviceName(testResult),
-              this.getTestCaseID(testResult), this.getTestCaseName(testResult),
-              this.getTestResultStatus(testResult), this.getFailureReason(testResult),
-              this.getPerfectoReportLink(testResult), this.getAppliToolsReportLink(testResult));
-
-        case ITestResult.SUCCESS:
-          return String.format(ROW_TEMPLATE, "success", this.getDeviceName(testResult),
-              this.getTestCaseID(testResult), this.getTestCaseName(testResult),
-              this.getTestResultStatus(testResult), this.getFailureReason(testResult),
-              this.getPerfectoReportLink(testResult), this.getAppliToolsReportLink(testResult));
-
-        case ITestResult.SKIP:
-          return String.format(ROW_TEMPLATE, "warning", this.getDeviceName(testResult),
-              this.getTestCaseID(testResult), this.getTestCaseName(testResult),
-              this.getTestResultStatus(testResult), this.getFailureReason(testResult),
-              this.getPerfectoReportLink(testResult), this.getAppliToolsReportLink(testResult));
-
-        default:
-          return "";
-      }
-    };
+  /**
+   * This function is used to convert a finished test into a report row.
+   *
+   * @param testResult - ITestResult - Executed test instance.
+   * @return ReportRow - Row for the report, null for a test that has not finished.
+   */
+  static ReportRow toReportRow(ITestResult testResult) {
+    String rowClass;
+    switch (testResult.getStatus()) {
+      case ITestResult.FAILURE:
+        rowClass = "danger";
+        break;
+      case ITestResult.SUCCESS:
+        rowClass = "success";
+        break;
+      case ITestResult.SKIP:
+        rowClass = "warning";
+        break;
+      default:
+        return null;
+    }
+    return new ReportRow(rowClass, getDeviceName(testResult), getTestCaseID(testResult),
+        getTestCaseName(testResult), getTestResultStatus(testResult), getFailureReason(testResult),
+        getPerfectoReportLink(testResult), getAppliToolsReportLink(testResult));
   }
 
   private String initReportTemplate() {
     String template = null;
     byte[] reportTemplate;
     try {
-      reportTemplate = Files.readAllBytes(Paths.get("src/test/resources/reportTemplate.html"));
+      reportTemplate = Files.readAllBytes(Paths.get(ReportRenderer.TEMPLATE_PATH));
       template = new String(reportTemplate, StandardCharsets.UTF_8);
     } catch (IOException e) {
       LOGGER.error("Problem initializing template", e);
@@ -122,22 +143,16 @@ public class CustomizedReport implements IReporter {
   }
 
   /**
-   * This method will write the report to the file system in the ./target/surefire-reports/
-   * directory, relative to the current directory. The report filename is my-report.html.
+   * The report is written to the ./report/custom-reports/ directory, relative to the current
+   * directory. The report filename is my-report.html.
    * 
-   * @param reportTemplate - the HTML markup containing the report content
-   * @throws IOException
+   * @return Path - Location of the report file
    */
-  private void saveReportTemplate(String reportTemplate) throws IOException {
+  private Path getReportPath() {
     String directory = Paths.get("") + System.getProperty("user.dir") + File.separator + "report"
         + File.separator + "custom-reports";
     new File(directory).mkdirs();
-    try (PrintWriter reportWriter = new PrintWriter(
-        new BufferedWriter(new FileWriter(new File(directory, "my-report.html"))));) {
-      reportWriter.println(reportTemplate);
-    } catch (SecurityException | IOException e) {
-      LOGGER.error("ERROR : Exception thrown while saving custom report.", e);
-    }
+    return Paths.get(directory, "my-report.html");
   }
 
   /**
@@ -146,7 +161,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Perfecto execution video URL.
    */
-  private String getPerfectoReportLink(ITestResult iTestResult) {
+  private static String getPerfectoReportLink(ITestResult iTestResult) {
     if (iTestResult.getAttribute(REPORT_LINK) != null) {
       return iTestResult.getAttribute(REPORT_LINK).toString();
     }
@@ -159,7 +174,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Applitools execution video URL.
    */
-  private String getAppliToolsReportLink(ITestResult iTestResult) {
+  private static String getAppliToolsReportLink(ITestResult iTestResult) {
     if (iTestResult.getAttribute(VISUAL_REPORT_LINK) != null) {
       return iTestResult.getAttribute(VISUAL_REPORT_LINK).toString();
     }
@@ -172,7 +187,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Test case failure reason.
    */
-  private String getFailureReason(ITestResult iTestResult) {
+  private static String getFailureReason(ITestResult iTestResult) {
     if (iTestResult.getAttribute(REASON) != null) {
       return iTestResult.getAttribute(REASON).toString();
     }
@@ -185,7 +200,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Test case pass/fail/skip result.
    */
-  private String getTestResultStatus(ITestResult iTestResult) {
+  private static String getTestResultStatus(ITestResult iTestResult) {
     switch (iTestResult.getStatus()) {
 
       case ITestResult.FAILURE:
@@ -215,7 +230,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Rally Test case ID which is mapped to test.
    */
-  private String getTestCaseID(ITestResult iTestResult) {
+  private static String getTestCaseID(ITestResult iTestResult) {
     if (iTestResult.getMethod().getDescription() != null) {
       return iTestResult.getMethod().getDescription();
     }
@@ -228,7 +243,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Test function name which is given to test.
    */
-  private String getTestCaseName(ITestResult iTestResult) {
+  private static String getTestCaseName(ITestResult iTestResult) {
     return iTestResult.getMethod().getMethodName();
   }
 
@@ -238,7 +253,7 @@ public class CustomizedReport implements IReporter {
    * @param iTestResult - ITestResult - Executed test instance.
    * @return - String - Device Name
    */
-  private String getDeviceName(ITestResult iTestResult) {
+  private static String getDeviceName(ITestResult iTestResult) {
     if (iTestResult.getAttribute("platformVersion") != null) {
       return iTestResult.getAttribute("platformVersion").toString();
     }
@@ -0,0 +1,320 @@
+package com.dibtr.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class grants exclusive leases on devices so that parallel tests never start two sessions
+ * on the same simulator or phone. A device is identified by its udid, or by name and platform
+ * version on an Appium server when no udid is configured.</br>
+ * </br>
+ * Waiting threads are served in arrival order and give up after the wait timeout. A lease is held
+ * until it is released, at the latest until its maximum hold time passes or the thread holding it
+ * dies; such stale leases are reclaimed by the next thread waiting for the device. Wait time and
+ * busy time are recorded per device.
+ */
+public class DeviceLeaseRegistry {
+  private static final AllureLogger LOGGER = new AllureLogger(DeviceLeaseRegistry.class);
+  private static DeviceLeaseRegistry instance;
+
+  private final long maxHoldNanos;
+  private final long reapIntervalNanos;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<String, Device> devices = new HashMap<>();
+  private final long startedAt = System.nanoTime();
+
+  /**
+   * Instantiates a new registry.
+   *
+   * @param maxHoldMillis - long - Time after which a lease is reclaimed even if not released.
+   * @param reapIntervalMillis - long - How often waiting threads check for stale leases.
+   */
+  public DeviceLeaseRegistry(long maxHoldMillis, long reapIntervalMillis) {
+    this.maxHoldNanos = TimeUnit.MILLISECONDS.toNanos(maxHoldMillis);
+    this.reapIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reapIntervalMillis);
+  }
+
+  /**
+   * Get the shared registry configured by the device.lease.* keys.
+   *
+   * @return DeviceLeaseRegistry - Shared registry.
+   */
+  public static synchronized DeviceLeaseRegistry getInstance() {
+    if (instance == null) {
+      ConfigSnapshot config = EnvironmentSettings.config();
+      instance = new DeviceLeaseRegistry(
+          TimeUnit.SECONDS.toMillis(config.getLong("device.lease.max.hold.seconds", 3600)),
+          config.getLong("device.lease.reap.interval.ms", 1000));
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::logStatistics, "device-leases"));
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to lease a device for the calling thread, queueing behind earlier
+   * requests for the same device. Leases are not reentrant: a thread, e.g. a reused pool thread,
+   * which asks again for a device it holds waits like any other thread.
+   *
+   * @param device - String - Device identifier, see DeviceSlot.getLeaseKey.
+   * @param timeout - long - Maximum time to wait in the queue.
+   * @param unit - TimeUnit - Unit of timeout.
+   * @return Lease - The lease, null if the device did not become free in time.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public Lease acquire(String device, long timeout, TimeUnit unit) throws InterruptedException {
+    long requestedAt = System.nanoTime();
+    long deadline = requestedAt + unit.toNanos(timeout);
+    Thread current = Thread.currentThread();
+    lock.lockInterruptibly();
+    try {
+      Device state = devices.computeIfAbsent(device, key -> new Device(lock.newCondition()));
+      state.waiting.addLast(current);
+      try {
+        while (state.holder != null || state.waiting.peekFirst() != current) {
+          reapIfStale(state);
+          if (state.holder == null && state.waiting.peekFirst() == current) {
+            break;
+          }
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            state.timeouts++;
+            LOGGER.warn("Timed out after {} ms waiting for device {}",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - requestedAt), device);
+            return null;
+          }
+          state.changed.awaitNanos(Math.min(remaining, reapIntervalNanos));
+        }
+      } finally {
+        state.waiting.remove(current);
+        // The next waiter may now be at the head of the queue
+        state.changed.signalAll();
+      }
+      long now = System.nanoTime();
+      long waited = now - requestedAt;
+      state.holder = new Lease(device, current, now);
+      state.leases++;
+      state.waitNanos += waited;
+      state.maxWaitNanos = Math.max(state.maxWaitNanos, waited);
+      return state.holder;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the wait and busy time of every device leased so far, leases still held included.
+   *
+   * @return List - Statistics per device.
+   */
+  public List<DeviceStatistics> getStatistics() {
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      List<DeviceStatistics> statistics = new ArrayList<>();
+      for (Map.Entry<String, Device> entry : devices.entrySet()) {
+        Device state = entry.getValue();
+        long busy = state.busyNanos + (state.holder != null ? now - state.holder.acquiredAt : 0);
+        statistics.add(new DeviceStatistics(entry.getKey(), state.leases, state.timeouts,
+            state.reaped, TimeUnit.NANOSECONDS.toMillis(state.waitNanos),
+            TimeUnit.NANOSECONDS.toMillis(state.maxWaitNanos), TimeUnit.NANOSECONDS.toMillis(busy),
+            TimeUnit.NANOSECONDS.toMillis(now - startedAt)));
+      }
+      return statistics;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Logs the statistics of every device.
+   */
+  public void logStatistics() {
+    for (DeviceStatistics device : getStatistics()) {
+      LOGGER.info("Device {} leased {} times, waited {} ms (max {} ms), busy {}%, {} timeouts, "
+          + "{} reclaimed", device.getDevice(), device.getLeases(), device.getWaitMillis(),
+          device.getMaxWaitMillis(), Math.round(device.getUtilization() * 100),
+          device.getTimeouts(), device.getReaped());
+    }
+  }
+
+  private void release(Lease lease, String reason) {
+    Device state = devices.get(lease.device);
+    if (state == null || state.holder != lease) {
+      return;
+    }
+    state.busyNanos += System.nanoTime() - lease.acquiredAt;
+    state.holder = null;
+    lease.released = true;
+    if (reason != null) {
+      state.reaped++;
+      Thread holder = lease.thread;
+      LOGGER.warn("Reclaimed lease on device {} from {}: {}", lease.device,
+          holder == null ? "detached session" : holder.getName(), reason);
+    }
+    state.changed.signalAll();
+  }
+
+  private void reapIfStale(Device state) {
+    Lease holder = state.holder;
+    if (holder == null) {
+      return;
+    }
+    Thread thread = holder.thread;
+    if (thread != null && !thread.isAlive()) {
+      release(holder, "thread ended without releasing it");
+    } else if (System.nanoTime() - holder.acquiredAt > maxHoldNanos) {
+      release(holder, "held longer than " + TimeUnit.NANOSECONDS.toSeconds(maxHoldNanos) + "s");
+    }
+  }
+
+  /**
+   * Lease state of one device, guarded by the registry lock.
+   */
+  private static final class Device {
+    private final Condition changed;
+    private final ArrayDeque<Thread> waiting = new ArrayDeque<>();
+    private Lease holder;
+    private int leases;
+    private int timeouts;
+    private int reaped;
+    private long waitNanos;
+    private long maxWaitNanos;
+    private long busyNanos;
+
+    private Device(Condition changed) {
+      this.changed = changed;
+    }
+  }
+
+  /**
+   * Exclusive use of one device. Releasing it more than once has no effect.
+   */
+  public final class Lease {
+    private final String device;
+    private final long acquiredAt;
+    private volatile Thread thread;
+    private boolean released;
+
+    private Lease(String device, Thread thread, long acquiredAt) {
+      this.device = device;
+      this.thread = thread;
+      this.acquiredAt = acquiredAt;
+    }
+
+    public String getDevice() {
+      return device;
+    }
+
+    /**
+     * Hands the lease to the calling thread, e.g. when a session started in the background is bound
+     * to the test thread. The lease then ends with that thread.
+     */
+    public void transferToCurrentThread() {
+      thread = Thread.currentThread();
+    }
+
+    /**
+     * Unties the lease from its thread while the session travels to another one, e.g. from the
+     * pool thread which started it to the test thread. A detached lease is only reclaimed after
+     * the maximum hold time, not when the thread that acquired it ends.
+     */
+    public void detach() {
+      thread = null;
+    }
+
+    /**
+     * Whether the lease is still held, i.e. neither released nor reclaimed.
+     *
+     * @return boolean - True while held.
+     */
+    public boolean isHeld() {
+      lock.lock();
+      try {
+        return !released;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Returns the device to the registry.
+     */
+    public void release() {
+      lock.lock();
+      try {
+        DeviceLeaseRegistry.this.release(this, null);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Lease statistics of one device.
+   */
+  public static final class DeviceStatistics {
+    private final String device;
+    private final int leases;
+    private final int timeouts;
+    private final int reaped;
+    private final long waitMillis;
+    private final long maxWaitMillis;
+    private final long busyMillis;
+    private final long elapsedMillis;
+
+    DeviceStatistics(String device, int leases, int timeouts, int reaped, long waitMillis,
+        long maxWaitMillis, long busyMillis, long elapsedMillis) {
+      this.device = device;
+      this.leases = leases;
+      this.timeouts = timeouts;
+      this.reaped = reaped;
+      this.waitMillis = waitMillis;
+      this.maxWaitMillis = maxWaitMillis;
+      this.busyMillis = busyMillis;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getDevice() {
+      return device;
+    }
+
+    public int getLeases() {
+      return leases;
+    }
+
+    public int getTimeouts() {
+      return timeouts;
+    }
+
+    public int getReaped() {
+      return reaped;
+    }
+
+    public long getWaitMillis() {
+      return waitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+
+    public long getBusyMillis() {
+      return busyMillis;
+    }
+
+    /**
+     * Share of the registry's life time the device was leased.
+     *
+     * @return double - Ratio between 0 and 1.
+     */
+    public double getUtilization() {
+      return elapsedMillis == 0 ? 0 : Math.min(1.0, (double) busyMillis / elapsedMillis);
+    }
+  }
+}
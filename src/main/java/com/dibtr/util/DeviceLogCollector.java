@@ -0,0 +1,299 @@
+package com.dibtr.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.logging.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import io.appium.java_client.ios.IOSDriver;
+import io.qameta.allure.Allure;
+
+/**
+ * This class collects the device logs of one session while it runs. Every poll fetches only the
+ * entries logged since the previous one (Appium's log endpoint hands out each entry once; entries
+ * older than the cursor of their log type, or already seen at the cursor, are dropped in case a
+ * source replays them) and keeps them in a ring bounded by size, indexed by timestamp.</br>
+ * </br>
+ * Nothing is written anywhere unless a test fails; then the entries logged since the test started
+ * are attached to the Allure report.
+ */
+public class DeviceLogCollector implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeviceLogCollector.class);
+  private static final int ENTRY_OVERHEAD_BYTES = 64;
+  private static final ScheduledExecutorService POLLER =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "device-log-collector");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  private final LogSource source;
+  private final List<String> logTypes;
+  private final long maxBytes;
+  private final NavigableMap<Long, ArrayDeque<Entry>> entries = new TreeMap<>();
+  private final Map<String, Cursor> cursors = new HashMap<>();
+  private long bufferedBytes;
+  private long fetched;
+  private long evicted;
+  private boolean failing;
+  private ScheduledFuture<?> schedule;
+
+  /**
+   * Fetches the entries of one log type logged since the previous fetch.
+   */
+  @FunctionalInterface
+  public interface LogSource {
+    Collection<LogEntry> fetch(String logType);
+  }
+
+  /**
+   * Instantiates a new collector.
+   *
+   * @param source - LogSource - Where entries are fetched from.
+   * @param logTypes - List - Log types to collect, e.g. syslog and crashlog.
+   * @param maxBytes - long - Approximate size of the ring, the oldest entries are evicted beyond.
+   */
+  public DeviceLogCollector(LogSource source, List<String> logTypes, long maxBytes) {
+    this.source = source;
+    this.logTypes = new ArrayList<>();
+    for (String logType : logTypes) {
+      this.logTypes.add(logType.trim());
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * This function is used to create and start the collector of a device session as configured by
+   * the device.log.* keys.
+   *
+   * @param driver - IOSDriver - Driver of the session.
+   * @return DeviceLogCollector - The started collector, null if collection is disabled.
+   */
+  public static DeviceLogCollector forDriver(IOSDriver<?> driver) {
+    EnvironmentSettings settings = EnvironmentSettings.getInstance();
+    if (!Boolean.parseBoolean(settings.getProperty("device.log.collector.enabled", "true"))) {
+      return null;
+    }
+    DeviceLogCollector collector =
+        new DeviceLogCollector(logType -> driver.manage().logs().get(logType).getAll(),
+            Arrays.asList(settings.getProperty("device.log.types", "syslog,crashlog").split(",")),
+            Long.parseLong(settings.getProperty("device.log.buffer.max.mb", "8")) * 1024 * 1024);
+    collector.start(Long.parseLong(settings.getProperty("device.log.poll.interval.ms", "2000")));
+    return collector;
+  }
+
+  /**
+   * Polls the source in the background at a fixed interval until the collector is closed.
+   *
+   * @param intervalMillis - long - Delay between two polls.
+   */
+  public synchronized void start(long intervalMillis) {
+    if (schedule == null) {
+      schedule = POLLER.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * This function is used to fetch new entries of every log type into the ring.
+   *
+   * @return int - Number of entries added.
+   */
+  public synchronized int poll() {
+    int added = 0;
+    for (String logType : logTypes) {
+      Collection<LogEntry> batch;
+      try {
+        batch = source.fetch(logType);
+      } catch (RuntimeException e) {
+        if (!failing) {
+          LOGGER.warn("Unable to fetch {} device log: {}", logType, e.getMessage());
+        }
+        failing = true;
+        continue;
+      }
+      failing = false;
+      Cursor cursor = cursors.computeIfAbsent(logType, k -> new Cursor());
+      // Entries of earlier polls at the cursor timestamp, each one is skipped once if replayed
+      List<String> replayable = new ArrayList<>(cursor.messages);
+      for (LogEntry logEntry : batch) {
+        if (logEntry.getTimestamp() < cursor.timestamp) {
+          continue;
+        }
+        if (logEntry.getTimestamp() == cursor.timestamp) {
+          if (replayable.remove(logEntry.getMessage())) {
+            continue;
+          }
+        } else {
+          cursor.timestamp = logEntry.getTimestamp();
+          cursor.messages.clear();
+          replayable.clear();
+        }
+        cursor.messages.add(logEntry.getMessage());
+        add(new Entry(logEntry.getTimestamp(), logType, logEntry.getLevel().getName(),
+            logEntry.getMessage()));
+        added++;
+      }
+    }
+    fetched += added;
+    return added;
+  }
+
+  /**
+   * Entries logged within the given time range, in timestamp order.
+   *
+   * @param fromMillis - long - Start of the range, inclusive.
+   * @param toMillis - long - End of the range, inclusive.
+   * @return List - Buffered entries of the range.
+   */
+  public synchronized List<Entry> getEntries(long fromMillis, long toMillis) {
+    List<Entry> range = new ArrayList<>();
+    for (ArrayDeque<Entry> sameTime : entries.subMap(fromMillis, true, toMillis, true).values()) {
+      range.addAll(sameTime);
+    }
+    return range;
+  }
+
+  /**
+   * This function is used to write the entries logged since the given time, after a last poll.
+   *
+   * @param out - Writer - Destination, not closed.
+   * @param fromMillis - long - Earliest entry to write, e.g. the start of the failed test.
+   * @return int - Number of entries written.
+   * @throws IOException if the destination cannot be written.
+   */
+  public int dump(Writer out, long fromMillis) throws IOException {
+    poll();
+    List<Entry> range = getEntries(fromMillis, Long.MAX_VALUE);
+    for (Entry entry : range) {
+      out.write(entry.toString());
+      out.write(System.lineSeparator());
+    }
+    return range.size();
+  }
+
+  /**
+   * This function is used to attach the entries logged since the given time to the current
+   * Allure test.
+   *
+   * @param name - String - Attachment name.
+   * @param fromMillis - long - Earliest entry to attach, e.g. the start of the failed test.
+   */
+  public void attachToAllure(String name, long fromMillis) {
+    StringWriter log = new StringWriter();
+    try {
+      if (dump(log, fromMillis) > 0) {
+        Allure.addAttachment(name, "text/plain", log.toString(), ".log");
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to attach device log {}", name, e);
+    }
+  }
+
+  public synchronized long getBufferedBytes() {
+    return bufferedBytes;
+  }
+
+  public synchronized long getFetched() {
+    return fetched;
+  }
+
+  public synchronized long getEvicted() {
+    return evicted;
+  }
+
+  /**
+   * Stops background polling and drops the buffered entries.
+   */
+  @Override
+  public synchronized void close() {
+    if (schedule != null) {
+      schedule.cancel(false);
+      schedule = null;
+    }
+    LOGGER.info("Device log collector fetched {} entries, evicted {}", fetched, evicted);
+    entries.clear();
+    bufferedBytes = 0;
+  }
+
+  private void add(Entry entry) {
+    entries.computeIfAbsent(entry.timestamp, t -> new ArrayDeque<>()).addLast(entry);
+    bufferedBytes += entry.size();
+    while (bufferedBytes > maxBytes && !entries.isEmpty()) {
+      Map.Entry<Long, ArrayDeque<Entry>> oldest = entries.firstEntry();
+      bufferedBytes -= oldest.getValue().pollFirst().size();
+      evicted++;
+      if (oldest.getValue().isEmpty()) {
+        entries.remove(oldest.getKey());
+      }
+    }
+  }
+
+  /**
+   * Timestamp of the newest entry of one log type and the messages fetched at that timestamp.
+   */
+  private static final class Cursor {
+    private long timestamp = Long.MIN_VALUE;
+    private final List<String> messages = new ArrayList<>();
+  }
+
+  /**
+   * One buffered log entry.
+   */
+  public static final class Entry {
+    private final long timestamp;
+    private final String logType;
+    private final String level;
+    private final String message;
+
+    Entry(long timestamp, String logType, String level, String message) {
+      this.timestamp = timestamp;
+      this.logType = logType;
+      this.level = level;
+      this.message = message == null ? "" : message;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public String getLogType() {
+      return logType;
+    }
+
+    public String getLevel() {
+      return level;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    private long size() {
+      return ENTRY_OVERHEAD_BYTES + 2L * message.length();
+    }
+
+    @Override
+    public String toString() {
+      return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timestamp)) + " ["
+          + logType + "] " + level + " " + message;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.dibtr.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the devices a suite is spread over. A matrix is written as entries separated by
+ * ';', each entry being deviceName|platformVersion|udid|endpoint where udid and endpoint are
+ * optional, e.g.</br>
+ * iPhone 11|14.2|00008030-0004386634C1802E|http://127.0.0.1:4723/wd/hub;iPhone 12|15.0</br>
+ * </br>
+ * It is read from the device.matrix suite parameter or, without one, from the device.matrix key
+ * of config.properties.
+ */
+public final class DeviceMatrix {
+  public static final String KEY = "device.matrix";
+  private final String spec;
+  private final List<DeviceSlot> slots;
+
+  private DeviceMatrix(String spec, List<DeviceSlot> slots) {
+    this.spec = spec;
+    this.slots = Collections.unmodifiableList(slots);
+  }
+
+  /**
+   * This function is used to parse a matrix.
+   *
+   * @param spec - String - Matrix entries as described above.
+   * @param defaultEndpoint - String - Appium server of the entries that do not name one.
+   * @return DeviceMatrix - The matrix, null if the spec is null or empty.
+   * @throws IllegalArgumentException if an entry has no device name or platform version.
+   */
+  public static DeviceMatrix parse(String spec, String defaultEndpoint) {
+    if (spec == null || spec.trim().isEmpty()) {
+      return null;
+    }
+    List<DeviceSlot> slots = new ArrayList<>();
+    for (String entry : spec.split(";")) {
+      if (entry.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = entry.split("\\|", -1);
+      String deviceName = field(fields, 0);
+      String platformVersion = field(fields, 1);
+      if (deviceName == null || platformVersion == null) {
+        throw new IllegalArgumentException("Device matrix entry '" + entry.trim()
+            + "' needs at least deviceName|platformVersion");
+      }
+      String endpoint = field(fields, 3);
+      slots.add(new DeviceSlot(slots.size(), deviceName, platformVersion, field(fields, 2),
+          endpoint != null ? endpoint : defaultEndpoint));
+    }
+    return slots.isEmpty() ? null : new DeviceMatrix(spec.trim(), slots);
+  }
+
+  /**
+   * This function is used to read the matrix configured by device.matrix.
+   *
+   * @return DeviceMatrix - The matrix, null if none is configured.
+   */
+  public static DeviceMatrix fromConfig() {
+    ConfigSnapshot config = EnvironmentSettings.config();
+    return parse(config.getString(KEY), config.getString("environment.local.grid.location"));
+  }
+
+  public String getSpec() {
+    return spec;
+  }
+
+  public List<DeviceSlot> getSlots() {
+    return slots;
+  }
+
+  public int size() {
+    return slots.size();
+  }
+
+  @Override
+  public String toString() {
+    return slots.toString();
+  }
+
+  private static String field(String[] fields, int index) {
+    if (index >= fields.length || fields[index].trim().isEmpty()) {
+      return null;
+    }
+    return fields[index].trim();
+  }
+}
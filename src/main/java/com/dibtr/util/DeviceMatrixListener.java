@@ -0,0 +1,67 @@
+package com.dibtr.util;
+
+import java.util.List;
+import org.testng.IAlterSuiteListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
+import org.testng.xml.XmlSuite;
+
+/**
+ * This listener runs a suite over the device matrix. Registered in the suite XML, it reads the
+ * device.matrix suite parameter (falling back to config.properties) and, unless the suite already
+ * chose a parallel mode, runs its test methods in parallel with one worker per device:</br>
+ * </br>
+ * &lt;listeners&gt;</br>
+ * &lt;listener class-name="com.dibtr.util.DeviceMatrixListener"/&gt;</br>
+ * &lt;/listeners&gt;
+ * </br>
+ * </br>
+ * TestNG only alters suites through listeners declared in the XML or on the command line; declared
+ * through @Listeners the listener still picks up the matrix and reports device utilization.
+ */
+public class DeviceMatrixListener implements IAlterSuiteListener, ISuiteListener {
+  private static final AllureLogger LOGGER = new AllureLogger(DeviceMatrixListener.class);
+
+  @Override
+  public void alter(List<XmlSuite> suites) {
+    for (XmlSuite suite : suites) {
+      DeviceMatrix matrix = matrixOf(suite.getParameter(DeviceMatrix.KEY));
+      if (matrix == null) {
+        continue;
+      }
+      DeviceMatrixScheduler.configure(matrix);
+      if (suite.getParallel() == null || !suite.getParallel().isParallel()) {
+        suite.setParallel(XmlSuite.ParallelMode.METHODS);
+        suite.setThreadCount(matrix.size());
+        LOGGER.info("Running suite {} with one worker per device of {}", suite.getName(), matrix);
+      } else if (suite.getThreadCount() < matrix.size()) {
+        LOGGER.warn("Suite {} runs {} threads, {} devices of the matrix will stay idle",
+            suite.getName(), suite.getThreadCount(), matrix.size() - suite.getThreadCount());
+      }
+    }
+  }
+
+  @Override
+  public void onStart(ISuite suite) {
+    String spec = suite.getParameter(DeviceMatrix.KEY);
+    if (spec != null && !spec.trim().isEmpty()) {
+      DeviceMatrixScheduler.configure(matrixOf(spec));
+    }
+  }
+
+  @Override
+  public void onFinish(ISuite suite) {
+    DeviceMatrixScheduler scheduler = DeviceMatrixScheduler.getInstance();
+    if (scheduler != null) {
+      scheduler.logUtilization();
+    }
+  }
+
+  private static DeviceMatrix matrixOf(String suiteSpec) {
+    if (suiteSpec == null || suiteSpec.trim().isEmpty()) {
+      return DeviceMatrix.fromConfig();
+    }
+    return DeviceMatrix.parse(suiteSpec,
+        EnvironmentSettings.config().getString("environment.local.grid.location"));
+  }
+}
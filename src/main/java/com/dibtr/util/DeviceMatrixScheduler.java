@@ -0,0 +1,295 @@
+package com.dibtr.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class hands the devices of a device matrix out to the tests of a parallel suite, one test
+ * per device at a time. The suite runs with one TestNG worker per device (see
+ * DeviceMatrixListener); the workers share TestNG's queue of pending tests, so a worker that
+ * finishes early picks up the next test instead of idling while the others work through a fixed
+ * share.</br>
+ * </br>
+ * A test leases a device when it starts its device session and returns it when it stops the
+ * session. A test naming a platform version or device waits for a matching device; otherwise the
+ * free device that has been busy the least is taken, which keeps utilization even. Per device
+ * busy time is recorded and logged at the end of the suite.
+ */
+public class DeviceMatrixScheduler {
+  private static final AllureLogger LOGGER = new AllureLogger(DeviceMatrixScheduler.class);
+  private static DeviceMatrixScheduler instance;
+  private static boolean initialized;
+
+  private final DeviceMatrix matrix;
+  private final ReentrantLock lock = new ReentrantLock(true);
+  private final Condition released = lock.newCondition();
+  private final Usage[] usage;
+  private final long startedAt = System.nanoTime();
+  private long waitNanos;
+
+  /**
+   * Instantiates a scheduler over the given devices.
+   *
+   * @param matrix - DeviceMatrix - Devices to hand out.
+   */
+  public DeviceMatrixScheduler(DeviceMatrix matrix) {
+    this.matrix = matrix;
+    this.usage = new Usage[matrix.size()];
+    for (int i = 0; i < usage.length; i++) {
+      usage[i] = new Usage();
+    }
+  }
+
+  /**
+   * Get the shared scheduler, built from device.matrix unless a suite configured one.
+   *
+   * @return DeviceMatrixScheduler - Shared scheduler, null if no device matrix is configured.
+   */
+  public static synchronized DeviceMatrixScheduler getInstance() {
+    if (!initialized) {
+      DeviceMatrix matrix = DeviceMatrix.fromConfig();
+      instance = matrix == null ? null : new DeviceMatrixScheduler(matrix);
+      initialized = true;
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to make the given matrix the shared one, e.g. the device.matrix
+   * parameter of a suite. The current scheduler is kept if it holds the same matrix.
+   *
+   * @param matrix - DeviceMatrix - Devices of the suite.
+   * @return DeviceMatrixScheduler - Shared scheduler.
+   * @throws IllegalStateException if devices of a different matrix are still leased.
+   */
+  public static synchronized DeviceMatrixScheduler configure(DeviceMatrix matrix) {
+    if (instance != null && instance.matrix.getSpec().equals(matrix.getSpec())) {
+      return instance;
+    }
+    if (instance != null && instance.getLeasedCount() > 0) {
+      throw new IllegalStateException("Device matrix cannot change while devices are leased");
+    }
+    LOGGER.info("Scheduling tests over device matrix {}", matrix);
+    instance = new DeviceMatrixScheduler(matrix);
+    initialized = true;
+    return instance;
+  }
+
+  /**
+   * This function is used to drop the shared scheduler, so the next getInstance builds it from
+   * device.matrix again, e.g. once a suite which configured its own matrix has finished.
+   *
+   * @throws IllegalStateException if devices are still leased.
+   */
+  public static synchronized void reset() {
+    if (instance != null && instance.getLeasedCount() > 0) {
+      throw new IllegalStateException("Device matrix cannot change while devices are leased");
+    }
+    instance = null;
+    initialized = false;
+  }
+
+  /**
+   * This function is used to lease a free device, waiting for one to be returned if all matching
+   * devices are busy.
+   *
+   * @param platformVersion - String - Requested OS version, null for any.
+   * @param deviceName - String - Requested device name, null for any.
+   * @param timeout - long - Maximum time to wait.
+   * @param unit - TimeUnit - Unit of timeout.
+   * @return DeviceSlot - The leased device, null if none became free in time.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IllegalArgumentException if no device of the matrix matches the request.
+   */
+  public DeviceSlot lease(String platformVersion, String deviceName, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    boolean known = false;
+    for (DeviceSlot slot : matrix.getSlots()) {
+      known |= slot.matches(platformVersion, deviceName);
+    }
+    if (!known) {
+      throw new IllegalArgumentException("No device of the matrix " + matrix + " matches "
+          + deviceName + " " + platformVersion);
+    }
+    long requestedAt = System.nanoTime();
+    long remaining = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      DeviceSlot slot;
+      while ((slot = leastBusyFree(platformVersion, deviceName)) == null) {
+        if (remaining <= 0) {
+          return null;
+        }
+        remaining = released.awaitNanos(remaining);
+      }
+      long now = System.nanoTime();
+      usage[slot.getIndex()].leasedAt = now;
+      usage[slot.getIndex()].leases++;
+      waitNanos += now - requestedAt;
+      LOGGER.info("Leased device {} to {}", slot, Thread.currentThread().getName());
+      return slot;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * This function is used to return a leased device.
+   *
+   * @param slot - DeviceSlot - Device returned by lease.
+   */
+  public void release(DeviceSlot slot) {
+    if (slot == null || !slot.isMatrixSlot()) {
+      return;
+    }
+    lock.lock();
+    try {
+      Usage slotUsage = usage[slot.getIndex()];
+      if (slotUsage.leasedAt == 0) {
+        LOGGER.warn("Device {} was returned but is not leased", slot);
+        return;
+      }
+      slotUsage.busyNanos += System.nanoTime() - slotUsage.leasedAt;
+      slotUsage.leasedAt = 0;
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public DeviceMatrix getMatrix() {
+    return matrix;
+  }
+
+  /**
+   * Number of devices currently leased.
+   *
+   * @return int - Leased devices.
+   */
+  public int getLeasedCount() {
+    lock.lock();
+    try {
+      int leased = 0;
+      for (Usage slotUsage : usage) {
+        leased += slotUsage.leasedAt != 0 ? 1 : 0;
+      }
+      return leased;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Total time tests spent waiting for a device.
+   *
+   * @return long - Wait time in milliseconds.
+   */
+  public long getWaitMillis() {
+    lock.lock();
+    try {
+      return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Busy time of every device since the scheduler was created, leases still running included.
+   *
+   * @return List - Utilization of every device in matrix order.
+   */
+  public List<Utilization> getUtilization() {
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      List<Utilization> utilization = new ArrayList<>();
+      for (DeviceSlot slot : matrix.getSlots()) {
+        Usage slotUsage = usage[slot.getIndex()];
+        long busy = slotUsage.busyNanos + (slotUsage.leasedAt != 0 ? now - slotUsage.leasedAt : 0);
+        utilization.add(new Utilization(slot, slotUsage.leases,
+            TimeUnit.NANOSECONDS.toMillis(busy), TimeUnit.NANOSECONDS.toMillis(now - startedAt)));
+      }
+      return utilization;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Logs the utilization of every device and the time tests waited for one.
+   */
+  public void logUtilization() {
+    for (Utilization utilization : getUtilization()) {
+      LOGGER.info("Device {} ran {} sessions, busy {} ms of {} ms ({}%)", utilization.getSlot(),
+          utilization.getLeases(), utilization.getBusyMillis(), utilization.getElapsedMillis(),
+          Math.round(utilization.getRatio() * 100));
+    }
+    LOGGER.info("Tests waited {} ms for a free device", getWaitMillis());
+  }
+
+  private DeviceSlot leastBusyFree(String platformVersion, String deviceName) {
+    DeviceSlot best = null;
+    for (DeviceSlot slot : matrix.getSlots()) {
+      Usage slotUsage = usage[slot.getIndex()];
+      if (slotUsage.leasedAt == 0 && slot.matches(platformVersion, deviceName)
+          && (best == null || slotUsage.busyNanos < usage[best.getIndex()].busyNanos)) {
+        best = slot;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Lease bookkeeping of one device, guarded by the scheduler lock.
+   */
+  private static final class Usage {
+    private long leasedAt;
+    private long busyNanos;
+    private int leases;
+  }
+
+  /**
+   * Utilization of one device.
+   */
+  public static final class Utilization {
+    private final DeviceSlot slot;
+    private final int leases;
+    private final long busyMillis;
+    private final long elapsedMillis;
+
+    Utilization(DeviceSlot slot, int leases, long busyMillis, long elapsedMillis) {
+      this.slot = slot;
+      this.leases = leases;
+      this.busyMillis = busyMillis;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public DeviceSlot getSlot() {
+      return slot;
+    }
+
+    public int getLeases() {
+      return leases;
+    }
+
+    public long getBusyMillis() {
+      return busyMillis;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+
+    /**
+     * Share of the elapsed time the device was leased.
+     *
+     * @return double - Ratio between 0 and 1.
+     */
+    public double getRatio() {
+      return elapsedMillis == 0 ? 0 : Math.min(1.0, (double) busyMillis / elapsedMillis);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.dibtr.util;
+
+import io.appium.java_client.ios.IOSDriver;
+import io.appium.java_client.ios.IOSElement;
+
+/**
+ * This class holds everything that belongs to one started device session, so the session can be
+ * created on one thread and bound to the ThreadLocals of another.
+ */
+public class DeviceSession {
+  private final IOSDriver<IOSElement> driver;
+  private final IOSPageDriver pageDriver;
+  private final MobileSessionPool.PooledSession pooledSession;
+  private final DeviceLogCollector logCollector;
+  private final DeviceLeaseRegistry.Lease lease;
+
+  /**
+   * Instantiates a new device session.
+   *
+   * @param driver - IOSDriver<IOSElement> - The iOS driver
+   * @param pooledSession - PooledSession - Pool lease backing the driver, null when not pooled.
+   */
+  public DeviceSession(IOSDriver<IOSElement> driver,
+      MobileSessionPool.PooledSession pooledSession) {
+    this(driver, pooledSession, null);
+  }
+
+  /**
+   * Instantiates a new device session on a leased device.
+   *
+   * @param driver - IOSDriver<IOSElement> - The iOS driver
+   * @param pooledSession - PooledSession - Pool lease backing the driver, null when not pooled.
+   * @param lease - Lease - Exclusive use of the device, released when the session stops.
+   */
+  public DeviceSession(IOSDriver<IOSElement> driver, MobileSessionPool.PooledSession pooledSession,
+      DeviceLeaseRegistry.Lease lease) {
+    this.lease = lease;
+    this.driver = driver;
+    this.pageDriver = new IOSPageDriver(driver);
+    this.pooledSession = pooledSession;
+    this.logCollector = DeviceLogCollector.forDriver(driver);
+  }
+
+  public IOSDriver<IOSElement> getDriver() {
+    return driver;
+  }
+
+  public IOSPageDriver getPageDriver() {
+    return pageDriver;
+  }
+
+  public MobileSessionPool.PooledSession getPooledSession() {
+    return pooledSession;
+  }
+
+  /**
+   * Get the device log collector of this session.
+   *
+   * @return DeviceLogCollector - The collector, null if device log collection is disabled.
+   */
+  public DeviceLogCollector getLogCollector() {
+    return logCollector;
+  }
+
+  /**
+   * Get the lease on the device of this session.
+   *
+   * @return Lease - The lease, null if the session was started without one.
+   */
+  public DeviceLeaseRegistry.Lease getLease() {
+    return lease;
+  }
+}
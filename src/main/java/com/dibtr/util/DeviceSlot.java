@@ -0,0 +1,106 @@
+package com.dibtr.util;
+
+/**
+ * This class describes one device a session can be started on: the capabilities identifying the
+ * device and the Appium server it is reached through. Slots of a device matrix are numbered in
+ * matrix order; a standalone slot is built for a test that names its device itself.
+ */
+public final class DeviceSlot {
+  private final int index;
+  private final String deviceName;
+  private final String platformVersion;
+  private final String udid;
+  private final String endpoint;
+
+  /**
+   * Instantiates a new slot.
+   *
+   * @param index - int - Position in the device matrix, -1 outside a matrix.
+   * @param deviceName - String - Device name like iPhone 11.
+   * @param platformVersion - String - OS version like 14.2.
+   * @param udid - String - Device identifier, null to let Appium pick the device.
+   * @param endpoint - String - URL of the Appium server driving the device.
+   */
+  public DeviceSlot(int index, String deviceName, String platformVersion, String udid,
+      String endpoint) {
+    this.index = index;
+    this.deviceName = deviceName;
+    this.platformVersion = platformVersion;
+    this.udid = udid;
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * This function is used to describe a device requested by a test without a device matrix. The
+   * values that are not given are taken from mobile.device.*, the udid from mobile.device.udid and
+   * the endpoint from environment.local.grid.location.
+   *
+   * @param platformVersion - String - OS version, null for mobile.device.platform.version.
+   * @param deviceName - String - Device name, null for mobile.device.name.
+   * @return DeviceSlot - Slot outside any matrix.
+   */
+  public static DeviceSlot standalone(String platformVersion, String deviceName) {
+    ConfigSnapshot config = EnvironmentSettings.config();
+    return new DeviceSlot(-1,
+        deviceName != null ? deviceName : config.getString("mobile.device.name"),
+        platformVersion != null ? platformVersion
+            : config.getString("mobile.device.platform.version"),
+        udid(config.getString("mobile.device.udid")),
+        config.getString("environment.local.grid.location"));
+  }
+
+  /**
+   * Whether a test asking for the given device can run on this slot.
+   *
+   * @param platformVersion - String - Requested OS version, null for any.
+   * @param deviceName - String - Requested device name, null for any.
+   * @return boolean - True if every requested value matches.
+   */
+  public boolean matches(String platformVersion, String deviceName) {
+    return (platformVersion == null || platformVersion.equals(this.platformVersion))
+        && (deviceName == null || deviceName.equals(this.deviceName));
+  }
+
+  /**
+   * Identifies the physical device for leasing: the udid, which is unique, or without one the
+   * simulator name and version on the Appium server.
+   *
+   * @return String - Lease key of the device.
+   */
+  public String getLeaseKey() {
+    return udid != null ? udid : deviceName + " " + platformVersion + " @ " + endpoint;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public boolean isMatrixSlot() {
+    return index >= 0;
+  }
+
+  public String getDeviceName() {
+    return deviceName;
+  }
+
+  public String getPlatformVersion() {
+    return platformVersion;
+  }
+
+  public String getUdid() {
+    return udid;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  private static String udid(String value) {
+    return value == null || value.trim().isEmpty() ? null : value.trim();
+  }
+
+  @Override
+  public String toString() {
+    return deviceName + " " + platformVersion + (udid != null ? " " + udid : "");
+  }
+}
@@ -2,7 +2,6 @@ package com.dibtr.util;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.appium.java_client.MobileBy;
@@ -16,10 +15,9 @@ import io.appium.java_client.MobileBy;
  * Other functionality may include device settings and restarting the device.
  */
 public class DeviceSupportUtility {
-  private static Properties configProperties = EnvironmentSettings.getInstance().getProperties();
   private static final Logger LOGGER = LoggerFactory.getLogger(DeviceSupportUtility.class);
   private static final String APP_BUNDLE_IDENTIFIER =
-      configProperties.getProperty("mobile.appium.bundleId");
+      EnvironmentSettings.config().getString("mobile.appium.bundleId");
   private static final String BUNDLE_ID = "bundleId";
 
  
@@ -58,6 +56,7 @@ public class DeviceSupportUtility {
    */
   public void closeApplication() {
     LOGGER.info("Closing Application: {}", APP_BUNDLE_IDENTIFIER);
+    invalidatePageSource();
     DriverFactory.getIOSDriver().terminateApp(APP_BUNDLE_IDENTIFIER);
   }
 
@@ -77,6 +76,7 @@ public class DeviceSupportUtility {
   public void startApp() {
     Map<String, Object> params = new HashMap<>();
     params.put(BUNDLE_ID, APP_BUNDLE_IDENTIFIER);
+    invalidatePageSource();
     DriverFactory.getIOSDriver().executeScript("mobile: launchApp", params);
     LOGGER.info("App opened sucessfully.....");
   }
@@ -88,6 +88,7 @@ public class DeviceSupportUtility {
     LOGGER.info("App installation started.....");
     Map<String, Object> params = new HashMap<>();
     params.put("app", DriverFactory.getIOSDriver().getCapabilities().getCapability("app"));
+    invalidatePageSource();
     DriverFactory.getIOSDriver().executeScript("mobile: installApp", params);
     LOGGER.info("App installation finished.....");
   }
@@ -100,6 +101,7 @@ public class DeviceSupportUtility {
     Map<String, Object> params = new HashMap<>();
     try {
       params.put(BUNDLE_ID, APP_BUNDLE_IDENTIFIER);
+      invalidatePageSource();
       DriverFactory.getIOSDriver().executeScript("mobile:removeApp", params);
       LOGGER.info("On Simulator App uninstalled successfully");
     } catch (Exception ex) {
@@ -115,6 +117,7 @@ public class DeviceSupportUtility {
     Map<String, Object> params = new HashMap<>();
     try {
       params.put(BUNDLE_ID, APP_BUNDLE_IDENTIFIER);
+      invalidatePageSource();
       DriverFactory.getIOSDriver().resetApp();
       LOGGER.info("On Simulator App reset successfully");
     } catch (Exception ex) {
@@ -127,6 +130,17 @@ public class DeviceSupportUtility {
    */
   public void putDeviceInRebootMode() {
     Map<String, Object> pars = new HashMap<>();
+    invalidatePageSource();
     DriverFactory.getIOSDriver().executeScript("mobile:handset:reboot", pars);
   }
+
+  /**
+   * App lifecycle commands change the screen behind the page driver's back, so its cached page
+   * source has to be dropped.
+   */
+  private void invalidatePageSource() {
+    if (DriverFactory.getMobilePageDriver() != null) {
+      DriverFactory.getMobilePageDriver().invalidatePageSource();
+    }
+  }
 }
@@ -1,26 +1,38 @@
 package com.dibtr.util;
 
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.remote.RemoteWebDriver;
-import org.openqa.selenium.remote.SessionId;
+import org.testng.ITestResult;
+import org.testng.Reporter;
 import org.testng.annotations.Listeners;
 import io.appium.java_client.ios.IOSDriver;
 import io.appium.java_client.ios.IOSElement;
 
 
-@Listeners({AllureTestListener.class})
+@Listeners({AllureTestListener.class, DeviceMatrixListener.class})
 public class DriverFactory {
   private static final AllureLogger LOGGER = new AllureLogger(DriverFactory.class);
-  private Properties configProperties = EnvironmentSettings.getInstance().getProperties();
   private static final String ENVIRONMENT_LOCATION = "environment.location";
   private static ThreadLocal<IOSDriver<IOSElement>> iosDriver = new ThreadLocal<>();
   private static ThreadLocal<IOSPageDriver> pageDriver = new ThreadLocal<>();
+  private static ThreadLocal<DeviceLogCollector> deviceLogCollector = new ThreadLocal<>();
+  private static ThreadLocal<DeviceSlot> deviceSlot = new ThreadLocal<>();
+  private static ThreadLocal<ServerConfigurator> mobileConfigurator = new ThreadLocal<>();
+  private static ThreadLocal<Boolean> startedByTest = new ThreadLocal<>();
   private ServerConfigurator serverConfigurator;
   private static ThreadLocal<WebDriver> webdriver = new ThreadLocal<>();
   private static ThreadLocal<WebPageDriver> webPageDriver = new ThreadLocal<>();
+  private static final AtomicInteger BOOTSTRAP_THREAD_COUNT = new AtomicInteger();
+  private static final ExecutorService BOOTSTRAP_EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "session-bootstrap-" + BOOTSTRAP_THREAD_COUNT.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
  
   /**
    * Tear down automation session. Here we are adding Suppress warning to avoid type cast issue.
@@ -44,6 +56,24 @@ public class DriverFactory {
     return pageDriver.get();
   }
 
+  /**
+   * Get the device log collector of the current thread's device session.
+   *
+   * @return DeviceLogCollector - The collector, null without device session or when disabled.
+   */
+  public static DeviceLogCollector getDeviceLogCollector() {
+    return deviceLogCollector.get();
+  }
+
+  /**
+   * Get the device the current thread's device session runs on.
+   *
+   * @return DeviceSlot - The device, null without device session.
+   */
+  public static DeviceSlot getDeviceSlot() {
+    return deviceSlot.get();
+  }
+
   public static WebPageDriver getWebPageDriver() {
     return webPageDriver.get();
   }
@@ -58,7 +88,16 @@ public class DriverFactory {
    */
 
   /**
-   * Mobile start up. This method runs before each class during a test suite.
+   * Mobile start up on the next free device of the device matrix, or on the device configured by
+   * mobile.device.* when there is no matrix.
+   */
+  public void startMobileAppSession() {
+    this.startMobileAppSession(null, null, false);
+  }
+
+  /**
+   * Mobile start up. This method runs before each class during a test suite. With a device matrix
+   * the session waits for a free matching device; null values match any device.
    * 
    * @param platformVersion - String - Model version value is like (13.0/ 13.2).This parameter ois
    *        optional when we are executing on Perfecto.
@@ -72,21 +111,79 @@ public class DriverFactory {
     LOGGER.info("Trying to start device session with platform {} & device name {}", platformVersion,
         deviceName);
 
-    switch (configProperties.getProperty(ENVIRONMENT_LOCATION).toLowerCase()) {
-      case "localhost":
-        LOGGER.info("Execution is going to start on local machine Simulator");
-        serverConfigurator = new AppiumServerConfigurator();
-        break;
-      default:
-        LOGGER.info("Wrong Execution platform is selected");
-        break;
+    releaseMobileSession();
+    serverConfigurator = createServerConfigurator();
+    DeviceSlot slot = leaseDeviceSlot(platformVersion, deviceName);
+    boolean started = false;
+    try {
+      serverConfigurator.startDeviceSession(slot, fullReset);
+      started = serverConfigurator.getWebDriver() != null;
+    } finally {
+      if (!started) {
+        releaseDeviceSlot(slot);
+      }
+    }
+    if (!started) {
+      LOGGER.error("Device session could not be started on {}", slot);
+      return;
     }
-    serverConfigurator.startDeviceSession(platformVersion, deviceName, fullReset);
+    bindMobileSession(slot);
     iosDriver.set(serverConfigurator.getWebDriver());
     pageDriver.set(serverConfigurator.getPageDriver());
+    deviceLogCollector.set(serverConfigurator.getDeviceLogCollector());
     LOGGER.info("Device session started");
   }
 
+  private ServerConfigurator createServerConfigurator() {
+    String location = EnvironmentSettings.config().getString(ENVIRONMENT_LOCATION);
+    switch (location.toLowerCase()) {
+      case "localhost":
+        LOGGER.info("Execution is going to start on local machine Simulator");
+        return new AppiumServerConfigurator();
+      default:
+        throw new IllegalStateException("Wrong Execution platform is selected: " + location);
+    }
+  }
+
+  /**
+   * Remembers the device session of the current thread, and whether a test method started it, so
+   * releaseTestMobileSession can reclaim it.
+   */
+  private void bindMobileSession(DeviceSlot slot) {
+    deviceSlot.set(slot);
+    mobileConfigurator.set(serverConfigurator);
+    ITestResult current = Reporter.getCurrentTestResult();
+    startedByTest.set(current != null && current.getMethod().isTest());
+  }
+
+  /**
+   * Leases a matching device from the device matrix, blocking while all of them are busy.
+   */
+  private DeviceSlot leaseDeviceSlot(String platformVersion, String deviceName) {
+    DeviceMatrixScheduler scheduler = DeviceMatrixScheduler.getInstance();
+    if (scheduler == null) {
+      return DeviceSlot.standalone(platformVersion, deviceName);
+    }
+    int timeout = EnvironmentSettings.config().getInt("device.matrix.lease.timeout.seconds", 600);
+    try {
+      DeviceSlot slot = scheduler.lease(platformVersion, deviceName, timeout, TimeUnit.SECONDS);
+      if (slot == null) {
+        throw new IllegalStateException("No device of the matrix became free within " + timeout
+            + " seconds");
+      }
+      return slot;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a device", e);
+    }
+  }
+
+  private static void releaseDeviceSlot(DeviceSlot slot) {
+    DeviceMatrixScheduler scheduler = DeviceMatrixScheduler.getInstance();
+    if (scheduler != null) {
+      scheduler.release(slot);
+    }
+  }
 
   /**
    * Shuts down the web driver and closes the app. This method runs after each class during a test
@@ -94,29 +191,241 @@ public class DriverFactory {
    */
   public void stopMobileAppSession() {
     LOGGER.info("Device session stop process started");
-    serverConfigurator.stopDeviceSession();
+    releaseMobileSession();
+    LOGGER.info("Device session stopped");
+  }
+
+  /**
+   * Stops the device session bound to the current thread, if any, and hands its device back to
+   * the device matrix.
+   */
+  private static void releaseMobileSession() {
+    ServerConfigurator configurator = mobileConfigurator.get();
+    DeviceSlot slot = deviceSlot.get();
+    mobileConfigurator.remove();
+    deviceSlot.remove();
+    startedByTest.remove();
     iosDriver.remove();
     pageDriver.remove();
-    LOGGER.info("Device session stopped");
+    deviceLogCollector.remove();
+    try {
+      if (configurator != null) {
+        configurator.stopDeviceSession();
+      }
+    } finally {
+      releaseDeviceSlot(slot);
+    }
   }
 
+  /**
+   * Reclaims the device session of a finished test method which did not stop it, e.g. because it
+   * failed before reaching stopMobileAppSession. Sessions started by configuration methods like
+   * &#64;BeforeClass are left to their &#64;After method. Called by AllureTestListener on the test
+   * thread once the test result is reported.
+   */
+  public static void releaseTestMobileSession() {
+    if (Boolean.TRUE.equals(startedByTest.get())) {
+      LOGGER.warn("Test finished without stopping its device session, stopping it now");
+      releaseMobileSession();
+    }
+  }
 
+
+  /**
+   * Browser start up. A warm browser of the configured web.browser.name is leased from the
+   * browser pool when one is idle, otherwise a new one is started.
+   */
   public void startBrowserSession() {
-    if (configProperties.getProperty("web.browser.name").equalsIgnoreCase("chrome")) {
-      System.setProperty("webdriver.chrome.driver",
-          configProperties.getProperty("web.chrome.driver.path"));
-      webdriver.set(new ChromeDriver());
-      webPageDriver.set(new WebPageDriver(getWebDriver()));
-      LOGGER.info("Started Driver {} ", webdriver.get());
-    } else if (configProperties.getProperty("web.browser.name").equalsIgnoreCase("firefox")) {
+    startBrowserSession(EnvironmentSettings.config().getString("web.browser.name"));
+  }
 
+  /**
+   * Browser start up for a given browser. "http" starts the browserless HttpWebDriver, which
+   * fetches and parses pages without rendering them, for flows that need no JavaScript.
+   *
+   * @param browserName - String - Browser name like chrome or http.
+   */
+  public void startBrowserSession(String browserName) {
+    WebDriver driver =
+        BrowserPool.getInstance().acquire(browserName, () -> createBrowser(browserName));
+    if (driver != null) {
+      bindBrowser(driver);
+    }
+  }
+
+  private WebDriver createBrowser(String browserName) {
+    if (browserName.equalsIgnoreCase("http")) {
+      return new HttpWebDriver();
+    } else if (browserName.equalsIgnoreCase("chrome")) {
+      if (System.getProperty("webdriver.chrome.driver") == null) {
+        System.setProperty("webdriver.chrome.driver",
+            EnvironmentSettings.config().getString("web.chrome.driver.path"));
+      }
+      return new ChromeDriver();
+    } else if (browserName.equalsIgnoreCase("firefox")) {
+
+    }
+    return null;
+  }
+
+  private void bindBrowser(WebDriver driver) {
+    webdriver.set(driver);
+    webPageDriver.set(new WebPageDriver(getWebDriver()));
+    LOGGER.info("Started Driver {} ", webdriver.get());
+  }
+
+  /**
+   * Starts the device session and the browser session in parallel. Both handshakes are remote and
+   * independent, so an integrated test only pays for the slower one. Call awaitSessions from the
+   * test thread to bind the results to its ThreadLocals.
+   * 
+   * @param mobileSpec - MobileSpec - Device session to start, null to skip the mobile side.
+   * @param webSpec - WebSpec - Browser session to start, null to skip the web side.
+   * @return SessionBootstrap - Futures of both sessions.
+   */
+  public SessionBootstrap startSessions(MobileSpec mobileSpec, WebSpec webSpec) {
+    LOGGER.info("Starting device and browser sessions in parallel");
+    if (mobileSpec != null) {
+      releaseMobileSession();
     }
+    // Only a mobile start owns a slot; the bound session stays untouched for a web-only start
+    ServerConfigurator configurator = mobileSpec == null ? null : createServerConfigurator();
+    DeviceSlot slot = mobileSpec == null ? null
+        : leaseDeviceSlot(mobileSpec.getPlatformVersion(), mobileSpec.getDeviceName());
+    CompletableFuture<DeviceSession> mobileSession = mobileSpec == null
+        ? CompletableFuture.completedFuture(null)
+        : CompletableFuture.supplyAsync(() -> {
+          configurator.startDeviceSession(slot, mobileSpec.isFullReset());
+          DeviceSession session = configurator.detachDeviceSession();
+          if (session == null) {
+            throw new IllegalStateException("Device session could not be started");
+          }
+          return session;
+        }, BOOTSTRAP_EXECUTOR);
+    CompletableFuture<WebDriver> webSession = webSpec == null
+        ? CompletableFuture.completedFuture(null)
+        : CompletableFuture.supplyAsync(() -> {
+          String browserName = webSpec.getBrowserName() != null ? webSpec.getBrowserName()
+              : EnvironmentSettings.config().getString("web.browser.name");
+          WebDriver driver =
+              BrowserPool.getInstance().acquire(browserName, () -> createBrowser(browserName));
+          if (driver == null) {
+            throw new IllegalStateException("Browser session could not be started");
+          }
+          return driver;
+        }, BOOTSTRAP_EXECUTOR);
+    return new SessionBootstrap(mobileSession, webSession, slot, configurator);
+  }
+
+  /**
+   * Waits for the sessions started by startSessions and binds them to the calling test's
+   * ThreadLocals. Fails as soon as either side fails, tearing down the side that did come up.
+   * 
+   * @param bootstrap - SessionBootstrap - Sessions returned by startSessions.
+   * @param timeoutSeconds - int - Maximum time to wait for both handshakes.
+   */
+  public void awaitSessions(SessionBootstrap bootstrap, int timeoutSeconds) {
+    try {
+      bootstrap.await(timeoutSeconds, TimeUnit.SECONDS);
+    } catch (IllegalStateException e) {
+      LOGGER.error("Parallel session start failed, cleaning up", e);
+      DeviceSlot slot = bootstrap.getDeviceSlot();
+      // The device is only free again once a session still starting on it is torn down
+      bootstrap.cleanUp().whenComplete((v, error) -> releaseDeviceSlot(slot));
+      throw e;
+    }
+    DeviceSession session = bootstrap.getMobileSession().join();
+    if (session != null) {
+      serverConfigurator = bootstrap.getServerConfigurator();
+      serverConfigurator.attachDeviceSession(session);
+      bindMobileSession(bootstrap.getDeviceSlot());
+      iosDriver.set(session.getDriver());
+      pageDriver.set(session.getPageDriver());
+      deviceLogCollector.set(session.getLogCollector());
+      LOGGER.info("Device session started");
+    }
+    WebDriver driver = bootstrap.getWebSession().join();
+    if (driver != null) {
+      bindBrowser(driver);
+    }
+  }
+
+  /**
+   * Starts both sessions in parallel and binds them to the calling test, waiting up to the
+   * configured bootstrap timeout.
+   * 
+   * @param mobileSpec - MobileSpec - Device session to start, null to skip the mobile side.
+   * @param webSpec - WebSpec - Browser session to start, null to skip the web side.
+   */
+  public void startSessionsAndWait(MobileSpec mobileSpec, WebSpec webSpec) {
+    awaitSessions(startSessions(mobileSpec, webSpec),
+        EnvironmentSettings.config().getInt("environment.session.bootstrap.timeout", 300));
   }
 
+  /**
+   * Hands the browser of the current thread back to the browser pool, which resets it for the
+   * next test or quits it once it is used up.
+   */
   public void stopWebSession() {
-    SessionId sessionid = ((RemoteWebDriver) DriverFactory.getWebDriver()).getSessionId();
-    if (sessionid != null) {
-      DriverFactory.getWebDriver().quit();
+    WebDriver driver = DriverFactory.getWebDriver();
+    webdriver.remove();
+    webPageDriver.remove();
+    if (driver != null) {
+      BrowserPool.getInstance().release(driver);
+    }
+  }
+
+  /**
+   * Device session requested through startSessions. Null values match any device of the device
+   * matrix, or stand for the device configured by mobile.device.* when there is no matrix.
+   */
+  public static class MobileSpec {
+    private final String platformVersion;
+    private final String deviceName;
+    private final boolean fullReset;
+
+    public MobileSpec(String platformVersion, String deviceName) {
+      this(platformVersion, deviceName, false);
+    }
+
+    public MobileSpec(String platformVersion, String deviceName, boolean fullReset) {
+      this.platformVersion = platformVersion;
+      this.deviceName = deviceName;
+      this.fullReset = fullReset;
+    }
+
+    public String getPlatformVersion() {
+      return platformVersion;
+    }
+
+    public String getDeviceName() {
+      return deviceName;
+    }
+
+    public boolean isFullReset() {
+      return fullReset;
+    }
+  }
+
+  /**
+   * Browser session requested through startSessions.
+   */
+  public static class WebSpec {
+    private final String browserName;
+
+    /**
+     * Requests the browser configured by web.browser.name.
+     */
+    public WebSpec() {
+      this(null);
+    }
+
+    public WebSpec(String browserName) {
+      this.browserName = browserName;
+    }
+
+    public String getBrowserName() {
+      return browserName;
     }
   }
 }
@@ -1,83 +1,119 @@
 package com.dibtr.util;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
-
+/**
+ * This class gives access to the configuration of a properties file. The settings hold an
+ * immutable ConfigSnapshot in a volatile field: lookups never lock, and setProperty publishes a new
+ * snapshot instead of mutating the one other threads are reading.
+ */
 public class EnvironmentSettings {
-  private static EnvironmentSettings settings;
-  private Properties properties;
+  private static final String DEFAULT_FILE = "config.properties";
+  private static final Map<Path, EnvironmentSettings> SETTINGS_BY_FILE = new ConcurrentHashMap<>();
+  private volatile ConfigSnapshot snapshot;
+
+  /**
+   * Loads the default properties file exactly once, on first use, whichever thread gets there
+   * first.
+   */
+  private static final class DefaultHolder {
+    private static final EnvironmentSettings INSTANCE = forFile(Paths.get(DEFAULT_FILE));
+  }
 
   /**
-   * Constructor, instantiate class with default properties file.
+   * Constructor, instantiate class with the given properties file.
    */
-  private EnvironmentSettings() {
-    this.properties = CommonUtility.loadProperties();
+  private EnvironmentSettings(Path file) {
+    this.snapshot = ConfigSnapshot.load(file);
   }
 
-  
   /**
    * Get environment settings using default properties files.
-   * 
+   *
    * @return EnvironmentSettings
    */
   public static EnvironmentSettings getInstance() {
-    if (settings == null) {
-      settings = new EnvironmentSettings();
-    }
-    return settings;
+    return DefaultHolder.INSTANCE;
   }
 
   /**
-   * Get environment settings using properties file specified.
-   * 
+   * Get environment settings using properties file specified. Every file is loaded once and
+   * shared afterwards.
+   *
    * @param filePath is path to properties file to be used.
    * @return EnvironmentSettings
    */
   public static EnvironmentSettings getInstance(final String filePath) {
-    if (settings == null) {
-      settings = new EnvironmentSettings();
-    }
-    return settings;
+    return forFile(Paths.get(filePath));
+  }
+
+  /**
+   * Get the current configuration snapshot of the default properties file.
+   *
+   * @return ConfigSnapshot - Immutable configuration.
+   */
+  public static ConfigSnapshot config() {
+    return getInstance().getSnapshot();
+  }
+
+  private static EnvironmentSettings forFile(Path file) {
+    return SETTINGS_BY_FILE.computeIfAbsent(file.toAbsolutePath().normalize(),
+        EnvironmentSettings::new);
+  }
+
+  /**
+   * Get the current configuration snapshot. It never changes; read it once when several keys are
+   * needed together.
+   *
+   * @return ConfigSnapshot - Immutable configuration.
+   */
+  public ConfigSnapshot getSnapshot() {
+    return snapshot;
   }
 
   /**
    * Get Properties object that contains environment settings.
-   * 
-   * @return the properties
+   *
+   * @return the properties, a copy of the current snapshot.
    */
   public Properties getProperties() {
-    return properties;
+    return snapshot.toProperties();
   }
 
   /**
    * Get specific property from the environment settings.
-   * 
+   *
    * @param key is the name of the property to retrieve.
    * @return property value.
    */
   public String getProperty(final String key) {
-    return properties.getProperty(key);
+    return snapshot.getString(key);
   }
 
   /**
    * Get specific property from the environment settings. It will return defaultValue if value for
    * given key is null.
-   * 
+   *
    * @param key is the name of the property to retrieve.
    * @param defaultValue is value returned if value for key is null.
    * @return property value.
    */
   public String getProperty(final String key, final String defaultValue) {
-    return (properties.getProperty(key) != null) ? properties.getProperty(key) : defaultValue;
+    return snapshot.getString(key, defaultValue);
   }
 
   /**
-   * Set a configuration property using the given key/value pair.
-   * 
+   * Set a configuration property using the given key/value pair. Threads that already hold the
+   * previous snapshot keep seeing it unchanged.
+   *
    * @param key - the configuration key
    * @param value - the configuration value
    */
-  public void setProperty(final String key, final String value) {
-    properties.setProperty(key, value);
+  public synchronized void setProperty(final String key, final String value) {
+    snapshot = snapshot.with(key, value);
   }
 }
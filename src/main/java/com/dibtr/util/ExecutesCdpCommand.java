@@ -0,0 +1,19 @@
+package com.dibtr.util;
+
+import java.util.Map;
+
+/**
+ * This interface is implemented by browsers which accept Chrome DevTools Protocol commands, see
+ * ChromeDevTools for the chromedriver sessions of Selenium 3.
+ */
+public interface ExecutesCdpCommand {
+
+  /**
+   * This function is used to run a DevTools command in the current window of the browser.
+   *
+   * @param commandName - String - Command like Network.clearBrowserCookies.
+   * @param parameters - Map - Parameters of the command.
+   * @return Map - Result of the command.
+   */
+  Map<String, Object> executeCdpCommand(String commandName, Map<String, Object> parameters);
+}
@@ -0,0 +1,162 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class owns the HttpClient shared by the framework's result and telemetry uploads. Requests
+ * go through one pooled connection manager, so repeated posts to the same host reuse kept-alive
+ * connections (and their TLS sessions) instead of opening a new client per call.</br>
+ * </br>
+ * Requests are executed with a ResponseHandler, which always consumes the entity and hands the
+ * connection back to the pool, whether the handler reads the body or not.
+ */
+public class HttpClientProvider {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientProvider.class);
+  private static HttpClientProvider instance;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient client;
+  private final RequestConfig requestConfig;
+  private final ExecutorService asyncExecutor;
+
+  /**
+   * Instantiates a new provider with its own connection pool.
+   *
+   * @param maxTotal - int - Maximum open connections across all hosts.
+   * @param maxPerRoute - int - Maximum open connections to one host.
+   * @param connectTimeoutMillis - int - Timeout to establish a connection.
+   * @param socketTimeoutMillis - int - Timeout waiting for data on an open connection.
+   * @param keepAliveMillis - long - Idle time a connection is kept when the server sends no
+   *        Keep-Alive timeout.
+   * @param asyncThreads - int - Threads executing doPostAsync style requests.
+   */
+  public HttpClientProvider(int maxTotal, int maxPerRoute, int connectTimeoutMillis,
+      int socketTimeoutMillis, long keepAliveMillis, int asyncThreads) {
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+    connectionManager.setValidateAfterInactivity(2000);
+    requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeoutMillis)
+        .setSocketTimeout(socketTimeoutMillis).setConnectionRequestTimeout(connectTimeoutMillis)
+        .build();
+    client = HttpClients.custom().setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig).setUserAgent("Mozilla/5.0")
+        .setKeepAliveStrategy((response, context) -> {
+          long serverKeepAlive =
+              DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          return serverKeepAlive > 0 ? serverKeepAlive : keepAliveMillis;
+        }).evictExpiredConnections()
+        .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS).build();
+    AtomicInteger threadCount = new AtomicInteger();
+    asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+      Thread thread = new Thread(runnable, "http-client-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Get the shared provider configured by the http.client.* keys.
+   *
+   * @return HttpClientProvider - Shared provider instance.
+   */
+  public static synchronized HttpClientProvider getInstance() {
+    if (instance == null) {
+      EnvironmentSettings settings = EnvironmentSettings.getInstance();
+      instance = new HttpClientProvider(
+          Integer.parseInt(settings.getProperty("http.client.max.total", "50")),
+          Integer.parseInt(settings.getProperty("http.client.max.per.route", "10")),
+          Integer.parseInt(settings.getProperty("http.client.connect.timeout.ms", "10000")),
+          Integer.parseInt(settings.getProperty("http.client.socket.timeout.ms", "60000")),
+          Long.parseLong(settings.getProperty("http.client.keep.alive.ms", "30000")),
+          Integer.parseInt(settings.getProperty("http.client.async.threads", "4")));
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "http-client-close"));
+    }
+    return instance;
+  }
+
+  public CloseableHttpClient getClient() {
+    return client;
+  }
+
+  /**
+   * Timeouts every request of the pooled client runs with. A request that sets its own config
+   * should start from a copy of this one.
+   *
+   * @return RequestConfig - Default request config of the client.
+   */
+  public RequestConfig getRequestConfig() {
+    return requestConfig;
+  }
+
+  /**
+   * This function is used to execute a request on the pooled client. The connection is released
+   * once the handler returns.
+   *
+   * @param request - HttpUriRequest - Request to execute.
+   * @param handler - ResponseHandler - Converts the response, may stream the body.
+   * @return T - Result of the handler.
+   * @throws IOException if the request fails or the handler throws.
+   */
+  public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> handler)
+      throws IOException {
+    return client.execute(request, handler);
+  }
+
+  /**
+   * This function is used to execute a request on the pooled client without blocking the caller.
+   *
+   * @param request - HttpUriRequest - Request to execute.
+   * @param handler - ResponseHandler - Converts the response, may stream the body.
+   * @return CompletableFuture - Result of the handler, completed exceptionally if the request
+   *         fails.
+   */
+  public <T> CompletableFuture<T> executeAsync(HttpUriRequest request,
+      ResponseHandler<? extends T> handler) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    asyncExecutor.execute(() -> {
+      try {
+        result.complete(client.execute(request, handler));
+      } catch (IOException | RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Pool usage: leased, available (idle, kept alive) and pending connections.
+   *
+   * @return PoolStats - Totals across all routes.
+   */
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * Closes the client and every pooled connection.
+   */
+  public void shutdown() {
+    asyncExecutor.shutdown();
+    try {
+      client.close();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to close pooled http client", e);
+    }
+  }
+}
@@ -0,0 +1,626 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.util.EntityUtils;
+import org.ccil.cowan.tagsoup.Parser;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.InvalidSelectorException;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.FindsByCssSelector;
+import org.openqa.selenium.internal.FindsByLinkText;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.openqa.selenium.logging.Logs;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * This class is a WebDriver without browser for web flows that need no JavaScript: login
+ * redirects, static content and form posts. Pages are fetched with the pooled HTTP client and
+ * parsed into a DOM with TagSoup, which accepts real-world HTML.</br>
+ * </br>
+ * Elements are found by XPath, by CSS selectors translated to XPath and by link text; By.id, name,
+ * className and tagName work through their XPath fallback. Clicking a link opens it, clicking a
+ * submit button or pressing Enter in a field submits its form, and typed values, checkboxes,
+ * radios and options are kept in the DOM so forms post what the test entered. Cookies are kept per
+ * driver. Redirects are followed like a browser does: 301, 302 and 303 continue with GET, 307
+ * and 308 repeat the request.</br>
+ * </br>
+ * Scripts are not executed and nothing is rendered, so the driver is no JavascriptExecutor, has
+ * no screenshots, elements have no position and visibility is judged from the markup.
+ */
+public class HttpWebDriver implements WebDriver, FindsByXPath, FindsByCssSelector, FindsByLinkText {
+  private static final AllureLogger LOGGER = new AllureLogger(HttpWebDriver.class);
+  private static final String WINDOW_HANDLE = "http-window";
+  private static final String BLANK = "about:blank";
+  private static final int MAX_REDIRECTS = 20;
+
+  private final CloseableHttpClient client;
+  private final RequestConfig requestConfig;
+  private final BasicCookieStore cookieStore = new BasicCookieStore();
+  private final HttpClientContext context = HttpClientContext.create();
+  private final XPath xpath = XPathFactory.newInstance().newXPath();
+  private final List<String> history = new ArrayList<>();
+  private int historyIndex = -1;
+  private Page page;
+  private boolean quit;
+
+  /**
+   * Instantiates a driver on the shared pooled HTTP client, showing about:blank.
+   */
+  public HttpWebDriver() {
+    this(HttpClientProvider.getInstance());
+  }
+
+  /**
+   * Instantiates a driver on the given HTTP client, showing about:blank.
+   *
+   * @param provider - HttpClientProvider - Client pages are fetched with.
+   */
+  public HttpWebDriver(HttpClientProvider provider) {
+    this.client = provider.getClient();
+    this.requestConfig =
+        RequestConfig.copy(provider.getRequestConfig()).setRedirectsEnabled(false).build();
+    context.setCookieStore(cookieStore);
+    page = blankPage();
+  }
+
+  @Override
+  public void get(String url) {
+    ensureOpen();
+    open(url);
+    if (historyIndex < history.size() - 1) {
+      history.subList(historyIndex + 1, history.size()).clear();
+    }
+    history.add(page.url);
+    historyIndex = history.size() - 1;
+  }
+
+  @Override
+  public String getCurrentUrl() {
+    ensureOpen();
+    return page.url;
+  }
+
+  /**
+   * HTTP status of the current page, after redirects.
+   *
+   * @return int - Status code, 0 for about:blank.
+   */
+  public int getStatusCode() {
+    ensureOpen();
+    return page.status;
+  }
+
+  @Override
+  public String getTitle() {
+    ensureOpen();
+    try {
+      return xpath.evaluate("normalize-space(//title)", page.document);
+    } catch (XPathExpressionException e) {
+      return "";
+    }
+  }
+
+  // java-client declares the finders generic; every element found here is an HttpWebElement, so
+  // the casts of the elements found by By and by xpath are safe.
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> List<T> findElements(By by) {
+    ensureOpen();
+    return (List<T>) by.findElements(this);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> T findElement(By by) {
+    ensureOpen();
+    return (T) by.findElement(this);
+  }
+
+  @Override
+  public String getPageSource() {
+    ensureOpen();
+    return page.source;
+  }
+
+  @Override
+  public void close() {
+    quit();
+  }
+
+  @Override
+  public void quit() {
+    quit = true;
+    cookieStore.clear();
+  }
+
+  @Override
+  public Set<String> getWindowHandles() {
+    ensureOpen();
+    return Collections.singleton(WINDOW_HANDLE);
+  }
+
+  @Override
+  public String getWindowHandle() {
+    ensureOpen();
+    return WINDOW_HANDLE;
+  }
+
+  @Override
+  public TargetLocator switchTo() {
+    ensureOpen();
+    return new HttpTargetLocator();
+  }
+
+  @Override
+  public Navigation navigate() {
+    ensureOpen();
+    return new HttpNavigation();
+  }
+
+  @Override
+  public Options manage() {
+    ensureOpen();
+    return new HttpOptions();
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByXPath(String using) {
+    return first(findElementsByXPath(using), "xpath " + using);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> List<T> findElementsByXPath(String using) {
+    return (List<T>) select(page.document, using);
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByCssSelector(String using) {
+    return first(findElementsByCssSelector(using), "css selector " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByCssSelector(String using) {
+    return findElementsByXPath(CssSelectorTranslator.toXPath(using, false));
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByLinkText(String using) {
+    return first(findElementsByLinkText(using), "link text " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByLinkText(String using) {
+    return links(findElementsByXPath("//a[@href]"), using, false);
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByPartialLinkText(String using) {
+    return first(findElementsByPartialLinkText(using), "partial link text " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByPartialLinkText(String using) {
+    return links(findElementsByXPath("//a[@href]"), using, true);
+  }
+
+  @Override
+  public String toString() {
+    return "HttpWebDriver (" + (quit ? "quit" : page.url) + ")";
+  }
+
+  /**
+   * Loads the response of a request as the current page, e.g. a form submission, and adds it to
+   * the history.
+   */
+  void submit(HttpRequestBase request) {
+    ensureOpen();
+    load(request);
+    history.subList(historyIndex + 1, history.size()).clear();
+    history.add(page.url);
+    historyIndex = history.size() - 1;
+  }
+
+  /**
+   * Resolves a link of the current page against its URL; on about:blank relative URLs are
+   * resolved against web.application.base.url.
+   */
+  URI resolve(String reference) {
+    try {
+      URI base = new URI(page.status != 0 ? page.url
+          : EnvironmentSettings.config().getString("web.application.base.url", BLANK));
+      return URIUtils.resolve(base, reference.trim().replace(" ", "%20"));
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      throw new WebDriverException("Invalid URL " + reference + " on " + page.url, e);
+    }
+  }
+
+  /**
+   * Searches the current page with an XPath expression, relative to the context node.
+   */
+  List<WebElement> select(Node contextNode, String expression) {
+    ensureOpen();
+    NodeList nodes;
+    try {
+      nodes = (NodeList) xpath.evaluate(expression, contextNode, XPathConstants.NODESET);
+    } catch (XPathExpressionException e) {
+      throw new InvalidSelectorException("Invalid xpath " + expression, e);
+    }
+    List<WebElement> elements = new ArrayList<>(nodes.getLength());
+    for (int i = 0; i < nodes.getLength(); i++) {
+      if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+        elements.add(new HttpWebElement(this, page.document, (Element) nodes.item(i)));
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Whether the given DOM is still the current page; elements of earlier pages are stale.
+   */
+  boolean isCurrent(Document document) {
+    return !quit && page.document == document;
+  }
+
+  static <T extends WebElement> T first(List<T> elements, String description) {
+    if (elements.isEmpty()) {
+      throw new NoSuchElementException("Unable to locate element by " + description);
+    }
+    return elements.get(0);
+  }
+
+  static <T extends WebElement> List<T> links(List<T> anchors, String text, boolean partial) {
+    List<T> matching = new ArrayList<>();
+    for (T anchor : anchors) {
+      String linkText = anchor.getText().trim();
+      if (partial ? linkText.contains(text) : linkText.equals(text.trim())) {
+        matching.add(anchor);
+      }
+    }
+    return matching;
+  }
+
+  private void open(String url) {
+    if (BLANK.equals(url)) {
+      page = blankPage();
+      return;
+    }
+    URI uri = resolve(url);
+    if (!uri.isAbsolute()) {
+      throw new WebDriverException("Cannot open relative URL " + url + " from " + page.url);
+    }
+    load(new HttpGet(uri));
+  }
+
+  private void load(HttpRequestBase request) {
+    HttpRequestBase next = request;
+    long start = System.nanoTime();
+    for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+      next.setConfig(requestConfig);
+      try (CloseableHttpResponse response = client.execute(next, context)) {
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (status >= 300 && status < 400 && response.getFirstHeader("Location") != null) {
+          EntityUtils.consume(entity);
+          URI target = URIUtils.resolve(next.getURI(),
+              response.getFirstHeader("Location").getValue().trim().replace(" ", "%20"));
+          next = redirect(next, target, status);
+          continue;
+        }
+        String source =
+            entity == null ? "" : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+        page = new Page(next.getURI().toString(), status, source, parse(source));
+        LOGGER.info("Loaded {} ({}) in {} ms", page.url, status,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return;
+      } catch (IOException | IllegalArgumentException e) {
+        throw new WebDriverException("Unable to load " + next.getURI(), e);
+      }
+    }
+    throw new WebDriverException("More than " + MAX_REDIRECTS + " redirects from "
+        + request.getURI());
+  }
+
+  private static HttpRequestBase redirect(HttpRequestBase request, URI target, int status) {
+    if ((status == 307 || status == 308) && request instanceof HttpEntityEnclosingRequest) {
+      HttpPost repeated = new HttpPost(target);
+      repeated.setEntity(((HttpEntityEnclosingRequest) request).getEntity());
+      return repeated;
+    }
+    return new HttpGet(target);
+  }
+
+  private static Document parse(String source) {
+    try {
+      Parser parser = new Parser();
+      parser.setFeature(Parser.namespacesFeature, false);
+      parser.setFeature(Parser.namespacePrefixesFeature, false);
+      DOMResult result = new DOMResult();
+      TransformerFactory.newInstance().newTransformer()
+          .transform(new SAXSource(parser, new InputSource(new StringReader(source))), result);
+      return (Document) result.getNode();
+    } catch (SAXException | TransformerException e) {
+      throw new WebDriverException("Unable to parse page", e);
+    }
+  }
+
+  private static Page blankPage() {
+    return new Page(BLANK, 0, "", parse(""));
+  }
+
+  private void ensureOpen() {
+    if (quit) {
+      throw new NoSuchSessionException("HttpWebDriver was quit");
+    }
+  }
+
+  private Cookie toSeleniumCookie(org.apache.http.cookie.Cookie cookie) {
+    return new Cookie(cookie.getName(), cookie.getValue(), cookie.getDomain(), cookie.getPath(),
+        cookie.getExpiryDate(), cookie.isSecure());
+  }
+
+  /**
+   * A fetched page.
+   */
+  private static final class Page {
+    private final String url;
+    private final int status;
+    private final String source;
+    private final Document document;
+
+    private Page(String url, int status, String source, Document document) {
+      this.url = url;
+      this.status = status;
+      this.source = source;
+      this.document = document;
+    }
+  }
+
+  private final class HttpNavigation implements Navigation {
+    @Override
+    public void back() {
+      if (historyIndex > 0) {
+        open(history.get(--historyIndex));
+      }
+    }
+
+    @Override
+    public void forward() {
+      if (historyIndex < history.size() - 1) {
+        open(history.get(++historyIndex));
+      }
+    }
+
+    @Override
+    public void to(String url) {
+      get(url);
+    }
+
+    @Override
+    public void to(URL url) {
+      get(url.toString());
+    }
+
+    @Override
+    public void refresh() {
+      open(page.url);
+    }
+  }
+
+  private final class HttpTargetLocator implements TargetLocator {
+    @Override
+    public WebDriver frame(int index) {
+      throw new NoSuchFrameException("HttpWebDriver does not load frames");
+    }
+
+    @Override
+    public WebDriver frame(String nameOrId) {
+      throw new NoSuchFrameException("HttpWebDriver does not load frames");
+    }
+
+    @Override
+    public WebDriver frame(WebElement frameElement) {
+      throw new NoSuchFrameException("HttpWebDriver does not load frames");
+    }
+
+    @Override
+    public WebDriver parentFrame() {
+      return HttpWebDriver.this;
+    }
+
+    @Override
+    public WebDriver window(String nameOrHandle) {
+      if (!WINDOW_HANDLE.equals(nameOrHandle)) {
+        throw new NoSuchWindowException("No window " + nameOrHandle);
+      }
+      return HttpWebDriver.this;
+    }
+
+    @Override
+    public WebDriver defaultContent() {
+      return HttpWebDriver.this;
+    }
+
+    @Override
+    public WebElement activeElement() {
+      List<WebElement> body = findElementsByXPath("//body");
+      return first(body, "active element");
+    }
+
+    @Override
+    public org.openqa.selenium.Alert alert() {
+      throw new NoAlertPresentException("HttpWebDriver has no alerts");
+    }
+  }
+
+  private final class HttpOptions implements Options {
+    @Override
+    public void addCookie(Cookie cookie) {
+      BasicClientCookie clientCookie = new BasicClientCookie(cookie.getName(), cookie.getValue());
+      clientCookie.setDomain(cookie.getDomain() != null ? cookie.getDomain()
+          : URI.create(page.url).getHost());
+      clientCookie.setPath(cookie.getPath() != null ? cookie.getPath() : "/");
+      clientCookie.setExpiryDate(cookie.getExpiry());
+      clientCookie.setSecure(cookie.isSecure());
+      clientCookie.setAttribute(BasicClientCookie.DOMAIN_ATTR, clientCookie.getDomain());
+      cookieStore.addCookie(clientCookie);
+    }
+
+    @Override
+    public void deleteCookieNamed(String name) {
+      List<org.apache.http.cookie.Cookie> kept = new ArrayList<>();
+      for (org.apache.http.cookie.Cookie cookie : cookieStore.getCookies()) {
+        if (!cookie.getName().equals(name)) {
+          kept.add(cookie);
+        }
+      }
+      cookieStore.clear();
+      for (org.apache.http.cookie.Cookie cookie : kept) {
+        cookieStore.addCookie(cookie);
+      }
+    }
+
+    @Override
+    public void deleteCookie(Cookie cookie) {
+      deleteCookieNamed(cookie.getName());
+    }
+
+    @Override
+    public void deleteAllCookies() {
+      cookieStore.clear();
+    }
+
+    @Override
+    public Set<Cookie> getCookies() {
+      cookieStore.clearExpired(new Date());
+      Set<Cookie> cookies = new HashSet<>();
+      for (org.apache.http.cookie.Cookie cookie : cookieStore.getCookies()) {
+        cookies.add(toSeleniumCookie(cookie));
+      }
+      return cookies;
+    }
+
+    @Override
+    public Cookie getCookieNamed(String name) {
+      for (Cookie cookie : getCookies()) {
+        if (cookie.getName().equals(name)) {
+          return cookie;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public Timeouts timeouts() {
+      return new Timeouts() {
+        @Override
+        public Timeouts implicitlyWait(long time, TimeUnit unit) {
+          return this;
+        }
+
+        @Override
+        public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+          return this;
+        }
+
+        @Override
+        public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+          return this;
+        }
+      };
+    }
+
+    @Override
+    public ImeHandler ime() {
+      throw new UnsupportedCommandException("HttpWebDriver has no input method");
+    }
+
+    @Override
+    public Window window() {
+      return new Window() {
+        @Override
+        public void setSize(Dimension targetSize) {
+          // nothing is rendered
+        }
+
+        @Override
+        public void setPosition(Point targetPosition) {
+          // nothing is rendered
+        }
+
+        @Override
+        public Dimension getSize() {
+          return new Dimension(0, 0);
+        }
+
+        @Override
+        public Point getPosition() {
+          return new Point(0, 0);
+        }
+
+        @Override
+        public void maximize() {
+          // nothing is rendered
+        }
+
+        @Override
+        public void fullscreen() {
+          // nothing is rendered
+        }
+      };
+    }
+
+    @Override
+    public Logs logs() {
+      throw new UnsupportedCommandException("HttpWebDriver has no browser logs");
+    }
+  }
+}
@@ -0,0 +1,586 @@
+package com.dibtr.util;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.message.BasicNameValuePair;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.ElementNotInteractableException;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsDriver;
+import org.openqa.selenium.internal.FindsByCssSelector;
+import org.openqa.selenium.internal.FindsByLinkText;
+import org.openqa.selenium.internal.FindsByXPath;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * This class is an element of a page loaded by HttpWebDriver. Its state (typed values, checked
+ * boxes, selected options) lives in the page DOM, so it is posted with the form and seen by other
+ * elements of the same page. Once the driver loads another page the element is stale.
+ */
+public class HttpWebElement
+    implements WebElement, WrapsDriver, FindsByXPath, FindsByCssSelector, FindsByLinkText {
+  private static final Set<String> HIDDEN_TAGS = new HashSet<>(Arrays.asList("head", "script",
+      "style", "template", "noscript", "title", "meta", "link"));
+  private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList("p", "div", "li",
+      "ul", "ol", "tr", "table", "form", "h1", "h2", "h3", "h4", "h5", "h6", "section",
+      "article", "header", "footer", "nav", "pre", "blockquote", "dl", "dt", "dd"));
+  private static final Set<String> BOOLEAN_ATTRIBUTES = new HashSet<>(Arrays.asList("checked",
+      "selected", "disabled", "readonly", "required", "multiple", "hidden", "autofocus"));
+  private static final Set<String> TEXT_INPUTS = new HashSet<>(Arrays.asList("text", "password",
+      "email", "search", "tel", "url", "number", "date", "datetime-local", "month", "week",
+      "time", "color", "range", "file"));
+
+  private final HttpWebDriver driver;
+  private final Document document;
+  private final Element element;
+
+  HttpWebElement(HttpWebDriver driver, Document document, Element element) {
+    this.driver = driver;
+    this.document = document;
+    this.element = element;
+  }
+
+  /**
+   * Follows a link, submits the form of a submit button, toggles a checkbox, checks a radio or
+   * selects an option. Other elements do nothing when clicked.
+   */
+  @Override
+  public void click() {
+    checkInteractable();
+    String tag = getTagName();
+    String type = type();
+    if ("a".equals(tag) && element.hasAttribute("href")) {
+      String href = element.getAttribute("href").trim();
+      if (!href.startsWith("#") && !href.toLowerCase(Locale.ROOT).startsWith("javascript:")) {
+        driver.get(driver.resolve(href).toString());
+      }
+    } else if (("input".equals(tag) && ("submit".equals(type) || "image".equals(type)))
+        || ("button".equals(tag) && "submit".equals(type))) {
+      Element form = form();
+      if (form != null) {
+        submit(form, element);
+      }
+    } else if ("input".equals(tag) && "checkbox".equals(type)) {
+      setFlag(element, "checked", !element.hasAttribute("checked"));
+    } else if ("input".equals(tag) && "radio".equals(type)) {
+      for (Element radio : controls(form() != null ? form() : document.getDocumentElement())) {
+        if ("radio".equals(typeOf(radio)) && radio.getAttribute("name")
+            .equals(element.getAttribute("name"))) {
+          setFlag(radio, "checked", false);
+        }
+      }
+      setFlag(element, "checked", true);
+    } else if ("option".equals(tag)) {
+      Element select = ancestor(element, "select");
+      if (select != null && !select.hasAttribute("multiple")) {
+        for (Element option : elements(select, ".//option")) {
+          setFlag(option, "selected", false);
+        }
+        setFlag(element, "selected", true);
+      } else {
+        setFlag(element, "selected", !element.hasAttribute("selected"));
+      }
+    }
+  }
+
+  @Override
+  public void submit() {
+    checkStale();
+    Element form = "form".equals(getTagName()) ? element : form();
+    if (form == null) {
+      throw new WebDriverException("Element is not in a form: " + this);
+    }
+    submit(form, null);
+  }
+
+  /**
+   * Types into a text field or textarea. Enter submits the form of the field; other special keys
+   * are ignored.
+   */
+  @Override
+  public void sendKeys(CharSequence... keysToSend) {
+    checkInteractable();
+    if (!isEditable()) {
+      throw new ElementNotInteractableException("Element cannot be typed into: " + this);
+    }
+    StringBuilder typed = new StringBuilder(value());
+    boolean enter = false;
+    for (CharSequence keys : keysToSend) {
+      for (int i = 0; i < keys.length(); i++) {
+        char c = keys.charAt(i);
+        if (c == Keys.ENTER.charAt(0) || c == Keys.RETURN.charAt(0) || c == '\n') {
+          enter = true;
+        } else if (c < Keys.NULL.charAt(0) || c > '\uF8FF') {
+          typed.append(c);
+        }
+      }
+    }
+    setValue(typed.toString());
+    Element form = form();
+    if (enter && form != null && "input".equals(getTagName())) {
+      submit(form, null);
+    }
+  }
+
+  @Override
+  public void clear() {
+    checkInteractable();
+    if (isEditable()) {
+      setValue("");
+    }
+  }
+
+  @Override
+  public String getTagName() {
+    checkStale();
+    return element.getTagName().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Current value of a property or attribute, the way Selenium reports it: value is the current
+   * value of a field, boolean attributes are "true" or null, href and src are absolute.
+   */
+  @Override
+  public String getAttribute(String name) {
+    checkStale();
+    String attribute = name.toLowerCase(Locale.ROOT);
+    if ("value".equals(attribute) && isEditable() || "value".equals(attribute)
+        && "select".equals(getTagName())) {
+      return value();
+    }
+    if (BOOLEAN_ATTRIBUTES.contains(attribute)) {
+      return element.hasAttribute(attribute) ? "true" : null;
+    }
+    if (!element.hasAttribute(attribute)) {
+      return null;
+    }
+    String value = element.getAttribute(attribute);
+    if ("href".equals(attribute) || "src".equals(attribute) || "action".equals(attribute)) {
+      try {
+        return driver.resolve(value).toString();
+      } catch (WebDriverException e) {
+        return value;
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public boolean isSelected() {
+    checkStale();
+    return element.hasAttribute("checked") || element.hasAttribute("selected");
+  }
+
+  @Override
+  public boolean isEnabled() {
+    checkStale();
+    for (Node node = element; node instanceof Element; node = node.getParentNode()) {
+      if (((Element) node).hasAttribute("disabled")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Text content as a browser would render it: hidden elements are skipped, blocks and br start
+   * new lines and whitespace is collapsed.
+   */
+  @Override
+  public String getText() {
+    checkStale();
+    if (!isDisplayed()) {
+      return "";
+    }
+    StringBuilder text = new StringBuilder();
+    appendText(element, text);
+    StringBuilder normalized = new StringBuilder();
+    for (String line : text.toString().split("\n")) {
+      String collapsed = line.replaceAll("[ \\t\\r\\f\\u00A0]+", " ").trim();
+      if (!collapsed.isEmpty()) {
+        normalized.append(normalized.length() > 0 ? "\n" : "").append(collapsed);
+      }
+    }
+    return normalized.toString();
+  }
+
+  // java-client declares the finders generic; every element found here is an HttpWebElement, so
+  // the casts of the elements found by By and by xpath are safe.
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> List<T> findElements(By by) {
+    checkStale();
+    return (List<T>) by.findElements(this);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> T findElement(By by) {
+    checkStale();
+    return (T) by.findElement(this);
+  }
+
+  /**
+   * Judged from the markup: hidden inputs, the head, elements with the hidden attribute or an
+   * inline display:none / visibility:hidden style and their descendants are not displayed.
+   */
+  @Override
+  public boolean isDisplayed() {
+    checkStale();
+    if ("input".equals(getTagName()) && "hidden".equals(type())) {
+      return false;
+    }
+    for (Node node = element; node instanceof Element; node = node.getParentNode()) {
+      if (isHidden((Element) node)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Point getLocation() {
+    return new Point(0, 0);
+  }
+
+  @Override
+  public Dimension getSize() {
+    return new Dimension(0, 0);
+  }
+
+  @Override
+  public Rectangle getRect() {
+    return new Rectangle(getLocation(), getSize());
+  }
+
+  /**
+   * Value of a property in the inline style of the element.
+   */
+  @Override
+  public String getCssValue(String propertyName) {
+    checkStale();
+    for (String declaration : element.getAttribute("style").split(";")) {
+      int colon = declaration.indexOf(':');
+      if (colon > 0 && declaration.substring(0, colon).trim().equalsIgnoreCase(propertyName)) {
+        return declaration.substring(colon + 1).trim();
+      }
+    }
+    return "";
+  }
+
+  @Override
+  public <X> X getScreenshotAs(OutputType<X> target) {
+    throw new UnsupportedCommandException("HttpWebDriver does not render pages");
+  }
+
+  @Override
+  public WebDriver getWrappedDriver() {
+    return driver;
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByXPath(String using) {
+    return HttpWebDriver.first(findElementsByXPath(using), "xpath " + using);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends WebElement> List<T> findElementsByXPath(String using) {
+    checkStale();
+    return (List<T>) driver.select(element, using);
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByCssSelector(String using) {
+    return HttpWebDriver.first(findElementsByCssSelector(using), "css selector " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByCssSelector(String using) {
+    return findElementsByXPath(CssSelectorTranslator.toXPath(using, true));
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByLinkText(String using) {
+    return HttpWebDriver.first(findElementsByLinkText(using), "link text " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByLinkText(String using) {
+    return HttpWebDriver.links(findElementsByXPath(".//a[@href]"), using, false);
+  }
+
+  @Override
+  public <T extends WebElement> T findElementByPartialLinkText(String using) {
+    return HttpWebDriver.first(findElementsByPartialLinkText(using), "partial link text " + using);
+  }
+
+  @Override
+  public <T extends WebElement> List<T> findElementsByPartialLinkText(String using) {
+    return HttpWebDriver.links(findElementsByXPath(".//a[@href]"), using, true);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof HttpWebElement && ((HttpWebElement) o).element == element;
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(element);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder description = new StringBuilder("<").append(element.getTagName());
+    for (String attribute : new String[] {"id", "name", "class", "type", "href"}) {
+      if (element.hasAttribute(attribute)) {
+        description.append(' ').append(attribute).append("=\"")
+            .append(element.getAttribute(attribute)).append('"');
+      }
+    }
+    return description.append('>').toString();
+  }
+
+  /**
+   * Posts the successful controls of a form the way a browser does, including the name and value
+   * of the submit button that was clicked.
+   */
+  private void submit(Element form, Element submitter) {
+    List<NameValuePair> fields = new ArrayList<>();
+    List<File> files = new ArrayList<>();
+    List<String> fileNames = new ArrayList<>();
+    for (Element control : controls(form)) {
+      String name = control.getAttribute("name");
+      String tag = control.getTagName().toLowerCase(Locale.ROOT);
+      String type = typeOf(control);
+      if (name.isEmpty() || disabled(control)) {
+        continue;
+      }
+      if ("select".equals(tag)) {
+        for (String value : selectedValues(control)) {
+          fields.add(new BasicNameValuePair(name, value));
+        }
+      } else if ("textarea".equals(tag)) {
+        fields.add(new BasicNameValuePair(name, control.getTextContent()));
+      } else if ("submit".equals(type) || "image".equals(type)
+          || "button".equals(tag) && "submit".equals(type)) {
+        if (control == submitter) {
+          fields.add(new BasicNameValuePair(name, control.getAttribute("value")));
+        }
+      } else if ("checkbox".equals(type) || "radio".equals(type)) {
+        if (control.hasAttribute("checked")) {
+          fields.add(new BasicNameValuePair(name, control.hasAttribute("value")
+              ? control.getAttribute("value") : "on"));
+        }
+      } else if ("file".equals(type)) {
+        if (!control.getAttribute("value").isEmpty()) {
+          files.add(new File(control.getAttribute("value")));
+          fileNames.add(name);
+        }
+      } else if (!"button".equals(type) && !"reset".equals(type) && "input".equals(tag)) {
+        fields.add(new BasicNameValuePair(name, control.getAttribute("value")));
+      }
+    }
+    String action = form.getAttribute("action").trim();
+    URI target = action.isEmpty() ? driver.resolve(driver.getCurrentUrl()) : driver.resolve(action);
+    HttpRequestBase request;
+    if ("post".equalsIgnoreCase(form.getAttribute("method"))) {
+      HttpPost post = new HttpPost(target);
+      if ("multipart/form-data".equalsIgnoreCase(form.getAttribute("enctype"))) {
+        MultipartEntityBuilder multipart = MultipartEntityBuilder.create();
+        for (NameValuePair field : fields) {
+          multipart.addTextBody(field.getName(), field.getValue(),
+              ContentType.create("text/plain", StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < files.size(); i++) {
+          multipart.addBinaryBody(fileNames.get(i), files.get(i));
+        }
+        post.setEntity(multipart.build());
+      } else {
+        post.setEntity(new UrlEncodedFormEntity(fields, StandardCharsets.UTF_8));
+      }
+      request = post;
+    } else {
+      try {
+        request = new HttpGet(new URIBuilder(target)
+            .setCustomQuery(URLEncodedUtils.format(fields, StandardCharsets.UTF_8))
+            .setFragment(null).build());
+      } catch (java.net.URISyntaxException e) {
+        throw new WebDriverException("Invalid form action " + target, e);
+      }
+    }
+    driver.submit(request);
+  }
+
+  private List<Element> controls(Element form) {
+    return elements(form, ".//input | .//select | .//textarea | .//button");
+  }
+
+  private List<Element> elements(Element context, String xpath) {
+    List<Element> elements = new ArrayList<>();
+    for (WebElement found : driver.select(context, xpath)) {
+      elements.add(((HttpWebElement) found).element);
+    }
+    return elements;
+  }
+
+  private List<String> selectedValues(Element select) {
+    List<Element> options = elements(select, ".//option");
+    List<String> values = new ArrayList<>();
+    for (Element option : options) {
+      if (option.hasAttribute("selected")) {
+        values.add(optionValue(option));
+      }
+    }
+    if (values.isEmpty() && !options.isEmpty() && !select.hasAttribute("multiple")) {
+      values.add(optionValue(options.get(0)));
+    }
+    return values;
+  }
+
+  private static String optionValue(Element option) {
+    return option.hasAttribute("value") ? option.getAttribute("value")
+        : option.getTextContent().trim();
+  }
+
+  private String value() {
+    String tag = getTagName();
+    if ("textarea".equals(tag)) {
+      return element.getTextContent();
+    }
+    if ("select".equals(tag)) {
+      List<String> values = selectedValues(element);
+      return values.isEmpty() ? "" : values.get(0);
+    }
+    return element.getAttribute("value");
+  }
+
+  private void setValue(String value) {
+    if ("textarea".equals(getTagName())) {
+      element.setTextContent(value);
+    } else {
+      element.setAttribute("value", value);
+    }
+  }
+
+  private boolean isEditable() {
+    String tag = getTagName();
+    return "textarea".equals(tag) || "input".equals(tag) && TEXT_INPUTS.contains(type());
+  }
+
+  private String type() {
+    return typeOf(element);
+  }
+
+  private static String typeOf(Element control) {
+    String tag = control.getTagName().toLowerCase(Locale.ROOT);
+    String type = control.getAttribute("type").trim().toLowerCase(Locale.ROOT);
+    if (type.isEmpty()) {
+      return "button".equals(tag) ? "submit" : "input".equals(tag) ? "text" : "";
+    }
+    return type;
+  }
+
+  private static boolean disabled(Element control) {
+    for (Node node = control; node instanceof Element; node = node.getParentNode()) {
+      if (((Element) node).hasAttribute("disabled")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isHidden(Element node) {
+    if (HIDDEN_TAGS.contains(node.getTagName().toLowerCase(Locale.ROOT))
+        || node.hasAttribute("hidden")) {
+      return true;
+    }
+    String style = node.getAttribute("style").replaceAll("\\s", "").toLowerCase(Locale.ROOT);
+    return style.contains("display:none") || style.contains("visibility:hidden");
+  }
+
+  private static void appendText(Node node, StringBuilder text) {
+    NodeList children = node.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node child = children.item(i);
+      if (child.getNodeType() == Node.TEXT_NODE) {
+        text.append(child.getNodeValue().replace('\n', ' '));
+      } else if (child.getNodeType() == Node.ELEMENT_NODE && !isHidden((Element) child)) {
+        String tag = ((Element) child).getTagName().toLowerCase(Locale.ROOT);
+        if ("br".equals(tag)) {
+          text.append('\n');
+        } else if (BLOCK_TAGS.contains(tag)) {
+          text.append('\n');
+          appendText(child, text);
+          text.append('\n');
+        } else {
+          appendText(child, text);
+        }
+      }
+    }
+  }
+
+  private Element form() {
+    return ancestor(element, "form");
+  }
+
+  private static Element ancestor(Element start, String tag) {
+    for (Node node = start.getParentNode(); node instanceof Element; node = node.getParentNode()) {
+      if (tag.equalsIgnoreCase(((Element) node).getTagName())) {
+        return (Element) node;
+      }
+    }
+    return null;
+  }
+
+  private static void setFlag(Element control, String attribute, boolean on) {
+    if (on) {
+      control.setAttribute(attribute, attribute);
+    } else {
+      control.removeAttribute(attribute);
+    }
+  }
+
+  private void checkInteractable() {
+    checkStale();
+    if (!isDisplayed() || !isEnabled()) {
+      throw new ElementNotInteractableException("Element is hidden or disabled: " + this);
+    }
+  }
+
+  private void checkStale() {
+    if (!driver.isCurrent(document)) {
+      throw new StaleElementReferenceException("Element belongs to a page no longer loaded: "
+          + this);
+    }
+  }
+}
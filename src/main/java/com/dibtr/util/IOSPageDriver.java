@@ -1,32 +1,26 @@
 package com.dibtr.util;
 
-import java.io.File;
-import java.text.SimpleDateFormat;
-import java.time.Duration;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
-import org.apache.commons.io.FileUtils;
 import org.openqa.selenium.By;
 import org.openqa.selenium.NoSuchElementException;
-import org.openqa.selenium.OutputType;
 import org.openqa.selenium.Point;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.Rectangle;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.remote.Augmenter;
 import org.openqa.selenium.remote.RemoteWebElement;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.FluentWait;
-import org.openqa.selenium.support.ui.Wait;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import org.testng.Reporter;
 import io.appium.java_client.TouchAction;
 import io.appium.java_client.ios.IOSDriver;
 import io.appium.java_client.ios.IOSElement;
 import io.appium.java_client.touch.TapOptions;
-import io.appium.java_client.touch.WaitOptions;
 import io.appium.java_client.touch.offset.ElementOption;
 import io.appium.java_client.touch.offset.PointOption;
 
@@ -53,6 +47,9 @@ public class IOSPageDriver {
   public static final String DIRECTION_UP = "up";
   private static final By XCUIElementTypeApplication = By.className("XCUIElementTypeApplication");
   private static final String FOUND = " Found: ";
+  private final PageSourceCache pageSourceCache;
+  private final int implicitWaitSeconds;
+  private int implicitWaitSuspensions;
 
   /**
    * Instantiates a new page driver.
@@ -61,6 +58,10 @@ public class IOSPageDriver {
    */
   public IOSPageDriver(IOSDriver<IOSElement> iosDriver) {
     this.iosDriver = iosDriver;
+    this.pageSourceCache = new PageSourceCache(iosDriver::getPageSource,
+        EnvironmentSettings.config().getLong("mobile.page.source.cache.staleness.ms", 2000));
+    this.implicitWaitSeconds = EnvironmentSettings.config().getInt("mobile.implicit.wait.seconds",
+        5);
   }
 
   /**
@@ -73,13 +74,41 @@ public class IOSPageDriver {
   }
 
   /**
-   * Retrieves the page source.
+   * Retrieves the page source. A snapshot taken since the last mutating command is reused while it
+   * is within the configured staleness window.
    * 
    * @return String - The page source in HTML format
    */
   public String getHtmlSource() {
+    return getHtmlSource(false);
+  }
+
+  /**
+   * Retrieves the page source.
+   * 
+   * @param forceRefresh - boolean - Skip the cached snapshot and do a full round trip.
+   * @return String - The page source in HTML format
+   */
+  public String getHtmlSource(boolean forceRefresh) {
     LOGGER.info("Retrieving page source.");
-    return iosDriver.getPageSource();
+    return forceRefresh ? pageSourceCache.refresh() : pageSourceCache.get();
+  }
+
+  /**
+   * Marks the cached page source as stale. Callers which change the screen without going through
+   * this driver (e.g. mobile: launchApp) must call it.
+   */
+  public void invalidatePageSource() {
+    pageSourceCache.invalidate();
+  }
+
+  /**
+   * Get the page source cache of this session, e.g. to report its hit ratio.
+   * 
+   * @return PageSourceCache - The page source cache
+   */
+  public PageSourceCache getPageSourceCache() {
+    return pageSourceCache;
   }
 
   /**
@@ -101,6 +130,7 @@ public class IOSPageDriver {
    */
   public void clickByCoordinates(PointOption<?> pointToTap) {
     LOGGER.info("Clicking by coordinates {}", pointToTap);
+    pageSourceCache.invalidate();
     new TouchAction<>(iosDriver).tap(pointToTap).perform();
   }
 
@@ -138,11 +168,8 @@ public class IOSPageDriver {
   public IOSElement getElement(By by, int waitTimeOut) {
     IOSElement element = null;
     LOGGER.info("Trying to find element with visibility check");
-    Wait<WebDriver> waitWithVisiblityCheck =
-        new FluentWait<WebDriver>(iosDriver).withTimeout(Duration.ofSeconds(waitTimeOut))
-            .pollingEvery(Duration.ofMillis(500)).ignoring(NoSuchElementException.class);
-    element = (IOSElement) (waitWithVisiblityCheck
-        .until(ExpectedConditions.visibilityOfElementLocated(by)));
+    element = (IOSElement) WaitEngine.getDefault().until(iosDriver,
+        ExpectedConditions.visibilityOfElementLocated(by), waitTimeOut, "IOSPageDriver.getElement");
     LOGGER.info("Element {} is present in DOM with @visible='true' ", by);
     return element;
   }
@@ -177,10 +204,8 @@ public class IOSPageDriver {
    */
   public List<WebElement> getWebElementList(final By by, int timeout) {
     LOGGER.info("Attempting to retrieve a list of web elements with the {} tag.", by);
-    Wait<WebDriver> wait =
-        new FluentWait<WebDriver>(iosDriver).withTimeout(Duration.ofSeconds(timeout))
-            .pollingEvery(Duration.ofMillis(500)).ignoring(NoSuchElementException.class);
-    return wait.until((WebDriver driver) -> driver.findElements(by));
+    return WaitEngine.getDefault().until(iosDriver, (WebDriver driver) -> driver.findElements(by),
+        timeout, "IOSPageDriver.getWebElementList");
   }
 
   /**
@@ -202,7 +227,7 @@ public class IOSPageDriver {
    * @return booelean - 'true' if the element is present, 'false', if it's not
    */
   public boolean isElementPresent(By by, int timeout) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info("Checking if {} is present.", by);
     boolean isElementPresent = false;
     WebElement element = null;
@@ -216,6 +241,94 @@ public class IOSPageDriver {
     return isElementPresent;
   }
 
+  /**
+   * Indicates whether the element is present right now, without waiting for it. Use it for
+   * elements which may legitimately be absent, like optional popups.
+   *
+   * @param by - By - The location of the element to check
+   * @return boolean - 'true' if the element is present, 'false' if it's not
+   */
+  public boolean isElementPresentNow(By by) {
+    return getPresence(by).get(by);
+  }
+
+  /**
+   * This function is used to check which of several elements are present right now, e.g. to find
+   * out which screen of a branching flow is shown. Nothing is waited for: locators with an XPath
+   * equivalent are answered from one freshly read page source snapshot, since a cached source may
+   * predate the screen being checked, the others by findElements with the implicit wait dropped
+   * to zero.
+   *
+   * @param locators - By - The locations of the elements to check
+   * @return Map<By, Boolean> - Presence of every locator, in the order given
+   */
+  public Map<By, Boolean> getPresence(By... locators) {
+    long start = System.nanoTime();
+    Map<By, Boolean> presence = new LinkedHashMap<>();
+    List<By> unanswered = new ArrayList<>();
+    PresenceSnapshot snapshot = null;
+    for (By by : locators) {
+      if (PresenceSnapshot.toXPath(by) == null) {
+        unanswered.add(by);
+        continue;
+      }
+      if (snapshot == null) {
+        try {
+          snapshot = new PresenceSnapshot(getHtmlSource(true));
+        } catch (IllegalArgumentException e) {
+          LOGGER.warn("Unable to parse page source for presence checks: {}", e.getMessage());
+          unanswered.add(by);
+          continue;
+        }
+      }
+      Boolean present = snapshot.isPresent(by);
+      if (present == null) {
+        unanswered.add(by);
+      } else {
+        presence.put(by, present);
+      }
+    }
+    if (!unanswered.isEmpty()) {
+      withoutImplicitWait(() -> {
+        for (By by : unanswered) {
+          presence.put(by, !iosDriver.findElements(by).isEmpty());
+        }
+        return null;
+      });
+    }
+    Map<By, Boolean> ordered = new LinkedHashMap<>();
+    for (By by : locators) {
+      ordered.put(by, presence.get(by));
+    }
+    LOGGER.info("Presence {} checked in {} ms", ordered,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return ordered;
+  }
+
+  /**
+   * This function is used to run driver calls with the implicit wait dropped to zero, so that
+   * finding nothing returns at once instead of after the implicit wait. Selenium 3 cannot read the
+   * implicit wait back, so when the outermost call returns the wait is set to the configured
+   * mobile.implicit.wait.seconds, the value every session starts with; nested calls leave it at
+   * zero for the outer one.
+   *
+   * @param action - Supplier<T> - Driver calls to run.
+   * @return T - Result of the action.
+   */
+  public <T> T withoutImplicitWait(Supplier<T> action) {
+    if (implicitWaitSuspensions == 0) {
+      iosDriver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
+    }
+    implicitWaitSuspensions++;
+    try {
+      return action.get();
+    } finally {
+      if (--implicitWaitSuspensions == 0) {
+        iosDriver.manage().timeouts().implicitlyWait(implicitWaitSeconds, TimeUnit.SECONDS);
+      }
+    }
+  }
+
   /**
    * Clicks the specified element.
    * 
@@ -232,15 +345,17 @@ public class IOSPageDriver {
    * @param timeout - int - The amount of time, in seconds, to wait for the element before moving on
    */
   public void clickElement(final By by, final int timeout) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info("Trying to click on {}.", by);
+    pageSourceCache.invalidate();
     this.getElement(by, timeout).click();
     LOGGER.info("Successfully Clicked on {}.", by);
   }
 
   public void tapElement(final By by) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info("Trying to click on {}.", by);
+    pageSourceCache.invalidate();
     new TouchAction((getWebDriver())).tap(TapOptions.tapOptions()
         .withElement(ElementOption.element((getWebDriver()).findElement(by)))).perform();
   }
@@ -261,39 +376,71 @@ public class IOSPageDriver {
    * @param timeout - int - The amount of time, in seconds, to wait for the element before moving on
    */
   public void clickElement(final WebElement element, final int timeout) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info("Trying to click on the element {}.", element);
     waitForElement(element, timeout);
+    pageSourceCache.invalidate();
     element.click();
     LOGGER.info("Clicked on the element {}", element);
   }
   
   /**
-   * This method types a string character by character with a small delay between characters. This
-   * is most useful for fields with auto complete lists that need time to display the auto complete
-   * items.
+   * Types a value into a field in the mode configured by mobile.typing.mode and hides the keyboard
+   * afterwards.
+   *
+   * @param by - By - The location of the field in which to type
+   * @param value - String - The value to type
+   */
+  public void typeValueInField(final By by, final String value) {
+    typeValueInField(by, value, TypingEngine.getInstance().getDefaultMode(), null);
+  }
+
+  /**
+   * This method types a string into a field in chunks with a short pause in between. It is meant
+   * for fields which drop characters when typed into fast. Fields with auto complete lists should
+   * use typeValueInFieldWithAutocomplete.
    * 
    * @param by - By - The location of the field in which to type
    * @param value - String - The value to type
    */
   public void typeValueInFieldSlowly(final By by, final String value) {
+    typeValueInField(by, value, TypingEngine.Mode.CHUNKED, null);
+  }
+
+  /**
+   * Types a value into a field with an auto complete list and waits until the list is shown. The
+   * keyboard is left open so that a suggestion can be picked next.
+   *
+   * @param by - By - The location of the field in which to type
+   * @param value - String - The value to type
+   * @param suggestions - By - The location of the auto complete list
+   */
+  public void typeValueInFieldWithAutocomplete(final By by, final String value,
+      final By suggestions) {
+    typeValueInField(by, value, TypingEngine.Mode.AUTOCOMPLETE, suggestions);
+  }
+
+  /**
+   * Types a value into a field. The keyboard is hidden afterwards unless the mode is AUTOCOMPLETE.
+   *
+   * @param by - By - The location of the field in which to type
+   * @param value - String - The value to type
+   * @param mode - TypingEngine.Mode - How the value is sent to the field
+   * @param suggestions - By - The location of the auto complete list, null for other modes
+   */
+  public void typeValueInField(final By by, final String value, final TypingEngine.Mode mode,
+      final By suggestions) {
     LOGGER.info("Trying to type {} in the {} field.", value, by);
-    IOSElement iosElement;
-    iosElement = this.getElement(by, defaultWaitTimeout);
+    IOSElement iosElement = this.getElement(by, defaultWaitTimeout);
+    pageSourceCache.invalidate();
     iosElement.click();
     iosElement.clear();
-    for (int i = 0; i < value.length(); i++) {
-      String character = value.substring(i, i + 1);
-      iosElement.sendKeys(character);
-      try {
-        Thread.sleep(200);
-      } catch (InterruptedException e) {
-        LOGGER.error("ERROR: An InterruptedException has occurred in PageDriver.manageWindows() {}",
-            e.getMessage());
-        Thread.currentThread().interrupt();
-      }
+    // The suggestion list is polled, each poll has to return at once
+    withoutImplicitWait(() -> TypingEngine.getInstance().type(iosDriver, iosElement, value, mode,
+        suggestions, by.toString()));
+    if (mode != TypingEngine.Mode.AUTOCOMPLETE || suggestions == null) {
+      hideKeyboard();
     }
-    DriverFactory.getMobilePageDriver().hideKeyboard();
     LOGGER.info("Successfully typed {} in {} field.", value, by);
   }
 
@@ -336,6 +483,7 @@ public class IOSPageDriver {
         scrollObject.put(ELEMENT, parent.getId());
         scrollObject.put(DIRECTION, locatorOrDirection);
       }
+      pageSourceCache.invalidate();
       iosDriver.executeScript(MOBILE_SCROLL, scrollObject);
       count++;
     } while (count < 1);
@@ -363,7 +511,7 @@ public class IOSPageDriver {
    * @param timeout - int - The period of time to wait in seconds
    */
   public void waitForElement(final By by, final int timeout) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info(">>> Waiting for element: {}", by);
     try {
       this.getElement(by, timeout);
@@ -389,9 +537,9 @@ public class IOSPageDriver {
    * @param timeout - int - The period of time to wait in seconds
    */
   public void waitForElement(final WebElement element, final int timeout) {
-    WebDriverWait wait = new WebDriverWait(iosDriver, timeout);
     try {
-      wait.until(ExpectedConditions.visibilityOf(element));
+      WaitEngine.getDefault().until(iosDriver, ExpectedConditions.visibilityOf(element), timeout,
+          "IOSPageDriver.waitForElement");
       LOGGER.info(ELEMENT_FOUND);
     } catch (Exception e) {
       LOGGER.error(LOG_FORMAT, ELEMENT_NOT_FOUND, element, e);
@@ -399,36 +547,14 @@ public class IOSPageDriver {
   }
 
   /**
-   * Captures a screenshot of the desktop/device and returns the path that it is saved to.
+   * Captures a screenshot of the desktop/device and returns the path that it is saved to. The
+   * file is written in the background by ScreenshotService.
    * 
    * @param testCaseId - String - ID of the test case
    * @return String - Path to the screenshot
    */
   public String captureDesktop(final String testCaseId) {
-    SimpleDateFormat sdfDate = new SimpleDateFormat("MM-dd-yyyy_HH-mm-ss");
-    Date now = new Date();
-    String strDate = sdfDate.format(now);
-    String fileName = "failImage-" + testCaseId + "_" + strDate + "_.png";
-    String reportsPath = "target" + File.separator + "surefire-reports" + File.separator;
-    String reportTestingSuitePath =
-        reportsPath + File.separator + "Report Testing Suite" + File.separator;
-    String filePath = reportsPath + fileName;
-    LOGGER.info("File path formed in capture desktop {} ", filePath);
-    try {
-      WebDriver augmentedDriver = new Augmenter().augment(getWebDriver());
-      File screenshot = ((TakesScreenshot) augmentedDriver).getScreenshotAs(OutputType.FILE);
-      FileUtils.copyFile(screenshot, new File(filePath));
-      // This file is for Jenkins
-      FileUtils.copyFile(screenshot, new File(reportTestingSuitePath + fileName));
-      String imageURl = filePath.replace(reportsPath + fileName, fileName);
-      Reporter.log("\r * screenshot for Test Case: " + testCaseId + " <a href='.\\" + imageURl
-          + "' target='_blank' >View Image </a>"
-          + "<div style='height:200px; width: 375px; overflow:scroll'><img src='./" + imageURl
-          + "'></div> \r\n", true);
-    } catch (Exception e) {
-      LOGGER.error("An error has occured in captureDesktop()", e);
-    }
-    return filePath;
+    return ScreenshotService.getInstance().capture(testCaseId, getWebDriver());
   }
 
   /**
@@ -481,14 +607,35 @@ public class IOSPageDriver {
   }
 
   /**
-   * This function is used to Hide keyboard.
+   * This function is used to Hide keyboard. Nothing is done when no keyboard is shown; otherwise
+   * its Return key is tapped, or the keyboard is hidden by Appium when it has none.
    */
   public void hideKeyboard() {
     try {
+      if (!isKeyboardShown()) {
+        LOGGER.info("No keyboard shown, nothing to hide.");
+        return;
+      }
       By returnKeyOnKeyboard = By.xpath("//XCUIElementTypeButton[@name='Return']");
-      DriverFactory.getMobilePageDriver().clickElement(returnKeyOnKeyboard, 10);
+      List<IOSElement> returnKeys =
+          withoutImplicitWait(() -> iosDriver.findElements(returnKeyOnKeyboard));
+      pageSourceCache.invalidate();
+      if (returnKeys.isEmpty()) {
+        iosDriver.hideKeyboard();
+      } else {
+        returnKeys.get(0).click();
+      }
     } catch (Exception e) {
-      System.out.println("Error while trying to hide keyboard ");
+      LOGGER.error("Error while trying to hide keyboard {}", e.getMessage());
+    }
+  }
+
+  private boolean isKeyboardShown() {
+    try {
+      return iosDriver.isKeyboardShown();
+    } catch (WebDriverException e) {
+      // Unknown, try to hide it anyway
+      return true;
     }
   }
 
@@ -499,13 +646,43 @@ public class IOSPageDriver {
     return text;
   }
   
+  /**
+   * Taps the screen at the given location.
+   *
+   * @param location - Point - The location to tap
+   */
   public void clickElementByLocation(final Point location) {
-    LOGGER.info(PERFORM_MESSAGE, CLog.getTag());
+    LOGGER.info(PERFORM_MESSAGE, CLog.caller());
     LOGGER.info("Trying to click at x={} y={}.", location.getX(), location.getY());
-    TouchAction<?> action = new TouchAction<>(iosDriver);
-    action.press(PointOption.point(location.getX(), location.getY()));
-    action.waitAction(WaitOptions.waitOptions(Duration.ofMillis(pollingFrequency)));
-    action.release();
-    action.perform();
+    pageSourceCache.invalidate();
+    new TouchAction<>(iosDriver).tap(PointOption.point(location.getX(), location.getY()))
+        .perform();
+  }
+
+  /**
+   * Taps the center of the element once it stopped moving, for elements which only take taps by
+   * coordinates.
+   *
+   * @param by - By - The location of the element to tap
+   */
+  public void clickElementByLocation(final By by) {
+    Rectangle rect = waitUntilStable(by);
+    if (rect == null) {
+      throw new NoSuchElementException("Unable to locate " + by);
+    }
+    clickElementByLocation(
+        new Point(rect.getX() + rect.getWidth() / 2, rect.getY() + rect.getHeight() / 2));
+  }
+
+  /**
+   * Waits until the element stops moving, e.g. at the end of a scroll or a slide-in animation.
+   * Use it instead of a fixed pause().
+   *
+   * @param by - By - The location of the element
+   * @return Rectangle - The settled rect of the element, null if it could not be found
+   */
+  public Rectangle waitUntilStable(final By by) {
+    return withoutImplicitWait(() -> WaitEngine.getDefault().untilStable(iosDriver,
+        (WebDriver driver) -> driver.findElement(by).getRect(), "IOSPageDriver.waitUntilStable"));
   }
 }
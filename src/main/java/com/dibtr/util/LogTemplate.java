@@ -0,0 +1,124 @@
+package com.dibtr.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a pre-parsed "{}" message template as used by AllureLogger. A template is parsed
+ * once and cached; rendering appends the literal fragments and the arguments into a per-thread
+ * StringBuilder, so there is no regex and no intermediate string per argument.</br>
+ * </br>
+ * Arguments are inserted literally, so values containing '$' or '\' are safe, and null is rendered
+ * as "null". Surplus arguments (e.g. a trailing exception) are ignored like slf4j does.
+ */
+public final class LogTemplate {
+  private static final String PLACEHOLDER = "{}";
+  private static final int MAX_CACHED_TEMPLATES = 4096;
+  private static final int MAX_RETAINED_BUILDER = 8192;
+  private static final Map<String, LogTemplate> CACHE = new ConcurrentHashMap<>();
+  private static final ThreadLocal<StringBuilder> BUILDER =
+      ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private final String[] fragments;
+
+  private LogTemplate(String[] fragments) {
+    this.fragments = fragments;
+  }
+
+  /**
+   * Get the parsed template for a message. Log messages are string constants, so the cache lookup
+   * is normally satisfied by the identity check in String.equals.
+   *
+   * @param logMsg - String - Message containing {} placeholders.
+   * @return LogTemplate - Parsed template.
+   */
+  public static LogTemplate of(String logMsg) {
+    LogTemplate template = CACHE.get(logMsg);
+    if (template == null) {
+      template = parse(logMsg);
+      // Messages built at runtime would grow the cache without bound, stop caching at the limit.
+      if (CACHE.size() < MAX_CACHED_TEMPLATES) {
+        CACHE.putIfAbsent(logMsg, template);
+      }
+    }
+    return template;
+  }
+
+  /**
+   * Formats the message with the given arguments.
+   *
+   * @param logMsg - String - Message containing {} placeholders.
+   * @param args - Object[] - Values to insert.
+   * @return String - The formatted message.
+   */
+  public static String format(String logMsg, Object... args) {
+    return of(logMsg).render(args);
+  }
+
+  /**
+   * Renders the template.
+   *
+   * @param args - Object[] - Values to insert, one per placeholder.
+   * @return String - The formatted message.
+   */
+  public String render(Object... args) {
+    if (fragments.length == 1) {
+      return fragments[0];
+    }
+    StringBuilder sb = BUILDER.get();
+    sb.setLength(0);
+    int argCount = args == null ? 0 : args.length;
+    for (int i = 0; i < fragments.length; i++) {
+      sb.append(fragments[i]);
+      if (i < fragments.length - 1) {
+        if (i < argCount) {
+          appendArgument(sb, args[i]);
+        } else {
+          sb.append(PLACEHOLDER);
+        }
+      }
+    }
+    String result = sb.toString();
+    if (sb.capacity() > MAX_RETAINED_BUILDER) {
+      BUILDER.remove();
+    }
+    return result;
+  }
+
+  /**
+   * Number of {} placeholders in the template.
+   *
+   * @return int - Placeholder count.
+   */
+  public int getPlaceholderCount() {
+    return fragments.length - 1;
+  }
+
+  private static void appendArgument(StringBuilder sb, Object arg) {
+    if (arg instanceof Object[]) {
+      sb.append(Arrays.deepToString((Object[]) arg));
+    } else {
+      sb.append(arg);
+    }
+  }
+
+  private static LogTemplate parse(String logMsg) {
+    if (logMsg == null) {
+      return new LogTemplate(new String[] {"null"});
+    }
+    int count = 0;
+    for (int i = logMsg.indexOf(PLACEHOLDER); i >= 0; i = logMsg.indexOf(PLACEHOLDER, i + 2)) {
+      count++;
+    }
+    String[] fragments = new String[count + 1];
+    int start = 0;
+    for (int i = 0; i < count; i++) {
+      int end = logMsg.indexOf(PLACEHOLDER, start);
+      fragments[i] = logMsg.substring(start, end);
+      start = end + 2;
+    }
+    fragments[count] = logMsg.substring(start);
+    return new LogTemplate(fragments);
+  }
+}
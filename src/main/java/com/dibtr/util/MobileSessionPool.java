@@ -0,0 +1,288 @@
+package com.dibtr.util;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import io.appium.java_client.ios.IOSDriver;
+import io.appium.java_client.ios.IOSElement;
+
+/**
+ * This class keeps warm IOSDriver sessions so that test classes can lease an already bootstrapped
+ * session (WDA running, app installed) instead of creating a new one every time.</br>
+ * </br>
+ * Sessions are pooled per capability set (platformVersion, deviceName, udid, Appium endpoint,
+ * bundleId). A session is health checked before it is handed out and evicted once it exceeds the
+ * configured max-age or max-uses. A session released while max-idle sessions of its capability set
+ * are already idle is quit, so surplus sessions do not hold on to WDA and the app.
+ */
+public class MobileSessionPool {
+  private static final AllureLogger LOGGER = new AllureLogger(MobileSessionPool.class);
+  private static final String MAX_AGE_SECONDS = "mobile.session.pool.max.age.seconds";
+  private static final String MAX_USES = "mobile.session.pool.max.uses";
+  private static final String MAX_IDLE = "mobile.session.pool.max.idle";
+  private static MobileSessionPool instance;
+
+  private final Map<SessionKey, Deque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+  private final long maxAgeMillis;
+  private final int maxUses;
+  private final int maxIdle;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Instantiates a new session pool.
+   *
+   * @param maxAgeSeconds - long - Maximum life time of a session in seconds.
+   * @param maxUses - int - Maximum number of leases served by one session.
+   * @param maxIdle - int - Maximum number of idle sessions kept per capability set.
+   */
+  public MobileSessionPool(long maxAgeSeconds, int maxUses, int maxIdle) {
+    this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+    this.maxUses = maxUses;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Get the shared session pool configured from config.properties.
+   *
+   * @return MobileSessionPool - Shared pool instance.
+   */
+  public static synchronized MobileSessionPool getInstance() {
+    if (instance == null) {
+      ConfigSnapshot config = EnvironmentSettings.config();
+      instance = new MobileSessionPool(config.getLong(MAX_AGE_SECONDS, 1800),
+          config.getInt(MAX_USES, 20), config.getInt(MAX_IDLE, 1));
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::shutdown, "mobile-session-pool"));
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to lease a session for the given capability set. An idle session is
+   * reused when it is still healthy, otherwise the factory is used to create a new one.
+   *
+   * @param key - SessionKey - Capability set of the requested session.
+   * @param factory - Supplier - Creates a new driver on pool miss.
+   * @return PooledSession - Leased session, null if the factory failed to create a driver.
+   */
+  public PooledSession acquire(SessionKey key, Supplier<IOSDriver<IOSElement>> factory) {
+    Deque<PooledSession> idle = idleSessions.get(key);
+    PooledSession session;
+    while (idle != null && (session = idle.pollFirst()) != null) {
+      if (isExpired(session)) {
+        evict(session, "expired");
+      } else if (!isHealthy(session)) {
+        evict(session, "failed health check");
+      } else {
+        hits.incrementAndGet();
+        session.lease();
+        LOGGER.info("Reusing pooled device session {} for {} (use {})",
+            session.getDriver().getSessionId(), key, session.getUses());
+        return session;
+      }
+    }
+    misses.incrementAndGet();
+    LOGGER.info("No pooled device session available for {}, creating a new one", key);
+    IOSDriver<IOSElement> driver = factory.get();
+    if (driver == null) {
+      return null;
+    }
+    session = new PooledSession(key, driver);
+    session.lease();
+    return session;
+  }
+
+  /**
+   * This function is used to hand a leased session back to the pool. Sessions that reached their
+   * max-age or max-uses, or find max-idle sessions of their capability set idle, are quit instead
+   * of being kept idle.
+   *
+   * @param session - PooledSession - Session previously returned by acquire.
+   */
+  public void release(PooledSession session) {
+    if (session == null || session.getDriver() == null) {
+      return;
+    }
+    if (isExpired(session)) {
+      evict(session, "expired");
+      return;
+    }
+    Deque<PooledSession> idle =
+        idleSessions.computeIfAbsent(session.getKey(), k -> new ConcurrentLinkedDeque<>());
+    if (idle.size() >= maxIdle) {
+      evict(session, "pool is full");
+    } else {
+      idle.offerFirst(session);
+    }
+  }
+
+  /**
+   * This function is used to drop a session which must not be reused, e.g. after a crash.
+   *
+   * @param session - PooledSession - Session to quit.
+   */
+  public void discard(PooledSession session) {
+    if (session != null) {
+      evict(session, "discarded");
+    }
+  }
+
+  /**
+   * Quits every idle session held by the pool.
+   */
+  public void shutdown() {
+    LOGGER.info("Device session pool hits {} misses {} evictions {}", hits.get(), misses.get(),
+        evictions.get());
+    for (Deque<PooledSession> idle : idleSessions.values()) {
+      PooledSession session;
+      while ((session = idle.pollFirst()) != null) {
+        quitQuietly(session);
+      }
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private boolean isExpired(PooledSession session) {
+    return session.getUses() >= maxUses
+        || System.currentTimeMillis() - session.getCreatedAt() >= maxAgeMillis;
+  }
+
+  /**
+   * Cheap liveness probe, a single GET on the session resource instead of a page source or
+   * screenshot round trip.
+   */
+  private boolean isHealthy(PooledSession session) {
+    try {
+      return session.getDriver().getSessionId() != null
+          && session.getDriver().getSessionDetails() != null;
+    } catch (Exception e) {
+      LOGGER.warn("Pooled device session health check failed: {}", e.getMessage());
+      return false;
+    }
+  }
+
+  private void evict(PooledSession session, String reason) {
+    evictions.incrementAndGet();
+    LOGGER.info("Evicting pooled device session for {} ({})", session.getKey(), reason);
+    quitQuietly(session);
+  }
+
+  private void quitQuietly(PooledSession session) {
+    try {
+      session.getDriver().quit();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to quit pooled device session: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Capability set used as pool key.
+   */
+  public static final class SessionKey {
+    private final String platformVersion;
+    private final String deviceName;
+    private final String udid;
+    private final String endpoint;
+    private final String bundleId;
+
+    public SessionKey(String platformVersion, String deviceName, String bundleId) {
+      this(platformVersion, deviceName, null, null, bundleId);
+    }
+
+    public SessionKey(String platformVersion, String deviceName, String udid, String endpoint,
+        String bundleId) {
+      this.platformVersion = platformVersion;
+      this.deviceName = deviceName;
+      this.udid = udid;
+      this.endpoint = endpoint;
+      this.bundleId = bundleId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SessionKey)) {
+        return false;
+      }
+      SessionKey other = (SessionKey) o;
+      return Objects.equals(platformVersion, other.platformVersion)
+          && Objects.equals(deviceName, other.deviceName) && Objects.equals(udid, other.udid)
+          && Objects.equals(endpoint, other.endpoint)
+          && Objects.equals(bundleId, other.bundleId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(platformVersion, deviceName, udid, endpoint, bundleId);
+    }
+
+    @Override
+    public String toString() {
+      return deviceName + " " + platformVersion + (udid != null ? " " + udid : "") + " "
+          + bundleId;
+    }
+  }
+
+  /**
+   * A driver owned by the pool together with its usage bookkeeping.
+   */
+  public static final class PooledSession {
+    private final SessionKey key;
+    private final IOSDriver<IOSElement> driver;
+    private final long createdAt = System.currentTimeMillis();
+    private int uses;
+
+    PooledSession(SessionKey key, IOSDriver<IOSElement> driver) {
+      this.key = key;
+      this.driver = driver;
+    }
+
+    void lease() {
+      uses++;
+    }
+
+    public SessionKey getKey() {
+      return key;
+    }
+
+    public IOSDriver<IOSElement> getDriver() {
+      return driver;
+    }
+
+    public long getCreatedAt() {
+      return createdAt;
+    }
+
+    /**
+     * Number of leases served, 1 for a freshly created session.
+     *
+     * @return int - Lease count.
+     */
+    public int getUses() {
+      return uses;
+    }
+
+    public boolean isReused() {
+      return uses > 1;
+    }
+  }
+}
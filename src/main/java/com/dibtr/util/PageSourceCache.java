@@ -0,0 +1,112 @@
+package com.dibtr.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * This class caches the page source of one device session. Every mutating command bumps the
+ * generation counter, which makes the current snapshot stale; read-only callers reuse the snapshot
+ * while its generation is current and it is younger than the staleness window.</br>
+ * </br>
+ * The staleness window covers changes the driver cannot see, e.g. clicks made directly on an
+ * element returned by getElement or screens changing on their own.
+ */
+public class PageSourceCache {
+  private static final AllureLogger LOGGER = new AllureLogger(PageSourceCache.class);
+  private final Supplier<String> loader;
+  private final long stalenessMillis;
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private volatile Snapshot snapshot;
+
+  /**
+   * Instantiates a new page source cache.
+   *
+   * @param loader - Supplier<String> - Performs the real page source round trip.
+   * @param stalenessMillis - long - Maximum age of a reusable snapshot in milliseconds.
+   */
+  public PageSourceCache(Supplier<String> loader, long stalenessMillis) {
+    this.loader = loader;
+    this.stalenessMillis = stalenessMillis;
+  }
+
+  /**
+   * Returns the cached page source when it is still valid, otherwise fetches a fresh one.
+   *
+   * @return String - The page source.
+   */
+  public String get() {
+    Snapshot current = snapshot;
+    if (current != null && current.generation == generation.get()
+        && System.currentTimeMillis() - current.takenAt <= stalenessMillis) {
+      hits.incrementAndGet();
+      return current.source;
+    }
+    misses.incrementAndGet();
+    return refresh();
+  }
+
+  /**
+   * Fetches a fresh page source and stores it as the current snapshot.
+   *
+   * @return String - The page source.
+   */
+  public String refresh() {
+    // Read the generation before the round trip so that a mutation racing with it marks the
+    // snapshot stale.
+    long loadGeneration = generation.get();
+    String source = loader.get();
+    snapshot = new Snapshot(loadGeneration, System.currentTimeMillis(), source);
+    return source;
+  }
+
+  /**
+   * Marks the current snapshot as stale. Called by every command that can change the screen.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Share of page source reads served without a round trip.
+   *
+   * @return double - Hit ratio between 0 and 1.
+   */
+  public double getHitRatio() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  /**
+   * Logs the hit/miss ratio, e.g. when the owning session is stopped.
+   */
+  public void logStatistics() {
+    LOGGER.info("Page source cache hits {} misses {} ratio {}", hits.get(), misses.get(),
+        String.format("%.2f", getHitRatio()));
+  }
+
+  private static final class Snapshot {
+    private final long generation;
+    private final long takenAt;
+    private final String source;
+
+    private Snapshot(long generation, long takenAt, String source) {
+      this.generation = generation;
+      this.takenAt = takenAt;
+      this.source = source;
+    }
+  }
+}
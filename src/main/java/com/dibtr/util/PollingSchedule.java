@@ -0,0 +1,55 @@
+package com.dibtr.util;
+
+/**
+ * This interface decides how long WaitEngine sleeps between two polls of a condition. Call sites
+ * which know their typical wait (e.g. a spinner that always takes seconds) can pass their own
+ * schedule instead of the default one.
+ */
+public interface PollingSchedule {
+
+  /**
+   * Delay before the next poll.
+   *
+   * @param pollCount - int - Number of polls already made in this wait, starting at 1.
+   * @return long - Delay in milliseconds.
+   */
+  long nextDelayMillis(int pollCount);
+
+  /**
+   * Polls fast at first and backs off exponentially up to a cap, so elements that appear quickly
+   * are picked up within a few milliseconds while long waits do not hammer the server.
+   *
+   * @param initialMillis - long - Delay after the first poll.
+   * @param multiplier - double - Growth factor applied after every poll.
+   * @param maxMillis - long - Upper bound of the delay.
+   * @return PollingSchedule - The exponential schedule.
+   */
+  static PollingSchedule exponential(long initialMillis, double multiplier, long maxMillis) {
+    return pollCount -> {
+      double delay = initialMillis * Math.pow(multiplier, pollCount - 1);
+      return (long) Math.min(delay, maxMillis);
+    };
+  }
+
+  /**
+   * Polls at a fixed interval, the behaviour of a plain FluentWait.
+   *
+   * @param millis - long - Delay between polls.
+   * @return PollingSchedule - The fixed schedule.
+   */
+  static PollingSchedule fixed(long millis) {
+    return pollCount -> millis;
+  }
+
+  /**
+   * The exponential schedule configured by the wait.polling.* keys of config.properties.
+   *
+   * @return PollingSchedule - The default schedule.
+   */
+  static PollingSchedule fromConfig() {
+    EnvironmentSettings settings = EnvironmentSettings.getInstance();
+    return exponential(Long.parseLong(settings.getProperty("wait.polling.initial.ms", "50")),
+        Double.parseDouble(settings.getProperty("wait.polling.multiplier", "1.5")),
+        Long.parseLong(settings.getProperty("wait.polling.max.ms", "1000")));
+  }
+}
@@ -0,0 +1,101 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.openqa.selenium.By;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class answers presence checks from one XCUITest page source instead of one findElements
+ * round trip per locator. XPath, id, name, accessibility id and className locators are evaluated
+ * against the parsed source; the element tree of XCUITest names elements by their accessibility
+ * id in the name attribute and types them by their class name. Predicate strings and class chains
+ * are not understood and are left to the caller.
+ */
+public class PresenceSnapshot {
+  private static final String ACCESSIBILITY_ID = "By.AccessibilityId: ";
+  private final Document document;
+  private final XPath xpath = XPathFactory.newInstance().newXPath();
+
+  /**
+   * Parses a page source.
+   *
+   * @param source - String - Page source as returned by the driver.
+   * @throws IllegalArgumentException if the source is no well-formed XML.
+   */
+  public PresenceSnapshot(String source) {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      // Errors reach the caller as the exception below instead of "[Fatal Error]" on stderr
+      builder.setErrorHandler(new DefaultHandler());
+      document = builder.parse(new InputSource(new StringReader(source)));
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      throw new IllegalArgumentException("Page source is not well-formed XML", e);
+    }
+  }
+
+  /**
+   * This function is used to check a locator against the snapshot.
+   *
+   * @param by - By - Locator to check.
+   * @return Boolean - Whether an element matches, null when the locator cannot be answered from
+   *         the page source.
+   */
+  public Boolean isPresent(By by) {
+    String expression = toXPath(by);
+    if (expression == null) {
+      return null;
+    }
+    try {
+      return (Boolean) xpath.evaluate("boolean(" + expression + ")", document,
+          XPathConstants.BOOLEAN);
+    } catch (XPathExpressionException e) {
+      // e.g. XPath 2.0 functions Appium accepts but the JDK does not
+      return null;
+    }
+  }
+
+  /**
+   * Translates a locator into an XPath expression over the page source.
+   *
+   * @param by - By - Locator to translate.
+   * @return String - XPath expression, null for locators without XPath equivalent.
+   */
+  static String toXPath(By by) {
+    String locator = by.toString();
+    if (by instanceof By.ByXPath) {
+      return locator.substring("By.xpath: ".length());
+    }
+    if (by instanceof By.ById) {
+      return "//*[@name=" + CssSelectorTranslator.literal(locator.substring("By.id: ".length()))
+          + "]";
+    }
+    if (by instanceof By.ByName) {
+      return "//*[@name=" + CssSelectorTranslator.literal(locator.substring("By.name: ".length()))
+          + "]";
+    }
+    if (by instanceof By.ByClassName) {
+      String className = locator.substring("By.className: ".length());
+      return className.matches("[A-Za-z_][\\w-]*") ? "//" + className : null;
+    }
+    if (locator.startsWith(ACCESSIBILITY_ID)) {
+      return "//*[@name="
+          + CssSelectorTranslator.literal(locator.substring(ACCESSIBILITY_ID.length())) + "]";
+    }
+    return null;
+  }
+}
@@ -0,0 +1,60 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class renders the custom HTML report from the result journal. It is cheap enough to be
+ * run at any time during a suite, e.g. from a Jenkins step while a long device run is still going:
+ * java -cp &lt;test classpath&gt; com.dibtr.util.ReportRenderer [journal] [report]
+ */
+public class ReportRenderer {
+  static final String TEMPLATE_PATH = "src/test/resources/reportTemplate.html";
+
+  private ReportRenderer() {
+    // Hide implicit default ctor
+  }
+
+  /**
+   * Renders the report from the journal.
+   *
+   * @param journal - Path - Result journal to replay.
+   * @param report - Path - HTML report to write.
+   * @throws IOException if the journal cannot be read or the report cannot be written.
+   */
+  public static void render(Path journal, Path report) throws IOException {
+    String template =
+        new String(Files.readAllBytes(Paths.get(TEMPLATE_PATH)), StandardCharsets.UTF_8);
+    try (StreamingReportWriter reportWriter =
+        new StreamingReportWriter(report, template, buildHeader())) {
+      if (Files.exists(journal)) {
+        ResultJournal.read(journal, reportWriter::writeRow);
+      }
+    }
+  }
+
+  /**
+   * Builds the header with build type, application build and environment.
+   *
+   * @return String - Header markup
+   */
+  static String buildHeader() {
+    ConfigSnapshot config = EnvironmentSettings.config();
+    return "<header><center><b>" + "Build Type ::" + config.getString("application.build.type")
+        + " Application Build Version :: " + config.getString("environment.application.build")
+        + " Execution Environment " + config.getString("environment.code")
+        + "</b></center></header>";
+  }
+
+  public static void main(String[] args) throws IOException {
+    ResultJournal journal = ResultJournal.getInstance();
+    Path journalPath = args.length > 0 ? Paths.get(args[0])
+        : journal != null ? journal.getPath() : Paths.get("report/custom-reports/results.journal");
+    Path reportPath =
+        args.length > 1 ? Paths.get(args[1]) : Paths.get("report/custom-reports/my-report.html");
+    render(journalPath, reportPath);
+  }
+}
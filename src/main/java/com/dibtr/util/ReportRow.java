@@ -0,0 +1,29 @@
+package com.dibtr.util;
+
+/**
+ * One result row of the custom HTML report.
+ */
+public class ReportRow {
+  private final String rowClass;
+  private final String[] cells;
+
+  /**
+   * Instantiates a new report row.
+   *
+   * @param rowClass - String - Bootstrap row class (danger / success / warning).
+   * @param cells - String[] - Device, test case ID, name, result, failure reason, Perfecto link and
+   *        Applitools link, in column order.
+   */
+  public ReportRow(String rowClass, String... cells) {
+    this.rowClass = rowClass;
+    this.cells = cells;
+  }
+
+  public String getRowClass() {
+    return rowClass;
+  }
+
+  public String[] getCells() {
+    return cells;
+  }
+}
@@ -0,0 +1,256 @@
+package com.dibtr.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is an append-only, on-disk journal of test results. AllureTestListener appends one
+ * line per result as soon as a test finishes, so the report can be rebuilt from the journal at any
+ * time, including after the JVM died halfway through a run.</br>
+ * </br>
+ * Every line is a tab separated ReportRow (row class followed by the cells) written with a single
+ * append. A torn last line left by a crash is skipped when reading.</br>
+ * </br>
+ * The first line names the run the journal belongs to. Parallel surefire forks of one run share
+ * the report.journal.run system property and append to the same journal; the first fork of a new
+ * run clears the results of the previous one. Without the property every JVM is a run of its own.
+ */
+public class ResultJournal implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultJournal.class);
+  private static final int CELL_COUNT = 7;
+  private static final String RUN_HEADER = "#run\t";
+  private static ResultJournal instance;
+
+  private final Path path;
+  private final boolean fsync;
+  private final String runId;
+  private FileChannel channel;
+  private boolean active;
+
+  /**
+   * Instantiates a new journal of a run of this JVM alone.
+   *
+   * @param path - Path - Journal file.
+   * @param fsync - boolean - Force every appended line to disk, not only to the OS.
+   */
+  public ResultJournal(Path path, boolean fsync) {
+    this(path, fsync, ManagementFactory.getRuntimeMXBean().getName() + "@"
+        + ManagementFactory.getRuntimeMXBean().getStartTime());
+  }
+
+  /**
+   * Instantiates a new journal. The results of another run are cleared on the first append.
+   *
+   * @param path - Path - Journal file.
+   * @param fsync - boolean - Force every appended line to disk, not only to the OS.
+   * @param runId - String - Id shared by every JVM of the run.
+   */
+  public ResultJournal(Path path, boolean fsync, String runId) {
+    this.path = path;
+    this.fsync = fsync;
+    this.runId = runId;
+  }
+
+  /**
+   * Get the shared journal configured by the report.journal.* keys, or null when the journal is
+   * disabled.
+   *
+   * @return ResultJournal - The shared journal, null if disabled.
+   */
+  public static synchronized ResultJournal getInstance() {
+    if (instance == null) {
+      EnvironmentSettings settings = EnvironmentSettings.getInstance();
+      if (!Boolean.parseBoolean(settings.getProperty("report.journal.enabled", "true"))) {
+        return null;
+      }
+      Path path = Paths.get(settings.getProperty("report.journal.path",
+          "report/custom-reports/results.journal"));
+      boolean fsync = Boolean.parseBoolean(settings.getProperty("report.journal.fsync", "false"));
+      String runId = System.getProperty("report.journal.run");
+      instance = runId == null || runId.trim().isEmpty() ? new ResultJournal(path, fsync)
+          : new ResultJournal(path, fsync, runId.trim());
+      Runtime.getRuntime().addShutdownHook(new Thread(instance::close, "result-journal"));
+    }
+    return instance;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Whether this JVM has appended to the journal, i.e. the journal holds results of this run.
+   *
+   * @return boolean - 'true' once the first result was appended.
+   */
+  public synchronized boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Appends one result.
+   *
+   * @param row - ReportRow - Result to append.
+   */
+  public synchronized void append(ReportRow row) {
+    StringBuilder line = new StringBuilder(256);
+    encode(line, row.getRowClass());
+    for (String cell : row.getCells()) {
+      line.append('\t');
+      encode(line, cell);
+    }
+    line.append('\n');
+    try {
+      if (channel == null) {
+        channel = open();
+        active = true;
+      }
+      write(channel, line);
+      if (fsync) {
+        channel.force(false);
+      }
+    } catch (IOException e) {
+      LOGGER.error("Unable to append result to journal {}", path, e);
+    }
+  }
+
+  /**
+   * Closes the journal file, the next append opens it again.
+   */
+  @Override
+  public synchronized void close() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to close journal {}", path, e);
+    }
+    channel = null;
+  }
+
+  /**
+   * Opens the journal for appending. The forks of a run take turns through a file lock, so only
+   * the first one of a new run clears the journal and writes the run header.
+   */
+  private FileChannel open() throws IOException {
+    Files.createDirectories(path.toAbsolutePath().getParent());
+    byte[] header = (RUN_HEADER + runId + "\n").getBytes(StandardCharsets.UTF_8);
+    try (FileChannel check = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      FileLock lock = check.lock();
+      try {
+        ByteBuffer firstLine = ByteBuffer.allocate(header.length);
+        while (firstLine.hasRemaining() && check.read(firstLine) >= 0) {
+          // read up to the length of the header
+        }
+        if (!Arrays.equals(firstLine.array(), header)) {
+          check.truncate(0);
+          check.write(ByteBuffer.wrap(header), 0);
+        }
+      } finally {
+        lock.release();
+      }
+    }
+    return FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private static void write(FileChannel target, CharSequence line) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      target.write(buffer);
+    }
+  }
+
+  /**
+   * Reads every complete result of a journal file.
+   *
+   * @param journal - Path - Journal file.
+   * @param consumer - RowConsumer - Receives the results in the order they were appended.
+   * @throws IOException if the journal cannot be read.
+   */
+  public static void read(Path journal, RowConsumer consumer) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // The run header has too few fields to decode
+        ReportRow row = decode(line);
+        if (row != null) {
+          consumer.accept(row);
+        }
+      }
+    }
+  }
+
+  private static void encode(StringBuilder line, String value) {
+    if (value == null) {
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          line.append("\\\\");
+          break;
+        case '\t':
+          line.append("\\t");
+          break;
+        case '\n':
+          line.append("\\n");
+          break;
+        case '\r':
+          line.append("\\r");
+          break;
+        default:
+          line.append(c);
+      }
+    }
+  }
+
+  private static ReportRow decode(String line) {
+    List<String> fields = new ArrayList<>(CELL_COUNT + 1);
+    StringBuilder field = new StringBuilder();
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\t') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\\' && i + 1 < line.length()) {
+        char escaped = line.charAt(++i);
+        field.append(
+            escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    if (fields.size() != CELL_COUNT + 1) {
+      return null;
+    }
+    return new ReportRow(fields.get(0),
+        fields.subList(1, fields.size()).toArray(new String[CELL_COUNT]));
+  }
+
+  /**
+   * Receives journal rows, allowed to fail with an IOException while writing them out.
+   */
+  public interface RowConsumer {
+    void accept(ReportRow row) throws IOException;
+  }
+}
@@ -0,0 +1,210 @@
+package com.dibtr.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.testng.Reporter;
+import io.qameta.allure.Allure;
+import io.qameta.allure.AllureLifecycle;
+import io.qameta.allure.model.Attachment;
+
+/**
+ * This class captures failure screenshots. The test thread only grabs and hashes the PNG bytes and
+ * registers the Allure attachment; a bounded background writer stores the image once under
+ * target/surefire-reports and links it into "Report Testing Suite" for Jenkins and into the
+ * Allure results directory (hard link, falling back to a symbolic link, then to a copy).</br>
+ * </br>
+ * Screenshots are content addressed: the file name is the SHA-256 digest of the image, so the same
+ * error dialog captured by many tests is stored, linked and attached once, and every report link
+ * points to that one file.</br>
+ * </br>
+ * When the writer queue is full the capturing thread writes the screenshot itself, so captures
+ * are never lost. Call flush before the results are collected.</br>
+ * </br>
+ * When artifact.upload.url is configured, every distinct screenshot is also queued once on the
+ * ArtifactUploader by the writer.
+ */
+public class ScreenshotService {
+  private static final AllureLogger LOGGER = new AllureLogger(ScreenshotService.class);
+  private static final Path REPORTS_DIRECTORY = Paths.get("target", "surefire-reports");
+  private static final Path JENKINS_DIRECTORY = REPORTS_DIRECTORY.resolve("Report Testing Suite");
+  private static final String ALLURE_SUFFIX = "-attachment.png";
+  private static ScreenshotService instance;
+
+  private final ContentAddressedStore screenshots =
+      new ContentAddressedStore(REPORTS_DIRECTORY, ".png");
+  private final ContentAddressedStore jenkinsScreenshots =
+      new ContentAddressedStore(JENKINS_DIRECTORY, ".png");
+  private final ContentAddressedStore allureAttachments = new ContentAddressedStore(
+      Paths.get(System.getProperty("allure.results.directory", "allure-results")),
+      ALLURE_SUFFIX);
+  private final ArtifactUploader artifactUploader;
+  private final Set<String> uploaded = ConcurrentHashMap.newKeySet();
+  private final ThreadPoolExecutor writer;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Object idle = new Object();
+
+  /**
+   * Instantiates a new screenshot service.
+   *
+   * @param queueCapacity - int - Screenshots buffered for the writer before captures write inline.
+   * @param artifactUploader - ArtifactUploader - Uploader receiving the screenshots, null to keep
+   *        them local.
+   */
+  public ScreenshotService(int queueCapacity, ArtifactUploader artifactUploader) {
+    this.artifactUploader = artifactUploader;
+    this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "screenshot-writer");
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /**
+   * Get the shared screenshot service configured by screenshot.writer.queue.capacity.
+   *
+   * @return ScreenshotService - Shared service instance.
+   */
+  public static synchronized ScreenshotService getInstance() {
+    if (instance == null) {
+      instance = new ScreenshotService(Integer.parseInt(EnvironmentSettings.getInstance()
+          .getProperty("screenshot.writer.queue.capacity", "32")), ArtifactUploader.getInstance());
+      Runtime.getRuntime().addShutdownHook(
+          new Thread(() -> instance.flush(30, TimeUnit.SECONDS), "screenshot-flush"));
+    }
+    return instance;
+  }
+
+  /**
+   * This function is used to capture a screenshot of the given driver. Only the capture and the
+   * hashing run on the calling thread.
+   *
+   * @param testCaseId - String - ID of the test case, used in the report and attachment name.
+   * @param driver - WebDriver - Driver to capture.
+   * @return String - Path the screenshot is written to, null if the capture failed or the driver
+   *         cannot take screenshots.
+   */
+  public String capture(String testCaseId, WebDriver driver) {
+    if (driver == null) {
+      LOGGER.warn("No driver available to capture a screenshot for {}", testCaseId);
+      return null;
+    }
+    byte[] png;
+    try {
+      WebDriver screenshotDriver = driver instanceof RemoteWebDriver
+          && !(driver instanceof TakesScreenshot) ? new Augmenter().augment(driver) : driver;
+      if (!(screenshotDriver instanceof TakesScreenshot)) {
+        // e.g. HttpWebDriver, there is no screen to capture
+        LOGGER.trace("{} cannot take screenshots, none captured for {}",
+            driver.getClass().getSimpleName(), testCaseId);
+        return null;
+      }
+      png = ((TakesScreenshot) screenshotDriver).getScreenshotAs(OutputType.BYTES);
+    } catch (Exception e) {
+      LOGGER.error("Unable to capture screenshot for {}", testCaseId, e);
+      return null;
+    }
+    String digest = ContentAddressedStore.digest(png);
+    Path target = screenshots.resolve(digest);
+    String fileName = target.getFileName().toString();
+    attach(testCaseId, digest);
+    LOGGER.info("Screenshot for {} is {}", testCaseId, fileName);
+    Reporter.log("\r * screenshot for Test Case: " + testCaseId + " <a href='./" + fileName
+        + "' target='_blank' >View Image </a>"
+        + "<div style='height:200px; width: 375px; overflow:scroll'><img src='./" + fileName
+        + "'></div> \r\n", true);
+    pending.incrementAndGet();
+    writer.execute(() -> {
+      try {
+        store(digest, png);
+      } finally {
+        if (pending.decrementAndGet() == 0) {
+          synchronized (idle) {
+            idle.notifyAll();
+          }
+        }
+      }
+    });
+    return target.toString();
+  }
+
+  /**
+   * Waits until every screenshot captured so far is on disk.
+   *
+   * @param timeout - long - Maximum time to wait.
+   * @param unit - TimeUnit - Unit of the timeout.
+   * @return boolean - 'true' if all screenshots were written in time.
+   */
+  public boolean flush(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (idle) {
+      while (pending.get() > 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          LOGGER.warn("{} screenshots still pending after flush timeout", pending.get());
+          return false;
+        }
+        try {
+          idle.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Logs how many screenshots were stored and how many were duplicates of a stored one.
+   */
+  public void logStatistics() {
+    LOGGER.info("Screenshots stored {} deduplicated {} ({} bytes not written)",
+        screenshots.getStored(), screenshots.getDeduplicated(), screenshots.getBytesSaved());
+  }
+
+  /**
+   * Adds the attachment to the Allure test case or step current on the calling thread. Its source
+   * is the digest, so duplicates share one file in the results directory, written by the writer.
+   */
+  private void attach(String testCaseId, String digest) {
+    AllureLifecycle lifecycle = Allure.getLifecycle();
+    Optional<String> current = lifecycle.getCurrentTestCaseOrStep();
+    if (!current.isPresent()) {
+      return;
+    }
+    Attachment attachment = new Attachment().setName("Page screenshot " + testCaseId)
+        .setType("image/png").setSource(allureAttachments.resolve(digest).getFileName().toString());
+    if (current.equals(lifecycle.getCurrentTestCase())) {
+      lifecycle.updateTestCase(current.get(), result -> result.getAttachments().add(attachment));
+    } else {
+      lifecycle.updateStep(current.get(), step -> step.getAttachments().add(attachment));
+    }
+  }
+
+  private void store(String digest, byte[] png) {
+    try {
+      Path stored = screenshots.put(digest, png);
+      jenkinsScreenshots.putFile(digest, stored);
+      allureAttachments.putFile(digest, stored);
+      if (artifactUploader != null && uploaded.add(digest)) {
+        artifactUploader.enqueue(stored.getFileName().toString(), "image/png", png);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Unable to store screenshot {}", digest, e);
+    }
+  }
+}
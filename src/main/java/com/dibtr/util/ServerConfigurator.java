@@ -11,6 +11,14 @@ public interface ServerConfigurator {
   
   public void startDeviceSession(String platformVersion, String deviceName, boolean fullReset);
 
+  /**
+   * Starts a session on the given device, e.g. one leased from the device matrix.
+   *
+   * @param slot - DeviceSlot - Device and Appium server to start the session on.
+   * @param fullReset - boolean - Reinstall the app.
+   */
+  public void startDeviceSession(DeviceSlot slot, boolean fullReset);
+
  
   public IOSDriver<IOSElement> getWebDriver();
 
@@ -20,6 +28,27 @@ public interface ServerConfigurator {
  
   public void stopDeviceSession();
 
+  /**
+   * Get the log collector of the session bound to the current thread.
+   *
+   * @return DeviceLogCollector - The collector, null if no session is bound or collection is off.
+   */
+  public DeviceLogCollector getDeviceLogCollector();
+
+  /**
+   * Removes the session started on the current thread from it, so it can be attached to another.
+   *
+   * @return DeviceSession - The detached session, null if none was started.
+   */
+  public DeviceSession detachDeviceSession();
+
+  /**
+   * Binds a previously detached session to the current thread.
+   *
+   * @param session - DeviceSession - Session to bind.
+   */
+  public void attachDeviceSession(DeviceSession session);
+
  
 
 }
@@ -0,0 +1,107 @@
+package com.dibtr.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * This class holds the in-flight mobile and web sessions started by
+ * DriverFactory.startSessions. Both handshakes run in parallel; a side which was not requested is
+ * represented by an already completed future holding null. The device slot and the configurator
+ * are only set when the mobile side was requested, so a web-only start never touches the mobile
+ * session already bound to the test thread.
+ */
+public class SessionBootstrap {
+  private final CompletableFuture<DeviceSession> mobileSession;
+  private final CompletableFuture<WebDriver> webSession;
+  private final DeviceSlot deviceSlot;
+  private final ServerConfigurator serverConfigurator;
+
+  SessionBootstrap(CompletableFuture<DeviceSession> mobileSession,
+      CompletableFuture<WebDriver> webSession, DeviceSlot deviceSlot,
+      ServerConfigurator serverConfigurator) {
+    this.mobileSession = mobileSession;
+    this.webSession = webSession;
+    this.deviceSlot = deviceSlot;
+    this.serverConfigurator = serverConfigurator;
+  }
+
+  public CompletableFuture<DeviceSession> getMobileSession() {
+    return mobileSession;
+  }
+
+  public CompletableFuture<WebDriver> getWebSession() {
+    return webSession;
+  }
+
+  /**
+   * This function is used to get the device slot leased for the mobile side.
+   *
+   * @return DeviceSlot - Leased slot, null when no mobile session was requested.
+   */
+  DeviceSlot getDeviceSlot() {
+    return deviceSlot;
+  }
+
+  /**
+   * This function is used to get the configurator starting the mobile side.
+   *
+   * @return ServerConfigurator - Configurator, null when no mobile session was requested.
+   */
+  ServerConfigurator getServerConfigurator() {
+    return serverConfigurator;
+  }
+
+  /**
+   * Waits until both sessions are up, or until the first of them fails.
+   *
+   * @param timeout - long - Maximum time to wait for both handshakes.
+   * @param unit - TimeUnit - Unit of the timeout.
+   * @throws IllegalStateException if either side failed or the timeout elapsed.
+   */
+  void await(long timeout, TimeUnit unit) {
+    CompletableFuture<Object> firstFailure = new CompletableFuture<>();
+    mobileSession.whenComplete((session, error) -> failOn(firstFailure, error));
+    webSession.whenComplete((driver, error) -> failOn(firstFailure, error));
+    try {
+      CompletableFuture.anyOf(CompletableFuture.allOf(mobileSession, webSession), firstFailure)
+          .get(timeout, unit);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while starting sessions", e);
+    } catch (ExecutionException | TimeoutException e) {
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      throw new IllegalStateException("Failed to start sessions", cause);
+    }
+  }
+
+  /**
+   * Tears down whichever side did come up, now or once its handshake finishes. The browser is
+   * returned to the browser pool.
+   *
+   * @return CompletableFuture - Completes once the mobile side is torn down or failed to start.
+   */
+  CompletableFuture<Void> cleanUp() {
+    CompletableFuture<Void> mobileCleanUp = mobileSession.thenAccept(session -> {
+      if (session != null) {
+        serverConfigurator.attachDeviceSession(session);
+        serverConfigurator.stopDeviceSession();
+      }
+    });
+    webSession.thenAccept(driver -> {
+      if (driver != null) {
+        // The browser itself is fine, it goes back to the pool
+        BrowserPool.getInstance().release(driver);
+      }
+    });
+    return mobileCleanUp;
+  }
+
+  private static void failOn(CompletableFuture<Object> firstFailure, Throwable error) {
+    if (error != null) {
+      firstFailure.completeExceptionally(error);
+    }
+  }
+}
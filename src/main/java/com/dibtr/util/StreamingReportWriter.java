@@ -0,0 +1,105 @@
+package com.dibtr.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This class writes the custom HTML report row by row. The template is split once at its
+ * insertion point; the header and the part before it are written on open, each row goes straight
+ * to the buffered file writer, and the rest of the template is written on close. Memory use
+ * depends on the size of one row, not on the number of rows.
+ */
+public class StreamingReportWriter implements Closeable {
+  private static final String INSERTION_POINT = "</tbody>";
+  private final Writer writer;
+  private final String templateSuffix;
+
+  /**
+   * Opens the report file and writes everything up to the first row.
+   *
+   * @param target - Path - Report file to create or overwrite.
+   * @param template - String - HTML template containing a &lt;/tbody&gt; tag.
+   * @param header - String - Markup written before the template.
+   * @throws IOException if the report cannot be written.
+   */
+  public StreamingReportWriter(Path target, String template, String header) throws IOException {
+    int insertAt = template.indexOf(INSERTION_POINT);
+    if (insertAt < 0) {
+      insertAt = template.length();
+    }
+    this.templateSuffix = template.substring(insertAt);
+    this.writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8);
+    writer.write(header);
+    writer.write(template, 0, insertAt);
+  }
+
+  /**
+   * Appends one row, HTML escaping every cell.
+   *
+   * @param row - ReportRow - Row to write.
+   * @throws IOException if the report cannot be written.
+   */
+  public void writeRow(ReportRow row) throws IOException {
+    writer.write("<tr class=\"");
+    escape(row.getRowClass());
+    writer.write("\">");
+    for (String cell : row.getCells()) {
+      writer.write("<td>");
+      escape(cell);
+      writer.write("</td>");
+    }
+    writer.write("</tr>");
+  }
+
+  /**
+   * Writes the rest of the template and closes the file.
+   *
+   * @throws IOException if the report cannot be written.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      writer.write(templateSuffix);
+      writer.write(System.lineSeparator());
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void escape(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      String replacement;
+      switch (value.charAt(i)) {
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '"':
+          replacement = "&quot;";
+          break;
+        case '\'':
+          replacement = "&#39;";
+          break;
+        default:
+          continue;
+      }
+      writer.write(value, start, i - start);
+      writer.write(replacement);
+      start = i + 1;
+    }
+    writer.write(value, start, value.length() - start);
+  }
+}
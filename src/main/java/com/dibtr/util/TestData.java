@@ -1,43 +1,73 @@
 package com.dibtr.util;
 
+/**
+ * Generated input data of one test. Every field is generated on first access, so fields a test
+ * does not use cost nothing. The username is unique across threads, forks and runs, see
+ * TestDataFactory.
+ */
 public class TestData {
 
-  private String note = CommonUtility.getRandomAlphabeticString(10);
-  private String testDescription = CommonUtility.getRandomAlphabeticString(10);
-  private String usernameValue = CommonUtility.getRandomAlphabeticString(6) + "@gmail.com";
-  private String passwordValue = CommonUtility.getRandomAlphabeticString(4) + "@123";
-  private String firstName = CommonUtility.getRandomAlphabeticString(6);
-  private String lastName = CommonUtility.getRandomAlphabeticString(6);
+  private final TestDataFactory factory;
+  private String note;
+  private String testDescription;
+  private String usernameValue;
+  private String passwordValue;
+  private String firstName;
+  private String lastName;
   private String phoneNumber = "0123456789";
   private String mile = "10";
 
-  public TestData() {}
+  public TestData() {
+    this(TestDataFactory.getInstance());
+  }
+
+  TestData(TestDataFactory factory) {
+    this.factory = factory;
+  }
 
   public void setNote(String note) {
     this.note = note;
   }
 
   public String getNote() {
+    if (note == null) {
+      note = TestDataRandom.alphabetic(10);
+    }
     return note;
   }
 
   public String getTestDescription() {
+    if (testDescription == null) {
+      testDescription = TestDataRandom.alphabetic(10);
+    }
     return testDescription;
   }
 
   public String getRandomUsername() {
+    if (usernameValue == null) {
+      usernameValue = factory.nextIdentity() + "@gmail.com";
+    }
     return usernameValue;
   }
 
   public String getRandomPassword() {
+    if (passwordValue == null) {
+      passwordValue = TestDataRandom.alphabetic(4) + "@123";
+    }
     return passwordValue;
   }
 
   public String getRandomFirstName() {
+    if (firstName == null) {
+      firstName = TestDataRandom.alphabetic(6);
+    }
     return firstName;
   }
 
   public String getRandomLastName() {
+    if (lastName == null) {
+      lastName = TestDataRandom.alphabetic(6);
+    }
     return lastName;
   }
 
@@ -49,4 +79,3 @@ public class TestData {
     return mile;
   }
 }
-
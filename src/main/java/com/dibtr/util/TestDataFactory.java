@@ -0,0 +1,149 @@
+package com.dibtr.util;
+
+import java.lang.management.ManagementFactory;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class hands out TestData whose identities (usernames) are unique across threads, surefire
+ * forks and runs. An identity is made of three lowercase letter blocks:</br>
+ * - a per-run namespace (random, or shared through -Dtestdata.namespace),</br>
+ * - the id of the current JVM, which tells concurrent forks on the same agent apart,</br>
+ * - a lock-free counter within the JVM.</br>
+ * The first two blocks have a fixed length, so no two counters can produce the same string.
+ */
+public class TestDataFactory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestDataFactory.class);
+  private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+  private static final int NAMESPACE_LENGTH = 5;
+  // Seven letters cover every int, i.e. every process id and the random fallback fork id
+  private static final int FORK_ID_LENGTH = 7;
+  private static final long FORK_ID_RANGE = 8031810176L;
+  private static TestDataFactory instance;
+
+  private final String prefix;
+  private final AtomicLong counter = new AtomicLong();
+  private final BlockingQueue<String> pool;
+
+  /**
+   * Instantiates a new factory.
+   *
+   * @param namespace - String - Per-run namespace, NAMESPACE_LENGTH lowercase letters.
+   * @param forkId - long - Id of this JVM among concurrently running forks, ids from 26^7 on are
+   *        folded into that range.
+   * @param poolSize - int - Number of identities generated ahead in the background, 0 for none.
+   */
+  public TestDataFactory(String namespace, long forkId, int poolSize) {
+    this.prefix = namespace + encode(Math.floorMod(forkId, FORK_ID_RANGE), FORK_ID_LENGTH);
+    if (poolSize > 0) {
+      pool = new ArrayBlockingQueue<>(poolSize);
+      Thread filler = new Thread(this::fillPool, "testdata-identity-pool");
+      filler.setDaemon(true);
+      filler.start();
+    } else {
+      pool = null;
+    }
+  }
+
+  /**
+   * Get the shared factory configured by testdata.namespace and testdata.identity.pool.size.
+   *
+   * @return TestDataFactory - The shared factory.
+   */
+  public static synchronized TestDataFactory getInstance() {
+    if (instance == null) {
+      String namespace = System.getProperty("testdata.namespace");
+      if (namespace == null || namespace.trim().isEmpty()) {
+        namespace = randomNamespace();
+      } else if (!namespace.trim().matches("[a-z]{" + NAMESPACE_LENGTH + "}")) {
+        throw new IllegalArgumentException(
+            "testdata.namespace must be " + NAMESPACE_LENGTH + " lowercase letters: " + namespace);
+      }
+      instance = new TestDataFactory(namespace.trim(), currentProcessId(),
+          Integer.parseInt(EnvironmentSettings.getInstance()
+              .getProperty("testdata.identity.pool.size", "0")));
+      LOGGER.info("Test data identity prefix {}", instance.prefix);
+    }
+    return instance;
+  }
+
+  /**
+   * Creates test data with a unique identity. Fields are generated on first access.
+   *
+   * @return TestData - New test data.
+   */
+  public TestData create() {
+    return new TestData(this);
+  }
+
+  /**
+   * Returns an identity that no other thread, fork or run receives.
+   *
+   * @return String - Unique lowercase identity.
+   */
+  public String nextIdentity() {
+    if (pool != null) {
+      String pooled = pool.poll();
+      if (pooled != null) {
+        return pooled;
+      }
+    }
+    return generate();
+  }
+
+  private String generate() {
+    return prefix + encode(counter.getAndIncrement(), 1);
+  }
+
+  private void fillPool() {
+    try {
+      while (true) {
+        pool.put(generate());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Base 26 with letters only, left padded to at least minLength.
+   */
+  private static String encode(long value, int minLength) {
+    StringBuilder sb = new StringBuilder(minLength + 4);
+    long remaining = value;
+    do {
+      sb.append(LETTERS.charAt((int) (remaining % LETTERS.length())));
+      remaining /= LETTERS.length();
+    } while (remaining > 0);
+    while (sb.length() < minLength) {
+      sb.append(LETTERS.charAt(0));
+    }
+    return sb.reverse().toString();
+  }
+
+  private static String randomNamespace() {
+    SecureRandom random = new SecureRandom();
+    char[] namespace = new char[NAMESPACE_LENGTH];
+    for (int i = 0; i < namespace.length; i++) {
+      namespace[i] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+    }
+    return new String(namespace);
+  }
+
+  /**
+   * Process id of this JVM, taken from the "pid@host" runtime name on Java 8.
+   */
+  private static long currentProcessId() {
+    String name = ManagementFactory.getRuntimeMXBean().getName();
+    try {
+      return Long.parseLong(name.substring(0, name.indexOf('@')));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to read process id from {}, using a random fork id", name);
+      return new SecureRandom().nextInt(Integer.MAX_VALUE);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.dibtr.util;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is the random source for generated test data. Every thread gets its own
+ * SplittableRandom derived from one suite-level seed, so generation never blocks on the entropy
+ * pool and never contends between threads.</br>
+ * </br>
+ * The seed is logged once per run. Passing it back with -Dtestdata.seed=&lt;seed&gt; replays the
+ * same data; with parallel threads the per-thread streams are handed out in order of first use.
+ */
+public final class TestDataRandom {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TestDataRandom.class);
+  private static final String SEED_PROPERTY = "testdata.seed";
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  public static final String ALPHABETIC = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  public static final String NUMERIC = "0123456789";
+  private static final long SEED = initSeed();
+  private static final AtomicLong THREAD_INDEX = new AtomicLong();
+  private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(
+      () -> new SplittableRandom(SEED + GOLDEN_GAMMA * THREAD_INDEX.getAndIncrement()));
+
+  private TestDataRandom() {
+    // Hide implicit default ctor
+  }
+
+  /**
+   * Get the suite-level seed.
+   *
+   * @return long - Seed of this run.
+   */
+  public static long getSeed() {
+    return SEED;
+  }
+
+  /**
+   * Returns a uniformly distributed int in [origin, bound).
+   *
+   * @param origin - int - Lowest value, inclusive.
+   * @param bound - int - Upper bound, exclusive. Must be greater than origin.
+   * @return int - Random number.
+   */
+  public static int nextInt(int origin, int bound) {
+    return RANDOM.get().nextInt(origin, bound);
+  }
+
+  /**
+   * Fills the buffer with characters drawn uniformly from the alphabet.
+   *
+   * @param buffer - char[] - Buffer to fill.
+   * @param offset - int - First index to fill.
+   * @param length - int - Number of characters to fill.
+   * @param alphabet - String - Characters to draw from.
+   */
+  public static void fill(char[] buffer, int offset, int length, String alphabet) {
+    SplittableRandom random = RANDOM.get();
+    int size = alphabet.length();
+    for (int i = offset; i < offset + length; i++) {
+      buffer[i] = alphabet.charAt(random.nextInt(size));
+    }
+  }
+
+  /**
+   * Returns a string of the given length drawn from the alphabet.
+   *
+   * @param length - int - Length of the string.
+   * @param alphabet - String - Characters to draw from.
+   * @return String - Random string.
+   */
+  public static String fromAlphabet(int length, String alphabet) {
+    char[] buffer = new char[length];
+    fill(buffer, 0, length, alphabet);
+    return new String(buffer);
+  }
+
+  /**
+   * Returns a random mixed case alphabetic string.
+   *
+   * @param length - int - Length of the string.
+   * @return String - Random string.
+   */
+  public static String alphabetic(int length) {
+    return fromAlphabet(length, ALPHABETIC);
+  }
+
+  /**
+   * Returns a random digit string.
+   *
+   * @param length - int - Length of the string.
+   * @return String - Random string.
+   */
+  public static String numeric(int length) {
+    return fromAlphabet(length, NUMERIC);
+  }
+
+  /**
+   * Returns a uniformly chosen element.
+   *
+   * @param values - T[] - Values to choose from.
+   * @return T - Random element.
+   */
+  public static <T> T pick(T[] values) {
+    return values[RANDOM.get().nextInt(values.length)];
+  }
+
+  private static long initSeed() {
+    String configured = System.getProperty(SEED_PROPERTY);
+    long seed;
+    if (configured != null && !configured.trim().isEmpty()) {
+      seed = Long.parseLong(configured.trim());
+    } else {
+      // Non-blocking seed source, unlike SecureRandom.getInstanceStrong().
+      seed = new SecureRandom().nextLong();
+    }
+    LOGGER.info("Test data seed {}, replay with -D{}={}", seed, SEED_PROPERTY, seed);
+    return seed;
+  }
+}
@@ -0,0 +1,188 @@
+package com.dibtr.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/**
+ * This class types values into fields. Every sendKeys is a round trip to the device, so a value
+ * is sent in as few calls as the field allows instead of one call and a fixed sleep per
+ * character:</br>
+ * BULK - the whole value in one sendKeys.</br>
+ * CHUNKED - the value in chunks with a short pause in between, for fields which drop characters
+ * when typed into fast.</br>
+ * AUTOCOMPLETE - the whole value in one sendKeys, then polls until the suggestion list is shown,
+ * so the next step can pick a suggestion.</br>
+ * </br>
+ * The time spent per field is recorded and logged by logSummary.
+ */
+public class TypingEngine {
+  private static final AllureLogger LOGGER = new AllureLogger(TypingEngine.class);
+  private static TypingEngine instance;
+  private final Mode defaultMode;
+  private final int chunkSize;
+  private final long chunkPauseMillis;
+  private final int autocompleteTimeoutSeconds;
+  private final Map<String, FieldTiming> fields = new ConcurrentHashMap<>();
+
+  /**
+   * How a value is sent to a field.
+   */
+  public enum Mode {
+    BULK, CHUNKED, AUTOCOMPLETE
+  }
+
+  /**
+   * Instantiates a new typing engine.
+   *
+   * @param defaultMode - Mode - Mode of fields typed into without explicit mode.
+   * @param chunkSize - int - Characters sent per sendKeys in CHUNKED mode.
+   * @param chunkPauseMillis - long - Pause between two chunks in milliseconds.
+   * @param autocompleteTimeoutSeconds - int - Maximum time to wait for the suggestion list.
+   */
+  public TypingEngine(Mode defaultMode, int chunkSize, long chunkPauseMillis,
+      int autocompleteTimeoutSeconds) {
+    this.defaultMode = defaultMode;
+    this.chunkSize = Math.max(chunkSize, 1);
+    this.chunkPauseMillis = chunkPauseMillis;
+    this.autocompleteTimeoutSeconds = autocompleteTimeoutSeconds;
+  }
+
+  /**
+   * Get the shared typing engine configured by the mobile.typing.* keys.
+   *
+   * @return TypingEngine - The shared typing engine
+   */
+  public static synchronized TypingEngine getInstance() {
+    if (instance == null) {
+      ConfigSnapshot config = EnvironmentSettings.config();
+      instance = new TypingEngine(
+          Mode.valueOf(config.getString("mobile.typing.mode", "BULK").trim().toUpperCase()),
+          config.getInt("mobile.typing.chunk.size", 8),
+          config.getInt("mobile.typing.chunk.pause.ms", 50),
+          config.getInt("mobile.typing.autocomplete.timeout.seconds", 10));
+    }
+    return instance;
+  }
+
+  public Mode getDefaultMode() {
+    return defaultMode;
+  }
+
+  /**
+   * This function is used to type a value into a field which already has the focus.
+   *
+   * @param driver - WebDriver - Driver the suggestion list is searched with, with the implicit wait
+   *        at zero so that every poll returns at once, see IOSPageDriver.withoutImplicitWait.
+   * @param field - WebElement - Field to type into.
+   * @param value - String - The value to type.
+   * @param mode - Mode - How the value is sent. AUTOCOMPLETE without suggestions is BULK.
+   * @param suggestions - By - Location of the suggestion list, only used in AUTOCOMPLETE mode.
+   * @param fieldName - String - Name under which the typing time is recorded.
+   * @return long - Time spent typing, including the wait for suggestions, in milliseconds.
+   * @throws TimeoutException if the suggestion list is not shown in time.
+   */
+  public long type(WebDriver driver, WebElement field, String value, Mode mode, By suggestions,
+      String fieldName) {
+    Mode effectiveMode = mode == Mode.AUTOCOMPLETE && suggestions == null ? Mode.BULK : mode;
+    long start = System.nanoTime();
+    long elapsedMillis;
+    try {
+      if (effectiveMode == Mode.CHUNKED) {
+        typeInChunks(field, value);
+      } else if (!value.isEmpty()) {
+        field.sendKeys(value);
+      }
+      if (effectiveMode == Mode.AUTOCOMPLETE) {
+        WaitEngine.getDefault().until(driver,
+            (WebDriver d) -> !d.findElements(suggestions).isEmpty(), autocompleteTimeoutSeconds,
+            "TypingEngine.autocomplete");
+      }
+    } finally {
+      elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      fields.computeIfAbsent(fieldName, k -> new FieldTiming()).record(value.length(),
+          elapsedMillis);
+      LOGGER.info("Typed {} characters into {} in {} ms ({})", value.length(), fieldName,
+          elapsedMillis, effectiveMode);
+    }
+    return elapsedMillis;
+  }
+
+  private void typeInChunks(WebElement field, String value) {
+    int from = 0;
+    while (from < value.length()) {
+      int to = Math.min(from + chunkSize, value.length());
+      if (to < value.length() && Character.isHighSurrogate(value.charAt(to - 1))) {
+        to++;
+      }
+      if (from > 0) {
+        pause(chunkPauseMillis);
+      }
+      field.sendKeys(value.substring(from, to));
+      from = to;
+    }
+  }
+
+  private static void pause(long millis) {
+    if (millis <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Get the typing time of one field.
+   *
+   * @param fieldName - String - Name the field was typed into with.
+   * @return FieldTiming - The timings, null if nothing was typed into the field.
+   */
+  public FieldTiming get(String fieldName) {
+    return fields.get(fieldName);
+  }
+
+  /**
+   * Logs one line per field.
+   */
+  public void logSummary() {
+    fields.forEach((name, timing) -> LOGGER.info(
+        "Typing {} : fields typed {} characters {} avg time {} ms", name, timing.getCount(),
+        timing.getCharacters(), timing.getAverageMillis()));
+  }
+
+  /**
+   * Counters of a single field.
+   */
+  public static final class FieldTiming {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    private final LongAdder millis = new LongAdder();
+
+    private void record(int typedCharacters, long elapsedMillis) {
+      count.increment();
+      characters.add(typedCharacters);
+      millis.add(elapsedMillis);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getCharacters() {
+      return characters.sum();
+    }
+
+    public long getAverageMillis() {
+      long typed = count.sum();
+      return typed == 0 ? 0 : millis.sum() / typed;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package com.dibtr.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * This class is the wait loop shared by IOSPageDriver and WebPageDriver. It replaces the
+ * FluentWait instances that used to be built per call with a fixed poll interval.</br>
+ * </br>
+ * Conditions are plain functions of the driver, so Selenium's ExpectedConditions can be passed
+ * as they are. Like FluentWait, a condition is satisfied when it returns a non-null value that is
+ * not Boolean.FALSE.
+ */
+public class WaitEngine {
+  private static final AllureLogger LOGGER = new AllureLogger(WaitEngine.class);
+  private static final WaitEngine DEFAULT = fromConfig();
+  private final PollingSchedule defaultSchedule;
+  private final int stableSamples;
+  private final long stableIntervalMillis;
+  private final long stableMaxMillis;
+
+  /**
+   * Instantiates a new wait engine which settles after 3 matching samples taken 50 ms apart, at
+   * most after 2 seconds.
+   *
+   * @param defaultSchedule - PollingSchedule - Schedule used when a call site brings none.
+   */
+  public WaitEngine(PollingSchedule defaultSchedule) {
+    this(defaultSchedule, 3, 50, 2000);
+  }
+
+  /**
+   * Instantiates a new wait engine.
+   *
+   * @param defaultSchedule - PollingSchedule - Schedule used when a call site brings none.
+   * @param stableSamples - int - Consecutive matching samples after which untilStable returns.
+   * @param stableIntervalMillis - long - Delay between two samples of untilStable.
+   * @param stableMaxMillis - long - Maximum time untilStable samples.
+   */
+  public WaitEngine(PollingSchedule defaultSchedule, int stableSamples, long stableIntervalMillis,
+      long stableMaxMillis) {
+    this.defaultSchedule = defaultSchedule;
+    this.stableSamples = Math.max(stableSamples, 2);
+    this.stableIntervalMillis = stableIntervalMillis;
+    this.stableMaxMillis = stableMaxMillis;
+  }
+
+  private static WaitEngine fromConfig() {
+    ConfigSnapshot config = EnvironmentSettings.config();
+    return new WaitEngine(PollingSchedule.fromConfig(), config.getInt("wait.stable.samples", 3),
+        config.getInt("wait.stable.interval.ms", 50), config.getInt("wait.stable.max.ms", 2000));
+  }
+
+  /**
+   * Get the shared wait engine using the configured polling schedule.
+   *
+   * @return WaitEngine - The shared wait engine
+   */
+  public static WaitEngine getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Waits for the condition using the default polling schedule.
+   *
+   * @param driver - WebDriver - Driver passed to the condition.
+   * @param condition - Function - Condition to evaluate, e.g. an ExpectedCondition.
+   * @param timeoutSeconds - int - Maximum time to wait in seconds.
+   * @param callSite - String - Name under which polls and timings are recorded.
+   * @return V - The value returned by the condition.
+   */
+  public <V> V until(WebDriver driver, Function<? super WebDriver, V> condition,
+      int timeoutSeconds, String callSite) {
+    return until(driver, condition, timeoutSeconds, defaultSchedule, callSite);
+  }
+
+  /**
+   * Waits for the condition using the given polling schedule. Element lookup and stale element
+   * errors are treated as 'not yet'.
+   *
+   * @param driver - WebDriver - Driver passed to the condition.
+   * @param condition - Function - Condition to evaluate, e.g. an ExpectedCondition.
+   * @param timeoutSeconds - int - Maximum time to wait in seconds.
+   * @param schedule - PollingSchedule - Delays between polls for this call site.
+   * @param callSite - String - Name under which polls and timings are recorded.
+   * @return V - The value returned by the condition.
+   * @throws TimeoutException if the condition is not satisfied in time.
+   */
+  public <V> V until(WebDriver driver, Function<? super WebDriver, V> condition,
+      int timeoutSeconds, PollingSchedule schedule, String callSite) {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    RuntimeException lastException = null;
+    int polls = 0;
+    while (true) {
+      polls++;
+      try {
+        V value = condition.apply(driver);
+        if (value != null && (Boolean.class != value.getClass() || Boolean.TRUE.equals(value))) {
+          WaitStatistics.getInstance().record(callSite, polls, elapsedMillis(start), true);
+          return value;
+        }
+        lastException = null;
+      } catch (NotFoundException | StaleElementReferenceException e) {
+        lastException = e;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        WaitStatistics.getInstance().record(callSite, polls, elapsedMillis(start), false);
+        throw new TimeoutException(String.format(
+            "Expected condition failed: waiting for %s (tried for %d second(s) with %d polls)",
+            condition, timeoutSeconds, polls), lastException);
+      }
+      sleep(Math.min(schedule.nextDelayMillis(polls), TimeUnit.NANOSECONDS.toMillis(remaining)));
+    }
+  }
+
+  /**
+   * Waits for an animation to settle, e.g. a scroll or a sliding panel. The sample, typically the
+   * rect of an element or the scroll offset, is taken repeatedly and the wait returns as soon as
+   * the configured number of consecutive samples are equal. Element lookup and stale element
+   * errors count as movement. It never fails: after the configured maximum the last sample is
+   * returned as it is.
+   *
+   * @param driver - WebDriver - Driver passed to the sample.
+   * @param sample - Function - Takes one sample; samples are compared with equals.
+   * @param callSite - String - Name under which samples and timings are recorded.
+   * @return V - The last sample, null if none could be taken.
+   */
+  public <V> V untilStable(WebDriver driver, Function<? super WebDriver, V> sample,
+      String callSite) {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(stableMaxMillis);
+    V previous = null;
+    int matches = 0;
+    int samples = 0;
+    while (true) {
+      samples++;
+      try {
+        V current = sample.apply(driver);
+        matches = current != null && current.equals(previous) ? matches + 1 : 1;
+        previous = current;
+      } catch (NotFoundException | StaleElementReferenceException e) {
+        matches = 0;
+        previous = null;
+      }
+      if (matches >= stableSamples) {
+        WaitStatistics.getInstance().record(callSite, samples, elapsedMillis(start), true);
+        return previous;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        WaitStatistics.getInstance().record(callSite, samples, elapsedMillis(start), false);
+        LOGGER.info("{} did not settle within {} ms, last sample {}", callSite, stableMaxMillis,
+            previous);
+        return previous;
+      }
+      sleep(Math.min(stableIntervalMillis, TimeUnit.NANOSECONDS.toMillis(remaining)));
+    }
+  }
+
+  private static long elapsedMillis(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(Math.max(millis, 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException(e);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.dibtr.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records how every WaitEngine call site behaves: number of waits, polls per wait and
+ * time until the condition was satisfied. The numbers are meant for tuning polling schedules.
+ */
+public class WaitStatistics {
+  private static final AllureLogger LOGGER = new AllureLogger(WaitStatistics.class);
+  private static final WaitStatistics INSTANCE = new WaitStatistics();
+  private final Map<String, CallSite> callSites = new ConcurrentHashMap<>();
+
+  public static WaitStatistics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Records one finished wait.
+   *
+   * @param callSite - String - Name of the calling page driver method.
+   * @param polls - int - Number of times the condition was evaluated.
+   * @param elapsedMillis - long - Time from the start of the wait until it finished.
+   * @param satisfied - boolean - 'true' if the condition was met, 'false' on timeout.
+   */
+  public void record(String callSite, int polls, long elapsedMillis, boolean satisfied) {
+    CallSite stats = callSites.computeIfAbsent(callSite, k -> new CallSite());
+    stats.waits.increment();
+    stats.polls.add(polls);
+    if (satisfied) {
+      stats.satisfiedMillis.add(elapsedMillis);
+    } else {
+      stats.timeouts.increment();
+    }
+  }
+
+  /**
+   * Get the statistics of one call site.
+   *
+   * @param callSite - String - Name of the calling page driver method.
+   * @return CallSite - The statistics, null if the call site never waited.
+   */
+  public CallSite get(String callSite) {
+    return callSites.get(callSite);
+  }
+
+  /**
+   * Logs one line per call site.
+   */
+  public void logSummary() {
+    callSites.forEach((name, stats) -> LOGGER.info(
+        "Wait {} : waits {} timeouts {} avg polls {} avg time-to-satisfy {} ms", name,
+        stats.getWaits(), stats.getTimeouts(), stats.getAveragePolls(),
+        stats.getAverageSatisfiedMillis()));
+  }
+
+  /**
+   * Counters of a single call site.
+   */
+  public static final class CallSite {
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder satisfiedMillis = new LongAdder();
+
+    public long getWaits() {
+      return waits.sum();
+    }
+
+    public long getTimeouts() {
+      return timeouts.sum();
+    }
+
+    public long getAveragePolls() {
+      long count = waits.sum();
+      return count == 0 ? 0 : polls.sum() / count;
+    }
+
+    public long getAverageSatisfiedMillis() {
+      long satisfied = waits.sum() - timeouts.sum();
+      return satisfied == 0 ? 0 : satisfiedMillis.sum() / satisfied;
+    }
+  }
+}
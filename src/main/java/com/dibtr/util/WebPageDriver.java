@@ -1,8 +1,7 @@
 package com.dibtr.util;
 
-import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.Function;
 
 import org.openqa.selenium.Alert;
 import org.openqa.selenium.By;
@@ -16,9 +15,6 @@ import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.FluentWait;
-import org.openqa.selenium.support.ui.Wait;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.appium.java_client.ios.IOSElement;
@@ -33,6 +29,7 @@ public class WebPageDriver {
   private static final String ELEMENT_NOT_FOUND = "Element not found.";
   private static final String ELEMENT_FOUND = "Element found.";
   private static final String FOUND = " Found: ";
+  private static final String SCROLL_OFFSET = "return [window.pageXOffset, window.pageYOffset];";
 
   public WebPageDriver(WebDriver webDriver) {
     this.webDriver = webDriver;
@@ -57,21 +54,10 @@ public class WebPageDriver {
     waitForElement(by, defaultWaitTimeout);
   }
 
-  private int calculatePollingTime(int timeout) {
-    return (timeout <= 60) ? 500 : 1000;
-  }
-
   public void waitForElement(final By by, final int timeout) {
     try {
-      Wait<WebDriver> wait =
-          new FluentWait<WebDriver>(webDriver).withTimeout(Duration.ofSeconds(timeout))
-              .pollingEvery(Duration.ofMillis(calculatePollingTime(timeout)))
-              .ignoring(NoSuchElementException.class);
-      wait.until(new Function<WebDriver, WebElement>() {
-        public WebElement apply(WebDriver driver) {
-          return driver.findElement(by);
-        }
-      });
+      WaitEngine.getDefault().until(webDriver, (WebDriver driver) -> driver.findElement(by),
+          timeout, "WebPageDriver.waitForElement");
     } catch (NoSuchElementException e) {
       LOGGER.info("An Error has occured in waitForElement(final By by): {}", e.getMessage());
     }
@@ -85,17 +71,20 @@ public class WebPageDriver {
     LOGGER.info("Trying to click on {}", by);
     waitForElementToBeClickable(by, timeout);
     webDriver.findElement(by).click();
+    BrowserPool.getInstance().visited(webDriver);
   }
 
   public void setBrowserURL(String url) {
     DriverFactory.getWebDriver().manage().window().maximize();
     DriverFactory.getWebDriver().get(url);
+    // Redirect hops are not recorded, the pool clears the cookies of the whole browser
+    BrowserPool.getInstance().visited(DriverFactory.getWebDriver());
   }
 
   public void waitForElementToBeClickable(final By by, final int timeout) {
-    WebElement element =
-        new WebDriverWait(DriverFactory.getWebDriver(), timeout, calculatePollingTime(timeout))
-            .until(ExpectedConditions.elementToBeClickable(by));
+    WebElement element = WaitEngine.getDefault().until(DriverFactory.getWebDriver(),
+        ExpectedConditions.elementToBeClickable(by), timeout,
+        "WebPageDriver.waitForElementToBeClickable");
     if (element == null) {
       LOGGER.info(LOG_FORMAT, ELEMENT_NOT_CLICKABLE, by);
     } else {
@@ -124,19 +113,15 @@ public class WebPageDriver {
    */
   public List<WebElement> getWebElementList(final By by, int timeout) {
     LOGGER.info("Attempting to retrieve a list of web elements with the {} tag.", by);
-    Wait<WebDriver> wait =
-        new FluentWait<WebDriver>(getWebDriver()).withTimeout(Duration.ofSeconds(timeout))
-            .pollingEvery(Duration.ofMillis(500)).ignoring(NoSuchElementException.class);
-    return wait.until((WebDriver driver) -> driver.findElements(by));
+    return WaitEngine.getDefault().until(getWebDriver(),
+        (WebDriver driver) -> driver.findElements(by), timeout, "WebPageDriver.getWebElementList");
   }
 
   public WebElement getElement(By by, int waitTimeOut) {
     WebElement element = null;
     LOGGER.info("Trying to find element with visibility check");
-    Wait<WebDriver> waitWithVisiblityCheck =
-        new FluentWait<WebDriver>(getWebDriver()).withTimeout(Duration.ofSeconds(waitTimeOut))
-            .pollingEvery(Duration.ofMillis(500)).ignoring(NoSuchElementException.class);
-    element = waitWithVisiblityCheck.until(ExpectedConditions.visibilityOfElementLocated(by));
+    element = WaitEngine.getDefault().until(getWebDriver(),
+        ExpectedConditions.visibilityOfElementLocated(by), waitTimeOut, "WebPageDriver.getElement");
     LOGGER.info("Element {} is present in DOM with @visible='true' ", by);
     return element;
   }
@@ -159,11 +144,32 @@ public class WebPageDriver {
     return text;
   }
 
+  /**
+   * Scrolls the element into view and returns once the scroll has settled, i.e. the scroll offset
+   * and the position of the element no longer change.
+   *
+   * @param by - By - The location of the element to scroll to
+   */
   public void scrollToElement(final By by) {
-    this.pause(500);
     WebElement element = getWebDriver().findElement(by);
+    if (!(getWebDriver() instanceof JavascriptExecutor)) {
+      // nothing to scroll on a driver which does not render, e.g. HttpWebDriver
+      return;
+    }
     ((JavascriptExecutor) getWebDriver()).executeScript("arguments[0].scrollIntoView(true);",
         element);
-    this.pause(500);
+    WaitEngine.getDefault().untilStable(getWebDriver(), (WebDriver driver) -> Arrays.asList(
+        ((JavascriptExecutor) driver).executeScript(SCROLL_OFFSET), element.getRect()),
+        "WebPageDriver.scrollToElement");
+  }
+
+  /**
+   * Waits until the element stops moving, e.g. at the end of a slide-in or expand animation.
+   *
+   * @param by - By - The location of the element
+   */
+  public void waitUntilStable(final By by) {
+    WaitEngine.getDefault().untilStable(getWebDriver(),
+        (WebDriver driver) -> driver.findElement(by).getRect(), "WebPageDriver.waitUntilStable");
   }
 }
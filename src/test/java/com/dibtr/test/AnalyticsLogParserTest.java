@@ -0,0 +1,215 @@
+package com.dibtr.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.dibtr.util.AnalyticsLogParser;
+import com.dibtr.util.CommonUtility;
+
+/**
+ * Checks the streaming parser against the split("\\s") algorithm it replaced, on generated device
+ * logs read through every input path, with reads cut at odd sizes so tokens straddle the buffers.
+ */
+public class AnalyticsLogParserTest {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String[] WHITESPACE = {" ", "\t", "\n", "\r\n", "\f", "\u000B", "  "};
+
+  /**
+   * The algorithm getAnalyticsFilterData used before, returning every event instead of the last
+   * one. It threw on a "Sent" token of five characters or less; those are skipped here, the way
+   * the parser skips them.
+   */
+  private static List<String> splitAlgorithm(String log, String since, int maxTokenLength) {
+    List<String> events = new ArrayList<>();
+    boolean started = since == null;
+    for (String token : log.split("\\s")) {
+      if (token.isEmpty() || token.length() > maxTokenLength) {
+        continue;
+      }
+      if (!started) {
+        started = token.contains(since);
+      } else if (token.contains("Sent") && token.length() > 5) {
+        events.add(token.substring(5, token.length() - 1));
+      }
+    }
+    return events;
+  }
+
+  private static String sampleLog(long seed, int lines) {
+    Random random = new Random(seed);
+    StringBuilder log = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      log.append("2026-10-18 12:00:").append(i % 60).append(" AnalyticsService[")
+          .append(random.nextInt(9999)).append(']');
+      log.append(WHITESPACE[random.nextInt(WHITESPACE.length)]);
+      switch (random.nextInt(5)) {
+        case 0:
+          log.append("Sent:{\"event\":\"tap\",\"id\":").append(i).append("},");
+          break;
+        case 1:
+          log.append("Sent:{\"screen\":\"Café\",\"id\":").append(i).append("};");
+          break;
+        case 2:
+          // Long enough to grow the token buffer past its initial size
+          char[] filler = new char[BUFFER_SIZE + random.nextInt(BUFFER_SIZE)];
+          Arrays.fill(filler, 'x');
+          log.append("Sent:{\"blob\":\"").append(filler).append("\"},");
+          break;
+        case 3:
+          log.append("Request Sent to the collector");
+          break;
+        default:
+          log.append("heartbeat ok");
+      }
+      log.append(WHITESPACE[random.nextInt(WHITESPACE.length)]);
+    }
+    return log.toString();
+  }
+
+  private static List<String> parseReader(AnalyticsLogParser parser, String log, String since,
+      int chunk) throws IOException {
+    List<String> events = new ArrayList<>();
+    parser.parseSince(new ChunkedReader(new StringReader(log), chunk), since, events::add);
+    return events;
+  }
+
+  private static List<String> parseStream(AnalyticsLogParser parser, String log, String since,
+      int chunk) throws IOException {
+    List<String> events = new ArrayList<>();
+    parser.parseSince(new ChunkedInputStream(
+        new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)), chunk), since,
+        events::add);
+    return events;
+  }
+
+  private static List<String> parseFile(AnalyticsLogParser parser, String log, String since)
+      throws IOException {
+    Path file = Files.createTempFile("device", ".log");
+    try {
+      Files.write(file, log.getBytes(StandardCharsets.UTF_8));
+      List<String> events = new ArrayList<>();
+      parser.parseSince(file, since, events::add);
+      return events;
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void everyInputPathMatchesTheSplitAlgorithm() throws IOException {
+    AnalyticsLogParser parser = new AnalyticsLogParser();
+    for (long seed = 1; seed <= 3; seed++) {
+      String log = sampleLog(seed, 400);
+      List<String> expected = splitAlgorithm(log, null, Integer.MAX_VALUE);
+      Assert.assertTrue(expected.size() > 100, "sample has events");
+      for (int chunk : new int[] {BUFFER_SIZE, 4093, 7}) {
+        Assert.assertEquals(parseReader(parser, log, null, chunk), expected, "reader " + chunk);
+        Assert.assertEquals(parseStream(parser, log, null, chunk), expected, "stream " + chunk);
+      }
+      Assert.assertEquals(parseFile(parser, log, null), expected, "mapped file");
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void eventStraddlingTheReadBufferIsKeptWhole() throws IOException {
+    String event = "Sent:{\"screen\":\"Café\"},";
+    for (int offset = BUFFER_SIZE - event.length(); offset <= BUFFER_SIZE; offset++) {
+      char[] filler = new char[offset - 1];
+      Arrays.fill(filler, 'a');
+      String log = new String(filler) + " " + event + "\nSent:{\"id\":2},";
+      List<String> expected = splitAlgorithm(log, null, Integer.MAX_VALUE);
+      AnalyticsLogParser parser = new AnalyticsLogParser();
+      Assert.assertEquals(parseReader(parser, log, null, BUFFER_SIZE), expected);
+      Assert.assertEquals(parseStream(parser, log, null, BUFFER_SIZE), expected);
+      Assert.assertEquals(expected, Arrays.asList("{\"screen\":\"Café\"}", "{\"id\":2}"));
+    }
+    String log = sampleLog(7, 5);
+    Assert.assertEquals(parseFile(new AnalyticsLogParser(), log, null),
+        splitAlgorithm(log, null, Integer.MAX_VALUE));
+  }
+
+  @Test(groups = {"Unit"})
+  public void tokensLongerThanTheLimitAreSkipped() throws IOException {
+    AnalyticsLogParser parser = new AnalyticsLogParser("Sent", 32);
+    String log = "Sent:{\"id\":1}, Sent:{\"id\":2,\"padding\":\"xxxxxxxxxxxx\"}, Sent:{\"id\":3},"
+        + "\nSent:" + new String(new char[3 * BUFFER_SIZE]).replace('\0', 'y') + ", Sent:{4},";
+    List<String> expected = splitAlgorithm(log, null, 32);
+    Assert.assertEquals(expected, Arrays.asList("{\"id\":1}", "{\"id\":3}", "{4}"));
+    Assert.assertEquals(parseReader(parser, log, null, 7), expected);
+    Assert.assertEquals(parseStream(parser, log, null, 4093), expected);
+    Assert.assertEquals(parseFile(parser, log, null), expected);
+  }
+
+  @Test(groups = {"Unit"})
+  public void parseSinceStartsAfterTheMarker() throws IOException {
+    String log = sampleLog(11, 100) + " TEST-START-42 " + sampleLog(12, 100);
+    List<String> expected = splitAlgorithm(log, "TEST-START-42", Integer.MAX_VALUE);
+    Assert.assertTrue(expected.size() < splitAlgorithm(log, null, Integer.MAX_VALUE).size());
+    AnalyticsLogParser parser = new AnalyticsLogParser();
+    Assert.assertEquals(parseReader(parser, log, "TEST-START-42", 4093), expected);
+    Assert.assertEquals(parseStream(parser, log, "TEST-START-42", 7), expected);
+    Assert.assertEquals(parseFile(parser, log, "TEST-START-42"), expected);
+    Assert.assertTrue(parseFile(parser, log, "NEVER-LOGGED").isEmpty());
+  }
+
+  @Test(groups = {"Unit"})
+  public void lastEventsKeepsTheMostRecentEvents() throws IOException {
+    String log = sampleLog(21, 200);
+    List<String> expected = splitAlgorithm(log, null, Integer.MAX_VALUE);
+    AnalyticsLogParser.LastEvents lastEvents = new AnalyticsLogParser.LastEvents(3);
+    new AnalyticsLogParser().parse(new StringReader(log), lastEvents);
+    Assert.assertEquals(lastEvents.getEvents(), expected.subList(expected.size() - 3,
+        expected.size()));
+    Assert.assertEquals(lastEvents.getLast(), expected.get(expected.size() - 1));
+    Assert.assertEquals(CommonUtility.getAnalyticsFilterData(log),
+        expected.get(expected.size() - 1));
+    Assert.assertNull(CommonUtility.getAnalyticsFilterData("heartbeat ok\n"));
+  }
+
+  /**
+   * Reader handing out at most chunk characters per read.
+   */
+  private static final class ChunkedReader extends FilterReader {
+    private final int chunk;
+
+    private ChunkedReader(Reader in, int chunk) {
+      super(in);
+      this.chunk = chunk;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      return super.read(buffer, offset, Math.min(length, chunk));
+    }
+  }
+
+  /**
+   * InputStream handing out at most chunk bytes per read.
+   */
+  private static final class ChunkedInputStream extends FilterInputStream {
+    private final int chunk;
+
+    private ChunkedInputStream(InputStream in, int chunk) {
+      super(in);
+      this.chunk = chunk;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return super.read(buffer, offset, Math.min(length, chunk));
+    }
+  }
+}
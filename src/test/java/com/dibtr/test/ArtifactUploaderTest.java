@@ -0,0 +1,189 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.ArtifactUploader;
+import com.dibtr.util.HttpClientProvider;
+import com.dibtr.util.PollingSchedule;
+import com.dibtr.util.ScreenshotService;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the uploader against an in-process HTTP stub which can be made slow or failing, and records
+ * the file name of every multipart part it accepted.
+ */
+public class ArtifactUploaderTest {
+  private static final Pattern FILE_NAME = Pattern.compile("filename=\"([^\"]+)\"");
+
+  private final Set<String> received = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger failNext = new AtomicInteger();
+  private volatile long latencyMillis;
+  private volatile boolean down;
+  private HttpServer server;
+  private HttpClientProvider httpClientProvider;
+  private Path spillDirectory;
+
+  @BeforeMethod
+  public void startStub() throws IOException {
+    received.clear();
+    requests.set(0);
+    failNext.set(0);
+    latencyMillis = 0;
+    down = false;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/artifacts", exchange -> {
+      String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.ISO_8859_1);
+      requests.incrementAndGet();
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (down || failNext.getAndDecrement() > 0) {
+        exchange.sendResponseHeaders(503, -1);
+      } else {
+        Matcher matcher = FILE_NAME.matcher(body);
+        while (matcher.find()) {
+          received.add(matcher.group(1));
+        }
+        exchange.sendResponseHeaders(204, -1);
+      }
+      exchange.close();
+    });
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.start();
+    httpClientProvider = new HttpClientProvider(4, 4, 2000, 5000, 30000, 1);
+    spillDirectory = Files.createTempDirectory("artifact-spill");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopStub() throws IOException {
+    server.stop(0);
+    httpClientProvider.shutdown();
+    FileUtils.deleteDirectory(spillDirectory.toFile());
+  }
+
+  private static long countFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private ArtifactUploader newUploader(int queueCapacity, int maxAttempts) {
+    return new ArtifactUploader(
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/artifacts", queueCapacity, 10,
+        1024 * 1024, 100, maxAttempts, PollingSchedule.fixed(20), spillDirectory,
+        httpClientProvider);
+  }
+
+  @Test(groups = {"Unit"})
+  public void slowEndpointOnlyCostsTheEnqueue() {
+    latencyMillis = 200;
+    ArtifactUploader uploader = newUploader(8, 3);
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < 50; i++) {
+        uploader.enqueue("result-" + i + ".json", "application/json", new byte[4096]);
+      }
+      long enqueueMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      // 50 synchronous posts would take at least 10 seconds against this endpoint
+      Assert.assertTrue(enqueueMillis < 1000, "enqueue took " + enqueueMillis + " ms");
+      Assert.assertTrue(uploader.flush(30, TimeUnit.SECONDS));
+      Assert.assertEquals(received.size(), 50);
+      Assert.assertTrue(uploader.getBatches() < 50, uploader.getBatches() + " batches");
+    } finally {
+      uploader.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void everyDistinctScreenshotIsUploadedOnce() {
+    ArtifactUploader uploader = newUploader(64, 3);
+    try {
+      ScreenshotService screenshots = new ScreenshotService(4, uploader);
+      screenshots.capture("TC-1", screenDriver(new byte[] {1, 2, 3}));
+      screenshots.capture("TC-2", screenDriver(new byte[] {1, 2, 3}));
+      screenshots.capture("TC-3", screenDriver(new byte[] {4, 5, 6}));
+      Assert.assertTrue(screenshots.flush(10, TimeUnit.SECONDS));
+      Assert.assertTrue(uploader.flush(10, TimeUnit.SECONDS));
+      Assert.assertEquals(received.size(), 2, received.toString());
+      for (String name : received) {
+        Assert.assertTrue(name.endsWith(".png"), name);
+      }
+    } finally {
+      uploader.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Driver whose only capability is a screenshot of the given bytes.
+   */
+  private static WebDriver screenDriver(byte[] png) {
+    return (WebDriver) Proxy.newProxyInstance(ArtifactUploaderTest.class.getClassLoader(),
+        new Class<?>[] {WebDriver.class, TakesScreenshot.class}, (proxy, method, args) -> {
+          if (method.getName().equals("getScreenshotAs")) {
+            return png;
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  @Test(groups = {"Unit"})
+  public void failedBatchesAreRetried() {
+    failNext.set(2);
+    ArtifactUploader uploader = newUploader(64, 5);
+    try {
+      for (int i = 0; i < 5; i++) {
+        uploader.enqueue("screen-" + i + ".png", "image/png", new byte[] {1, 2, 3});
+      }
+      Assert.assertTrue(uploader.flush(10, TimeUnit.SECONDS));
+      Assert.assertEquals(received.size(), 5);
+      Assert.assertTrue(uploader.getRetries() >= 2, uploader.getRetries() + " retries");
+      Assert.assertEquals(uploader.getSpilled(), 0);
+    } finally {
+      uploader.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void spilledArtifactsAreSentOnceTheEndpointRecovers() throws IOException {
+    down = true;
+    ArtifactUploader uploader = newUploader(64, 2);
+    try {
+      for (int i = 0; i < 5; i++) {
+        uploader.enqueue("log-" + i + ".txt", "text/plain", ("line " + i).getBytes());
+      }
+      Assert.assertFalse(uploader.flush(1, TimeUnit.SECONDS));
+      Assert.assertEquals(uploader.getSpilled(), 5);
+      Assert.assertEquals(countFiles(spillDirectory), 5);
+
+      down = false;
+      Assert.assertTrue(uploader.flush(10, TimeUnit.SECONDS));
+      Assert.assertEquals(received.size(), 5);
+      Assert.assertEquals(countFiles(spillDirectory), 0);
+    } finally {
+      uploader.shutdown(1, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.dibtr.test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.BrowserPool;
+import com.dibtr.util.ExecutesCdpCommand;
+
+/**
+ * Leases fake browsers which record the calls of the reset, so the pool can be exercised without
+ * starting a real browser.
+ */
+public class BrowserPoolTest {
+  private int started;
+
+  @BeforeMethod
+  public void resetFactory() {
+    started = 0;
+  }
+
+  private WebDriver acquire(BrowserPool pool) {
+    return pool.acquire("Chrome", () -> {
+      started++;
+      return new DevToolsBrowser();
+    });
+  }
+
+  @Test(groups = {"Unit"})
+  public void releasedBrowserIsResetAndReused() {
+    BrowserPool pool = new BrowserPool(true, 10, 2);
+    FakeBrowser browser = (FakeBrowser) acquire(pool);
+    browser.get("https://shop.example.com/login");
+    pool.visited(browser);
+    browser.get("https://shop.example.com/cart?step=2");
+    browser.openWindow("popup", "https://pay.example.com/checkout");
+    pool.release(browser);
+
+    Assert.assertFalse(browser.quit);
+    Assert.assertEquals(browser.windows.keySet().toString(), "[tab-1]", "fresh window only");
+    Assert.assertEquals(browser.getCurrentUrl(), "about:blank");
+    Assert.assertTrue(browser.cookies.isEmpty());
+    Assert.assertEquals(browser.clearedStorage.toString(),
+        "[https://shop.example.com, https://pay.example.com]");
+    Assert.assertSame(acquire(pool), browser);
+    Assert.assertEquals(started, 1);
+    Assert.assertEquals(pool.getHits(), 1);
+    Assert.assertEquals(pool.getMisses(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void cookiesOfCrossOriginRedirectAreCleared() {
+    BrowserPool pool = new BrowserPool(true, 10, 2);
+    FakeBrowser browser = (FakeBrowser) acquire(pool);
+    browser.redirects.put("https://shop.example.com/account", "https://sso.example.com/authorize");
+    browser.get("https://shop.example.com/account");
+    pool.visited(browser);
+    Assert.assertTrue(browser.cookies.contains("sso.example.com"), "sign-in cookie was set");
+    pool.release(browser);
+
+    Assert.assertFalse(browser.quit);
+    Assert.assertTrue(browser.cookies.isEmpty(), "cookies of the redirect hop are gone too");
+    Assert.assertSame(acquire(pool), browser);
+    Assert.assertTrue(browser.cookies.isEmpty());
+  }
+
+  @Test(groups = {"Unit"})
+  public void browserWithoutDevToolsIsQuit() {
+    BrowserPool pool = new BrowserPool(true, 10, 2);
+    FakeBrowser browser = (FakeBrowser) pool.acquire("Firefox", () -> {
+      started++;
+      return new FakeBrowser();
+    });
+    browser.get("https://shop.example.com/cart");
+    pool.visited(browser);
+    pool.release(browser);
+    Assert.assertTrue(browser.quit, "cookies of other origins are out of reach");
+    Assert.assertEquals(pool.getEvictions(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void browserIsRecycledAfterMaxUses() {
+    BrowserPool pool = new BrowserPool(true, 2, 2);
+    FakeBrowser first = (FakeBrowser) acquire(pool);
+    pool.release(first);
+    Assert.assertSame(acquire(pool), first);
+    pool.release(first);
+    Assert.assertTrue(first.quit, "quit after its second use");
+    Assert.assertNotSame(acquire(pool), first);
+    Assert.assertEquals(pool.getEvictions(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void crashedBrowserIsReplaced() {
+    BrowserPool pool = new BrowserPool(true, 10, 2);
+    FakeBrowser crashed = (FakeBrowser) acquire(pool);
+    pool.release(crashed);
+    crashed.crashed = true;
+    Assert.assertNotSame(acquire(pool), crashed);
+    Assert.assertTrue(crashed.quit);
+    Assert.assertEquals(started, 2);
+  }
+
+  @Test(groups = {"Unit"})
+  public void disabledPoolQuitsOnRelease() {
+    BrowserPool pool = new BrowserPool(false, 10, 2);
+    FakeBrowser browser = (FakeBrowser) acquire(pool);
+    pool.release(browser);
+    Assert.assertTrue(browser.quit);
+    Assert.assertNotSame(acquire(pool), browser);
+  }
+
+  /**
+   * Browser double recording navigation, windows, cookies and cleared storage. Cookies are kept
+   * per host, including the ones of redirect hops which never show up in the history.
+   */
+  private static class FakeBrowser implements WebDriver {
+    final Map<String, List<String>> windows = new LinkedHashMap<>();
+    final Map<String, String> redirects = new HashMap<>();
+    final Set<String> cookies = new LinkedHashSet<>();
+    final Set<String> clearedStorage = new LinkedHashSet<>();
+    private String window = "main";
+    boolean quit;
+    boolean crashed;
+
+    FakeBrowser() {
+      openWindow("main", "data:,");
+    }
+
+    void openWindow(String handle, String url) {
+      windows.put(handle, new ArrayList<>(Collections.singletonList(url)));
+    }
+
+    void checkAlive() {
+      if (crashed || quit) {
+        throw new WebDriverException("chrome not reachable");
+      }
+    }
+
+    private static String hostOf(String url) {
+      return url.replaceFirst("^https?://", "").replaceFirst("[/?].*$", "");
+    }
+
+    @Override
+    public void get(String url) {
+      checkAlive();
+      String hop = redirects.get(url);
+      if (hop != null) {
+        cookies.add(hostOf(hop));
+      }
+      windows.get(window).add(url);
+      cookies.add(hostOf(url));
+    }
+
+    @Override
+    public String getCurrentUrl() {
+      checkAlive();
+      List<String> history = windows.get(window);
+      return history.get(history.size() - 1);
+    }
+
+    @Override
+    public String getTitle() {
+      return "";
+    }
+
+    @Override
+    public <T extends WebElement> List<T> findElements(By by) {
+      return new ArrayList<>();
+    }
+
+    @Override
+    public <T extends WebElement> T findElement(By by) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getPageSource() {
+      return "";
+    }
+
+    @Override
+    public void close() {
+      windows.remove(window);
+    }
+
+    @Override
+    public void quit() {
+      quit = true;
+    }
+
+    @Override
+    public Set<String> getWindowHandles() {
+      checkAlive();
+      return new LinkedHashSet<>(windows.keySet());
+    }
+
+    @Override
+    public String getWindowHandle() {
+      return window;
+    }
+
+    @Override
+    public TargetLocator switchTo() {
+      return (TargetLocator) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {TargetLocator.class}, (proxy, method, args) -> {
+            if (method.getName().equals("alert")) {
+              throw new NoAlertPresentException();
+            }
+            if (method.getName().equals("window")) {
+              window = (String) args[0];
+            }
+            return this;
+          });
+    }
+
+    @Override
+    public Navigation navigate() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Options manage() {
+      return (Options) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {Options.class}, (proxy, method, args) -> {
+            if (method.getName().equals("deleteAllCookies")) {
+              cookies.remove(hostOf(getCurrentUrl()));
+            }
+            return null;
+          });
+    }
+  }
+
+  /**
+   * Chrome double which also answers the DevTools commands of the reset.
+   */
+  private static final class DevToolsBrowser extends FakeBrowser implements ExecutesCdpCommand {
+    private int targets;
+
+    @Override
+    public Map<String, Object> executeCdpCommand(String commandName,
+        Map<String, Object> parameters) {
+      checkAlive();
+      Map<String, Object> result = new HashMap<>();
+      switch (commandName) {
+        case "Target.createTarget":
+          openWindow("tab-" + ++targets, (String) parameters.get("url"));
+          break;
+        case "Page.getNavigationHistory":
+          List<Map<String, Object>> entries = new ArrayList<>();
+          for (String url : windows.get(getWindowHandle())) {
+            entries.add(Collections.singletonMap("url", url));
+          }
+          result.put("entries", entries);
+          break;
+        case "Network.clearBrowserCookies":
+          cookies.clear();
+          break;
+        case "Storage.clearDataForOrigin":
+          clearedStorage.add((String) parameters.get("origin"));
+          break;
+        default:
+          throw new WebDriverException("unknown command " + commandName);
+      }
+      return result;
+    }
+  }
+}
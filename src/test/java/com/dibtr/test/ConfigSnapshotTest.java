@@ -0,0 +1,118 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.dibtr.util.ConfigSnapshot;
+import com.dibtr.util.EnvironmentSettings;
+
+/**
+ * Layers hand-built file, environment and system property sources, and loads settings from
+ * properties files in a temporary directory.
+ */
+public class ConfigSnapshotTest {
+
+  private static Properties fileLayer() {
+    Properties file = new Properties();
+    file.setProperty("environment.code", "QA");
+    file.setProperty("environment.location", "localhost");
+    file.setProperty("TUNNEL_IDENTIFIER", "file-tunnel");
+    file.setProperty("mobile.implicit.wait.seconds", "5");
+    return file;
+  }
+
+  @Test(groups = {"Unit"})
+  public void systemPropertiesWinOverEnvironmentOverFile() {
+    Properties file = fileLayer();
+    file.setProperty("environment.variable.overrides", "TUNNEL_IDENTIFIER, environment.code");
+    Map<String, String> environment = new HashMap<>();
+    environment.put("ENVIRONMENT_CODE", "UAT");
+    environment.put("TUNNEL_IDENTIFIER", "ci-tunnel");
+    Properties system = new Properties();
+    system.setProperty("TUNNEL_IDENTIFIER", "cli-tunnel");
+
+    ConfigSnapshot config = ConfigSnapshot.layer(file, environment, system);
+    Assert.assertEquals(config.getString("environment.code"), "UAT", "upper case name");
+    Assert.assertEquals(config.getString("TUNNEL_IDENTIFIER"), "cli-tunnel");
+    Assert.assertEquals(config.getString("environment.location"), "localhost");
+    Assert.assertEquals(config.getInt("mobile.implicit.wait.seconds", 0), 5);
+    Assert.assertNull(config.getString("ENVIRONMENT_CODE"), "only file keys are configured");
+  }
+
+  @Test(groups = {"Unit"})
+  public void environmentOnlyOverridesListedKeys() {
+    Map<String, String> environment = new HashMap<>();
+    environment.put("environment.location", "grid");
+    environment.put("MOBILE_IMPLICIT_WAIT_SECONDS", "60");
+    environment.put("TUNNEL_IDENTIFIER", "ci-tunnel");
+
+    ConfigSnapshot config = ConfigSnapshot.layer(fileLayer(), environment, new Properties());
+    Assert.assertEquals(config.getString("environment.location"), "localhost");
+    Assert.assertEquals(config.getInt("mobile.implicit.wait.seconds", 0), 5);
+    Assert.assertEquals(config.getString("TUNNEL_IDENTIFIER"), "ci-tunnel", "listed by default");
+
+    Properties system = new Properties();
+    system.setProperty("environment.variable.overrides", "environment.location");
+    config = ConfigSnapshot.layer(fileLayer(), environment, system);
+    Assert.assertEquals(config.getString("environment.location"), "grid");
+    Assert.assertEquals(config.getString("TUNNEL_IDENTIFIER"), "file-tunnel");
+  }
+
+  @Test(groups = {"Unit"})
+  public void everyFileIsLoadedOnce() throws IOException {
+    Path directory = Files.createTempDirectory("settings");
+    Path first = directory.resolve("first.properties");
+    Path second = directory.resolve("second.properties");
+    try {
+      Files.write(first, "environment.code=QA\n".getBytes(StandardCharsets.ISO_8859_1));
+      Files.write(second, "environment.code=UAT\n".getBytes(StandardCharsets.ISO_8859_1));
+      EnvironmentSettings settings = EnvironmentSettings.getInstance(first.toString());
+      Assert.assertSame(EnvironmentSettings.getInstance(first.toString()), settings);
+      Assert.assertSame(EnvironmentSettings.getInstance(
+          directory.resolve("../" + directory.getFileName() + "/first.properties").toString()),
+          settings, "same file through another path");
+      Assert.assertEquals(settings.getProperty("environment.code"), "QA");
+      Assert.assertEquals(EnvironmentSettings.getInstance(second.toString())
+          .getProperty("environment.code"), "UAT");
+      Assert.assertNotSame(EnvironmentSettings.getInstance(second.toString()), settings);
+      Assert.assertSame(EnvironmentSettings.getInstance("config.properties"),
+          EnvironmentSettings.getInstance(), "default file");
+      Assert.assertSame(EnvironmentSettings.getInstance(
+          Paths.get("config.properties").toAbsolutePath().toString()),
+          EnvironmentSettings.getInstance());
+    } finally {
+      Files.delete(first);
+      Files.delete(second);
+      Files.delete(directory);
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void setPropertyPublishesANewSnapshot() throws IOException {
+    Path file = Files.createTempFile("settings", ".properties");
+    try {
+      Files.write(file, "environment.code=QA\n".getBytes(StandardCharsets.ISO_8859_1));
+      EnvironmentSettings settings = EnvironmentSettings.getInstance(file.toString());
+      ConfigSnapshot before = settings.getSnapshot();
+      settings.setProperty("environment.code", "UAT");
+      ConfigSnapshot after = settings.getSnapshot();
+
+      Assert.assertNotSame(after, before);
+      Assert.assertEquals(before.getString("environment.code"), "QA", "held snapshot unchanged");
+      Assert.assertEquals(after.getString("environment.code"), "UAT");
+      Assert.assertEquals(settings.getProperty("environment.code"), "UAT");
+      settings.getProperties().setProperty("environment.code", "PROD");
+      Assert.assertEquals(settings.getProperty("environment.code"), "UAT",
+          "getProperties is a detached copy");
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package com.dibtr.test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.dibtr.util.DeviceLeaseRegistry;
+
+public class DeviceLeaseRegistryTest {
+  private static final String UDID = "SIM-1";
+
+  @Test(groups = {"Unit"})
+  public void waitingThreadsAreServedInArrivalOrder() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(60000, 50);
+    DeviceLeaseRegistry.Lease first = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+    List<Integer> order = new CopyOnWriteArrayList<>();
+    Thread[] waiters = new Thread[4];
+    for (int i = 0; i < waiters.length; i++) {
+      int position = i;
+      waiters[i] = new Thread(() -> {
+        try {
+          DeviceLeaseRegistry.Lease lease = registry.acquire(UDID, 10, TimeUnit.SECONDS);
+          order.add(position);
+          Thread.sleep(10);
+          lease.release();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      waiters[i].start();
+      // Let each waiter queue up before the next one arrives
+      Thread.sleep(50);
+    }
+    first.release();
+    for (Thread waiter : waiters) {
+      waiter.join(5000);
+    }
+    Assert.assertEquals(order.toString(), "[0, 1, 2, 3]");
+    DeviceLeaseRegistry.DeviceStatistics statistics = registry.getStatistics().get(0);
+    Assert.assertEquals(statistics.getLeases(), 5);
+    Assert.assertTrue(statistics.getMaxWaitMillis() >= 50);
+  }
+
+  @Test(groups = {"Unit"})
+  public void waitGivesUpAfterTheTimeout() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(60000, 50);
+    DeviceLeaseRegistry.Lease lease = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+    DeviceLeaseRegistry.Lease[] other = new DeviceLeaseRegistry.Lease[2];
+    long[] waited = new long[1];
+    Thread contender = new Thread(() -> {
+      try {
+        long start = System.nanoTime();
+        other[0] = registry.acquire(UDID, 100, TimeUnit.MILLISECONDS);
+        waited[0] = System.nanoTime() - start;
+        other[1] = registry.acquire("SIM-2", 100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    contender.start();
+    contender.join(5000);
+    Assert.assertNull(other[0]);
+    Assert.assertTrue(waited[0] >= TimeUnit.MILLISECONDS.toNanos(100));
+    Assert.assertNotNull(other[1], "other devices are not affected");
+    lease.release();
+    lease.release();
+    Assert.assertNotNull(registry.acquire(UDID, 100, TimeUnit.MILLISECONDS));
+    Assert.assertEquals(registry.getStatistics().stream()
+        .filter(device -> device.getDevice().equals(UDID)).findFirst().get().getTimeouts(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void reusedPoolThreadDoesNotGetTheHeldDeviceAgain() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(60000, 20);
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      DeviceLeaseRegistry.Lease first =
+          pool.submit(() -> registry.acquire(UDID, 1, TimeUnit.SECONDS)).get();
+      DeviceLeaseRegistry.Lease second =
+          pool.submit(() -> registry.acquire(UDID, 100, TimeUnit.MILLISECONDS)).get();
+      Assert.assertNull(second, "one session per device, whichever thread asks");
+      Assert.assertTrue(first.isHeld());
+      first.release();
+      Assert.assertNotNull(pool.submit(() -> registry.acquire(UDID, 1, TimeUnit.SECONDS)).get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void detachedLeaseOutlivesTheThreadThatAcquiredIt() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(60000, 20);
+    DeviceLeaseRegistry.Lease[] detached = new DeviceLeaseRegistry.Lease[1];
+    Thread bootstrap = new Thread(() -> {
+      try {
+        detached[0] = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+        detached[0].detach();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    bootstrap.start();
+    bootstrap.join();
+    Assert.assertNull(registry.acquire(UDID, 100, TimeUnit.MILLISECONDS));
+    Assert.assertTrue(detached[0].isHeld(), "the session started on it is still live");
+    detached[0].transferToCurrentThread();
+    detached[0].release();
+    Assert.assertNotNull(registry.acquire(UDID, 1, TimeUnit.SECONDS));
+  }
+
+  @Test(groups = {"Unit"})
+  public void leaseOfAFinishedThreadIsReclaimed() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(60000, 20);
+    DeviceLeaseRegistry.Lease[] abandoned = new DeviceLeaseRegistry.Lease[1];
+    CountDownLatch leased = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      try {
+        abandoned[0] = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      leased.countDown();
+    });
+    holder.start();
+    leased.await();
+    holder.join();
+    Assert.assertNotNull(registry.acquire(UDID, 1, TimeUnit.SECONDS));
+    Assert.assertFalse(abandoned[0].isHeld());
+    Assert.assertEquals(registry.getStatistics().get(0).getReaped(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void leaseIsReclaimedAfterTheMaximumHoldTime() throws Exception {
+    DeviceLeaseRegistry registry = new DeviceLeaseRegistry(100, 20);
+    DeviceLeaseRegistry.Lease lease = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+    DeviceLeaseRegistry.Lease[] next = new DeviceLeaseRegistry.Lease[1];
+    Thread contender = new Thread(() -> {
+      try {
+        next[0] = registry.acquire(UDID, 1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    contender.start();
+    contender.join(5000);
+    Assert.assertNotNull(next[0]);
+    Assert.assertFalse(lease.isHeld());
+  }
+}
@@ -0,0 +1,115 @@
+package com.dibtr.test;
+
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.logging.Level;
+import org.openqa.selenium.logging.LogEntry;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.DeviceLogCollector;
+
+/**
+ * Feeds the collector from a fake log source which hands out queued batches per log type, the way
+ * Appium returns device log entries.
+ */
+public class DeviceLogCollectorTest {
+  private final Map<String, Queue<List<LogEntry>>> batches = new HashMap<>();
+  private int fetches;
+
+  @BeforeMethod
+  public void resetSource() {
+    batches.clear();
+    fetches = 0;
+  }
+
+  private DeviceLogCollector newCollector(long maxBytes) {
+    return new DeviceLogCollector(logType -> {
+      fetches++;
+      Queue<List<LogEntry>> queued = batches.get(logType);
+      return queued == null || queued.isEmpty() ? Collections.<LogEntry>emptyList()
+          : queued.poll();
+    }, Arrays.asList("syslog", "crashlog"), maxBytes);
+  }
+
+  private void queue(String logType, long... timestamps) {
+    List<LogEntry> batch = new ArrayList<>();
+    for (long timestamp : timestamps) {
+      batch.add(new LogEntry(Level.INFO, timestamp, logType + " entry " + timestamp));
+    }
+    batches.computeIfAbsent(logType, t -> new ArrayDeque<>()).add(batch);
+  }
+
+  @Test(groups = {"Unit"})
+  public void everyEntryIsFetchedOnce() {
+    DeviceLogCollector collector = newCollector(1024 * 1024);
+    queue("syslog", 100, 200);
+    queue("syslog", 300);
+    queue("crashlog", 250);
+    Assert.assertEquals(collector.poll(), 3);
+    Assert.assertEquals(collector.poll(), 1);
+    Assert.assertEquals(collector.poll(), 0);
+    Assert.assertEquals(fetches, 6, "one fetch per log type and poll");
+    Assert.assertEquals(collector.getFetched(), 4);
+  }
+
+  @Test(groups = {"Unit"})
+  public void replayedEntriesBehindTheCursorAreDropped() {
+    DeviceLogCollector collector = newCollector(1024 * 1024);
+    queue("syslog", 100, 200);
+    queue("syslog", 100, 200, 300);
+    collector.poll();
+    Assert.assertEquals(collector.poll(), 1, "only entries after the cursor are kept");
+    Assert.assertEquals(collector.getEntries(200, 200).size(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void newEntriesAtTheCursorTimestampAreKept() {
+    DeviceLogCollector collector = newCollector(1024 * 1024);
+    batches.computeIfAbsent("syslog", t -> new ArrayDeque<>()).add(Arrays.asList(
+        new LogEntry(Level.INFO, 100, "tap"), new LogEntry(Level.INFO, 100, "tap")));
+    batches.get("syslog").add(Arrays.asList(new LogEntry(Level.INFO, 100, "tap"),
+        new LogEntry(Level.INFO, 100, "tap"), new LogEntry(Level.INFO, 100, "scroll")));
+    Assert.assertEquals(collector.poll(), 2, "equal entries of one batch are distinct");
+    Assert.assertEquals(collector.poll(), 1, "the two replayed taps are dropped");
+  }
+
+  @Test(groups = {"Unit"})
+  public void ringKeepsTheNewestEntriesWithinItsSize() {
+    DeviceLogCollector collector = newCollector(1000);
+    for (long timestamp = 1; timestamp <= 100; timestamp++) {
+      queue("syslog", timestamp);
+      collector.poll();
+    }
+    Assert.assertTrue(collector.getBufferedBytes() <= 1000);
+    Assert.assertTrue(collector.getEvicted() > 0);
+    List<DeviceLogCollector.Entry> kept = collector.getEntries(0, Long.MAX_VALUE);
+    Assert.assertEquals(kept.get(kept.size() - 1).getTimestamp(), 100);
+    Assert.assertEquals(kept.size() + collector.getEvicted(), 100);
+  }
+
+  @Test(groups = {"Unit"})
+  public void entriesAreIndexedByTimestamp() throws Exception {
+    DeviceLogCollector collector = newCollector(1024 * 1024);
+    queue("syslog", 100, 200, 300, 400);
+    queue("crashlog", 250);
+    collector.poll();
+    List<DeviceLogCollector.Entry> range = collector.getEntries(200, 300);
+    Assert.assertEquals(range.size(), 3);
+    Assert.assertEquals(range.get(1).getLogType(), "crashlog");
+
+    // A dump polls once more and writes what was logged since the failed test started
+    queue("syslog", 500);
+    StringWriter dump = new StringWriter();
+    Assert.assertEquals(collector.dump(dump, 300), 3);
+    Assert.assertTrue(dump.toString().contains("syslog entry 500"));
+    Assert.assertFalse(dump.toString().contains("syslog entry 200"));
+  }
+}
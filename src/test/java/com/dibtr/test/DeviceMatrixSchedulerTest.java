@@ -0,0 +1,213 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.ITestNGListener;
+import org.testng.SkipException;
+import org.testng.TestNG;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+import com.dibtr.util.DeviceMatrix;
+import com.dibtr.util.DeviceMatrixListener;
+import com.dibtr.util.DeviceMatrixScheduler;
+import com.dibtr.util.DeviceSlot;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs a suite over a matrix of stand-in devices, each an HTTP endpoint which takes a while to
+ * answer and records how many sessions talk to it at once.
+ */
+public class DeviceMatrixSchedulerTest {
+  private static final int DEVICE_TESTS = 9;
+  private static final long DEVICE_MILLIS = 100;
+  private static final AtomicInteger ACROSS_DEVICES = new AtomicInteger();
+  private static final AtomicInteger MAX_ACROSS_DEVICES = new AtomicInteger();
+  private static volatile boolean standInSuite;
+  private final List<StandInDevice> devices = new ArrayList<>();
+
+  @BeforeMethod
+  public void startDevices() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      devices.add(new StandInDevice());
+    }
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopDevices() {
+    // A suite run makes its stand-in devices the shared matrix
+    DeviceMatrixScheduler.reset();
+    for (StandInDevice device : devices) {
+      device.server.stop(0);
+    }
+    devices.clear();
+  }
+
+  private String matrixSpec() {
+    return "iPhone 11|14.2|SIM-1|" + devices.get(0).endpoint + ";iPhone 12|15.0|SIM-2|"
+        + devices.get(1).endpoint + ";iPhone 12|14.2|SIM-3|" + devices.get(2).endpoint;
+  }
+
+  @Test(groups = {"Unit"})
+  public void matrixIsParsedWithDefaults() {
+    DeviceMatrix matrix =
+        DeviceMatrix.parse("iPhone 11|14.2; iPhone 12|15.0|SIM-2|http://h:1/wd/hub", "http://d");
+    Assert.assertEquals(matrix.size(), 2);
+    DeviceSlot first = matrix.getSlots().get(0);
+    Assert.assertEquals(first.getDeviceName(), "iPhone 11");
+    Assert.assertNull(first.getUdid());
+    Assert.assertEquals(first.getEndpoint(), "http://d");
+    Assert.assertEquals(matrix.getSlots().get(1).getIndex(), 1);
+    Assert.assertNull(DeviceMatrix.parse(" ", "http://d"));
+  }
+
+  @Test(groups = {"Unit"})
+  public void requestedDeviceIsWaitedFor() throws InterruptedException {
+    DeviceMatrixScheduler scheduler =
+        new DeviceMatrixScheduler(DeviceMatrix.parse(matrixSpec(), null));
+    DeviceSlot slot = scheduler.lease("15.0", null, 1, TimeUnit.SECONDS);
+    Assert.assertEquals(slot.getUdid(), "SIM-2");
+    Assert.assertNull(scheduler.lease("15.0", "iPhone 12", 50, TimeUnit.MILLISECONDS),
+        "the only matching device is busy");
+    Assert.assertEquals(scheduler.lease(null, "iPhone 12", 1, TimeUnit.SECONDS).getUdid(),
+        "SIM-3");
+    scheduler.release(slot);
+    Assert.assertEquals(scheduler.lease("15.0", null, 1, TimeUnit.SECONDS).getUdid(), "SIM-2");
+    Assert.assertEquals(scheduler.getLeasedCount(), 2);
+  }
+
+  @Test(groups = {"Unit"}, expectedExceptions = IllegalArgumentException.class)
+  public void deviceOutsideTheMatrixIsRejected() throws InterruptedException {
+    new DeviceMatrixScheduler(DeviceMatrix.parse(matrixSpec(), null)).lease("9.0", null, 1,
+        TimeUnit.SECONDS);
+  }
+
+  @Test(groups = {"Unit"})
+  public void suiteRunsOneWorkerPerDevice() {
+    XmlSuite suite = new XmlSuite();
+    suite.setName("device-matrix");
+    suite.setParameters(Collections.singletonMap(DeviceMatrix.KEY, matrixSpec()));
+    XmlTest test = new XmlTest(suite);
+    test.setName("stand-in devices");
+    test.setXmlClasses(Collections.singletonList(new XmlClass(StandInDeviceTests.class)));
+    TestNG testng = new TestNG();
+    testng.setUseDefaultListeners(false);
+    testng.setXmlSuites(Collections.singletonList(suite));
+    testng.addListener((ITestNGListener) new DeviceMatrixListener());
+    MAX_ACROSS_DEVICES.set(0);
+    standInSuite = true;
+    try {
+      testng.run();
+    } finally {
+      standInSuite = false;
+    }
+
+    Assert.assertEquals(testng.getStatus(), 0, "every stand-in test passed");
+    Assert.assertEquals(suite.getThreadCount(), 3);
+    int requests = 0;
+    for (StandInDevice device : devices) {
+      Assert.assertEquals(device.maxConcurrent.get(), 1, "one session per device at a time");
+      Assert.assertTrue(device.requests.get() > 0, "every device was used");
+      requests += device.requests.get();
+    }
+    Assert.assertEquals(requests, DEVICE_TESTS);
+    Assert.assertTrue(StandInDeviceTests.WORKERS.size() <= 3);
+    Assert.assertTrue(MAX_ACROSS_DEVICES.get() > 1, "devices ran in parallel");
+    for (DeviceMatrixScheduler.Utilization utilization : DeviceMatrixScheduler.getInstance()
+        .getUtilization()) {
+      Assert.assertTrue(utilization.getLeases() > 0);
+      Assert.assertTrue(utilization.getBusyMillis() >= DEVICE_MILLIS);
+    }
+    Assert.assertEquals(DeviceMatrixScheduler.getInstance().getLeasedCount(), 0);
+  }
+
+  /**
+   * Device tests of the stand-in suite, each leasing a device and talking to its endpoint. They
+   * are in the StandIn group, which the build excludes, so they only run through the suite above.
+   */
+  public static class StandInDeviceTests {
+    static final Set<String> WORKERS = ConcurrentHashMap.newKeySet();
+
+    @Factory
+    public static Object[] instances() {
+      Object[] instances = new Object[DEVICE_TESTS];
+      for (int i = 0; i < DEVICE_TESTS; i++) {
+        instances[i] = new StandInDeviceTests();
+      }
+      return instances;
+    }
+
+    @Test(groups = {"StandIn"})
+    public void deviceSession() throws Exception {
+      if (!standInSuite) {
+        throw new SkipException("Only runs inside DeviceMatrixSchedulerTest");
+      }
+      WORKERS.add(Thread.currentThread().getName());
+      DeviceMatrixScheduler scheduler = DeviceMatrixScheduler.getInstance();
+      DeviceSlot slot = scheduler.lease(null, null, 10, TimeUnit.SECONDS);
+      try {
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(slot.getEndpoint() + "/status").openConnection();
+        Assert.assertEquals(connection.getResponseCode(), 200);
+        try (InputStream body = connection.getInputStream()) {
+          while (body.read() != -1) {
+            // drain
+          }
+        }
+      } finally {
+        scheduler.release(slot);
+      }
+    }
+  }
+
+  /**
+   * Appium endpoint stand-in.
+   */
+  private static final class StandInDevice {
+    private final HttpServer server;
+    private final String endpoint;
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private StandInDevice() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.setExecutor(Executors.newCachedThreadPool());
+      server.createContext("/wd/hub", exchange -> {
+        int now = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(now, Math::max);
+        MAX_ACROSS_DEVICES.accumulateAndGet(ACROSS_DEVICES.incrementAndGet(), Math::max);
+        requests.incrementAndGet();
+        try {
+          Thread.sleep(DEVICE_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        ACROSS_DEVICES.decrementAndGet();
+        concurrent.decrementAndGet();
+        byte[] body = "{\"status\":0}".getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      });
+      server.start();
+      endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/wd/hub";
+    }
+  }
+}
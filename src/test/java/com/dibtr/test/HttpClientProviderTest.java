@@ -0,0 +1,110 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicNameValuePair;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.CommonUtility;
+import com.dibtr.util.EnvironmentSettings;
+import com.dibtr.util.HttpClientProvider;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the pooled client against an in-process HTTP stub which records the client port of every
+ * request; one port for many requests means the connection was kept alive and reused.
+ */
+public class HttpClientProviderTest {
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private HttpServer server;
+  private String url;
+
+  @BeforeClass
+  public void startStub() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/results", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      byte[] body = ("echo:" + IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8))
+          .getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.setExecutor(Executors.newFixedThreadPool(8));
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/results";
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopStub() {
+    server.stop(0);
+  }
+
+  @BeforeMethod
+  public void resetPorts() {
+    clientPorts.clear();
+  }
+
+  @Test(groups = {"Unit"})
+  public void sequentialPostsReuseOneConnection() {
+    CommonUtility commonUtility = new CommonUtility();
+    List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("status", "pass"));
+    for (int i = 0; i < 25; i++) {
+      Assert.assertEquals(commonUtility.doPost(url, parameters), "echo:status=pass");
+    }
+    Assert.assertEquals(clientPorts.size(), 1, "connections opened for 25 posts");
+  }
+
+  @Test(groups = {"Unit"})
+  public void unreadResponsesReleaseTheConnection() throws IOException {
+    HttpClientProvider provider = new HttpClientProvider(1, 1, 2000, 2000, 30000, 1);
+    try {
+      for (int i = 0; i < 10; i++) {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new StringEntity("ignored"));
+        // The handler never touches the body, a leaked lease would exhaust the single connection
+        Assert.assertEquals(provider.execute(post, response -> response.getStatusLine()
+            .getStatusCode()).intValue(), 200);
+      }
+      Assert.assertEquals(provider.getPoolStats().getLeased(), 0);
+      Assert.assertEquals(clientPorts.size(), 1);
+    } finally {
+      provider.shutdown();
+    }
+  }
+
+  @Test(groups = {"Unit"})
+  public void asyncPostsShareThePool() throws Exception {
+    CommonUtility commonUtility = new CommonUtility();
+    List<CompletableFuture<String>> responses = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      List<NameValuePair> parameters = new ArrayList<>();
+      parameters.add(new BasicNameValuePair("run", String.valueOf(i)));
+      responses.add(commonUtility.doPostAsync(url, parameters));
+    }
+    for (int i = 0; i < responses.size(); i++) {
+      Assert.assertEquals(responses.get(i).get(10, TimeUnit.SECONDS), "echo:run=" + i);
+    }
+    int asyncThreads = EnvironmentSettings.config().getInt("http.client.async.threads", 4);
+    Assert.assertTrue(clientPorts.size() <= asyncThreads,
+        clientPorts.size() + " connections opened for 40 posts");
+  }
+}
@@ -0,0 +1,153 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import org.apache.commons.io.IOUtils;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.DriverFactory;
+import com.dibtr.util.HttpWebDriver;
+import com.dibtr.util.WebPageDriver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the browserless driver through WebPageDriver against an in-process site with a login form,
+ * a cookie protected home page and links, the way a non-JS web flow of a test would.
+ */
+public class HttpWebDriverTest {
+  private final DriverFactory driverFactory = new DriverFactory();
+  private HttpServer server;
+  private String baseUrl;
+  private volatile String postedLogin;
+
+  @BeforeClass
+  public void startSite() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/login", exchange -> respond(exchange, 200, "<html><head>"
+        + "<title>Sign in</title></head><body><form method='post' action='/session'>"
+        + "<input type='hidden' name='csrf' value='t0k'>"
+        + "<input id='user' name='username'><input type='password' name='password'>"
+        + "<label><input type='checkbox' name='remember'>Remember me</label>"
+        + "<button type='submit' name='go' value='Sign in'>Sign in</button></form>"));
+    server.createContext("/session", exchange -> {
+      postedLogin = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+      if (postedLogin.contains("username=ann&password=pw")) {
+        exchange.getResponseHeaders().add("Set-Cookie", "sid=abc; Path=/");
+        exchange.getResponseHeaders().add("Location", "/home");
+        respond(exchange, 303, "See other");
+      } else {
+        respond(exchange, 200, "<p class='error'>Wrong password</p>");
+      }
+    });
+    server.createContext("/home", exchange -> {
+      String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+      if (cookie == null || !cookie.contains("sid=abc")) {
+        exchange.getResponseHeaders().add("Location", "/login");
+        respond(exchange, 302, "Found");
+        return;
+      }
+      respond(exchange, 200, "<html><head><title>Home</title></head><body><h1>Welcome  ann</h1>"
+          + "<script>document.write('hidden')</script><div style='display: none'>secret</div>"
+          + "<ul id='menu'><li class='item first'><a href='/orders?page=2'>Orders</a></li>"
+          + "<li class='item'><a href='help'>Help center</a><br>24/7</li></ul>"
+          + "<form action='/orders'><input name='q'></form>");
+    });
+    server.createContext("/orders", exchange -> respond(exchange, 200,
+        "<title>Orders</title><p id='query'>" + exchange.getRequestURI().getQuery()));
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.start();
+    baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopSite() {
+    server.stop(0);
+  }
+
+  @BeforeMethod
+  public void startBrowser() {
+    driverFactory.startBrowserSession("http");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopBrowser() {
+    driverFactory.stopWebSession();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String html) throws IOException {
+    byte[] body = html.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private WebPageDriver signIn() {
+    WebPageDriver page = DriverFactory.getWebPageDriver();
+    page.setBrowserURL(baseUrl + "/home");
+    Assert.assertEquals(page.getWebDriver().getCurrentUrl(), baseUrl + "/login");
+    page.typeValueInField(By.id("user"), "ann");
+    page.typeValueInField(By.name("password"), "pw");
+    page.clickElement(By.cssSelector("input[type=checkbox]"));
+    page.clickElement(By.cssSelector("form button"));
+    return page;
+  }
+
+  @Test(groups = {"Unit"})
+  public void loginFollowsRedirectsAndKeepsCookies() {
+    WebPageDriver page = signIn();
+    WebDriver driver = page.getWebDriver();
+    Assert.assertTrue(driver instanceof HttpWebDriver);
+    Assert.assertEquals(postedLogin, "csrf=t0k&username=ann&password=pw&remember=on&go=Sign+in");
+    Assert.assertEquals(driver.getCurrentUrl(), baseUrl + "/home");
+    Assert.assertEquals(((HttpWebDriver) driver).getStatusCode(), 200);
+    Assert.assertEquals(driver.getTitle(), "Home");
+    Assert.assertEquals(driver.manage().getCookieNamed("sid").getValue(), "abc");
+    Assert.assertEquals(page.getText(By.tagName("h1")), "Welcome ann");
+  }
+
+  @Test(groups = {"Unit"})
+  public void findersAndLinksWorkOnTheParsedPage() {
+    WebDriver driver = signIn().getWebDriver();
+    List<WebElement> items = driver.findElements(By.cssSelector("#menu > li.item"));
+    Assert.assertEquals(items.size(), 2);
+    Assert.assertEquals(items.get(1).findElement(By.partialLinkText("Help")).getAttribute("href"),
+        baseUrl + "/help");
+    Assert.assertEquals(driver.findElements(By.className("first")).size(), 1);
+    Assert.assertEquals(driver.findElement(By.xpath("//li[2]")).getText(), "Help center\n24/7");
+    Assert.assertFalse(driver.findElement(By.xpath("//div")).isDisplayed());
+    Assert.assertEquals(driver.findElement(By.tagName("body")).getText(),
+        "Welcome ann\nOrders\nHelp center\n24/7");
+
+    WebElement orders = driver.findElement(By.linkText("Orders"));
+    orders.click();
+    Assert.assertEquals(driver.getCurrentUrl(), baseUrl + "/orders?page=2");
+    Assert.assertEquals(driver.findElement(By.id("query")).getText(), "page=2");
+    Assert.expectThrows(StaleElementReferenceException.class, orders::getText);
+    driver.navigate().back();
+    Assert.assertEquals(driver.getTitle(), "Home");
+  }
+
+  @Test(groups = {"Unit"})
+  public void enterSubmitsTheFormOfTheField() {
+    WebDriver driver = signIn().getWebDriver();
+    driver.findElement(By.name("q")).sendKeys("red shoes", Keys.ENTER);
+    Assert.assertEquals(driver.getCurrentUrl(), baseUrl + "/orders?q=red+shoes");
+    Assert.assertEquals(driver.findElement(By.cssSelector("p#query")).getText(), "q=red+shoes");
+  }
+}
@@ -0,0 +1,56 @@
+package com.dibtr.test;
+
+import com.dibtr.util.LogTemplate;
+
+/**
+ * Before/after micro benchmark of AllureLogger message formatting: the former
+ * String.replaceFirst("\\{}", ...) loop against the cached LogTemplate. Run with
+ * {@code java -cp <test classpath> com.dibtr.test.LogTemplateBenchmark}.
+ */
+public class LogTemplateBenchmark {
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+  private static final int CALLS_PER_ROUND = 200_000;
+  private static final String TEMPLATE = "The text of the element {} was {} and is, \"{}\"";
+  private static final Object[] ARGS =
+      {"By.xpath: //XCUIElementTypeButton[@name='Return']", " Found: ", "Total $12.50"};
+
+  private static volatile String sink;
+
+  public static void main(String[] args) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      runLegacy();
+      runTemplate();
+    }
+    long legacy = 0;
+    long template = 0;
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      legacy += runLegacy();
+      template += runTemplate();
+    }
+    System.out.printf("replaceFirst : %d ns/call%n", legacy / MEASURED_ROUNDS / CALLS_PER_ROUND);
+    System.out.printf("LogTemplate  : %d ns/call%n", template / MEASURED_ROUNDS / CALLS_PER_ROUND);
+  }
+
+  private static long runLegacy() {
+    long start = System.nanoTime();
+    for (int i = 0; i < CALLS_PER_ROUND; i++) {
+      String logString = TEMPLATE;
+      for (Object arg : ARGS) {
+        // Quoted replacement, the unquoted form throws on the '$' in the last argument.
+        logString = logString.replaceFirst("\\{}",
+            java.util.regex.Matcher.quoteReplacement(arg.toString()));
+      }
+      sink = logString;
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long runTemplate() {
+    long start = System.nanoTime();
+    for (int i = 0; i < CALLS_PER_ROUND; i++) {
+      sink = LogTemplate.format(TEMPLATE, ARGS);
+    }
+    return System.nanoTime() - start;
+  }
+}
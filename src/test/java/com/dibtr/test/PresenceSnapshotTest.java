@@ -0,0 +1,46 @@
+package com.dibtr.test;
+
+import org.openqa.selenium.By;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import com.dibtr.util.PresenceSnapshot;
+import io.appium.java_client.MobileBy;
+
+/**
+ * Checks locators against a trimmed XCUITest page source of a login screen with a rating popup.
+ */
+public class PresenceSnapshotTest {
+  private static final String SOURCE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<AppiumAUT><XCUIElementTypeApplication type=\"XCUIElementTypeApplication\" name=\"VISN\">"
+      + "<XCUIElementTypeWindow type=\"XCUIElementTypeWindow\" visible=\"true\">"
+      + "<XCUIElementTypeTextField type=\"XCUIElementTypeTextField\" name=\"login.email\"/>"
+      + "<XCUIElementTypeButton type=\"XCUIElementTypeButton\" name=\"Sign in\" label=\"Sign in\"/>"
+      + "<XCUIElementTypeAlert type=\"XCUIElementTypeAlert\" name=\"Rate &quot;VISN&quot;\"/>"
+      + "</XCUIElementTypeWindow></XCUIElementTypeApplication></AppiumAUT>";
+
+  private final PresenceSnapshot snapshot = new PresenceSnapshot(SOURCE);
+
+  @Test(groups = {"Unit"})
+  public void locatorsWithXPathEquivalentAreAnswered() {
+    Assert.assertEquals(snapshot.isPresent(By.xpath("//XCUIElementTypeButton[@label='Sign in']")),
+        Boolean.TRUE);
+    Assert.assertEquals(snapshot.isPresent(By.id("login.email")), Boolean.TRUE);
+    Assert.assertEquals(snapshot.isPresent(By.name("login.password")), Boolean.FALSE);
+    Assert.assertEquals(snapshot.isPresent(MobileBy.AccessibilityId("Rate \"VISN\"")),
+        Boolean.TRUE);
+    Assert.assertEquals(snapshot.isPresent(By.className("XCUIElementTypeAlert")), Boolean.TRUE);
+    Assert.assertEquals(snapshot.isPresent(By.className("XCUIElementTypeSheet")), Boolean.FALSE);
+  }
+
+  @Test(groups = {"Unit"})
+  public void otherLocatorsAreLeftToTheDriver() {
+    Assert.assertNull(snapshot.isPresent(MobileBy.iOSNsPredicateString("name == 'Sign in'")));
+    Assert.assertNull(snapshot.isPresent(MobileBy.iOSClassChain("**/XCUIElementTypeButton")));
+    Assert.assertNull(snapshot.isPresent(By.xpath("//*[matches(@name, 'Sign.*')]")));
+  }
+
+  @Test(groups = {"Unit"}, expectedExceptions = IllegalArgumentException.class)
+  public void malformedSourceIsRejected() {
+    new PresenceSnapshot("<AppiumAUT><XCUIElementTypeWindow>");
+  }
+}
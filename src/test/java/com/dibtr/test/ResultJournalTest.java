@@ -0,0 +1,133 @@
+package com.dibtr.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.CustomizedReport;
+import com.dibtr.util.ReportRow;
+import com.dibtr.util.ResultJournal;
+
+/**
+ * Appends to journals in a temporary directory and reads them back the way the report does.
+ */
+public class ResultJournalTest {
+  private Path directory;
+  private Path journalPath;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("journal");
+    journalPath = directory.resolve("results.journal");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteDirectory() throws IOException {
+    if (Files.exists(journalPath)) {
+      Files.delete(journalPath);
+    }
+    Files.delete(directory);
+  }
+
+  private static ReportRow row(String testCaseId, String reason) {
+    return new ReportRow("danger", "iPhone 12", testCaseId, "Login", "FAIL", reason, "NA", "NA");
+  }
+
+  private List<String[]> readJournal() throws IOException {
+    List<String[]> rows = new ArrayList<>();
+    ResultJournal.read(journalPath, row -> {
+      String[] fields = new String[row.getCells().length + 1];
+      fields[0] = row.getRowClass();
+      System.arraycopy(row.getCells(), 0, fields, 1, row.getCells().length);
+      rows.add(fields);
+    });
+    return rows;
+  }
+
+  @Test(groups = {"Unit"})
+  public void cellsSurviveTabsLineBreaksAndBackslashes() throws IOException {
+    String reason = "expected:\t<1>\r\nbut was: C:\\temp\\n\\";
+    try (ResultJournal journal = new ResultJournal(journalPath, false, "run-1")) {
+      journal.append(row("TC-1", reason));
+      journal.append(row("TC-2", null));
+    }
+    List<String[]> rows = readJournal();
+    Assert.assertEquals(rows.size(), 2);
+    Assert.assertEquals(rows.get(0)[5], reason);
+    Assert.assertEquals(rows.get(0)[2], "TC-1");
+    Assert.assertEquals(rows.get(1)[5], "", "a missing cell is read back empty");
+    Assert.assertEquals(Files.readAllLines(journalPath).size(), 3, "one line per result");
+  }
+
+  @Test(groups = {"Unit"})
+  public void tornLastLineIsSkipped() throws IOException {
+    try (ResultJournal journal = new ResultJournal(journalPath, false, "run-1")) {
+      journal.append(row("TC-1", "timeout"));
+    }
+    Files.write(journalPath, "danger\tiPhone 12\tTC-2\tLog".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    List<String[]> rows = readJournal();
+    Assert.assertEquals(rows.size(), 1);
+    Assert.assertEquals(rows.get(0)[2], "TC-1");
+  }
+
+  @Test(groups = {"Unit"})
+  public void forksOfOneRunShareTheJournal() throws IOException {
+    try (ResultJournal first = new ResultJournal(journalPath, false, "run-1");
+        ResultJournal second = new ResultJournal(journalPath, false, "run-1")) {
+      first.append(row("TC-1", "timeout"));
+      second.append(row("TC-2", "timeout"));
+      first.append(row("TC-3", "timeout"));
+      Assert.assertTrue(first.isActive());
+      Assert.assertTrue(second.isActive());
+    }
+    List<String[]> rows = readJournal();
+    Assert.assertEquals(rows.size(), 3, "the second fork kept the results of the first");
+    Assert.assertEquals(Files.readAllLines(journalPath).get(0), "#run\trun-1");
+  }
+
+  @Test(groups = {"Unit"})
+  public void newRunClearsThePreviousResults() throws IOException {
+    try (ResultJournal previous = new ResultJournal(journalPath, false, "run-1")) {
+      previous.append(row("TC-1", "timeout"));
+    }
+    try (ResultJournal next = new ResultJournal(journalPath, false, "run-2")) {
+      Assert.assertFalse(next.isActive());
+      next.append(row("TC-2", "timeout"));
+    }
+    List<String[]> rows = readJournal();
+    Assert.assertEquals(rows.size(), 1);
+    Assert.assertEquals(rows.get(0)[2], "TC-2");
+    Assert.assertEquals(Files.readAllLines(journalPath).get(0), "#run\trun-2");
+  }
+
+  @Test(groups = {"Unit"})
+  public void reportIsRenderedFromTheJournal() throws IOException {
+    ResultJournal journal = ResultJournal.getInstance();
+    Assert.assertNotNull(journal, "journal enabled in config.properties");
+    Path report = Paths.get(System.getProperty("user.dir"), "report", "custom-reports",
+        "my-report.html");
+    try {
+      journal.append(row("TC-42", "<b>not found</b>"));
+      // No suites: every row of the report has to come from the journal
+      new CustomizedReport().generateReport(Collections.emptyList(), Collections.emptyList(),
+          directory.toString());
+      String html = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+      Assert.assertTrue(html.contains("<td>TC-42</td>"), html);
+      Assert.assertTrue(html.contains("<td>&lt;b&gt;not found&lt;/b&gt;</td>"), html);
+    } finally {
+      journal.close();
+      Files.deleteIfExists(journal.getPath());
+      Files.deleteIfExists(report);
+    }
+  }
+}
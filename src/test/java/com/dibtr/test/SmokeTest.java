@@ -1,5 +1,6 @@
 package com.dibtr.test;
 
+import org.testng.annotations.Optional;
 import org.testng.annotations.Parameters;
 import org.testng.annotations.Test;
 import com.dibtr.util.AllureLogger;
@@ -12,23 +13,25 @@ public class SmokeTest extends DriverFactory {
   
   @Parameters({"platformVersion", "deviceName"})
   @Test(groups = {"Sanity"}, description = "")
-  public void end2endTest() {
+  public void end2endTest(@Optional String platformVersion, @Optional String deviceName) {
 
     // Generate Test input data
     TestData testData = new TestData();
 
     LOGGER.info("Using test data {}", testData);
 
+    // Device and browser handshakes are independent, start them together. Without suite
+    // parameters the next free device of the device matrix is used.
+    this.startSessionsAndWait(new MobileSpec(platformVersion, deviceName, true), new WebSpec());
+
     // Started - Driver App flow
     LOGGER.info("Starting Mobile application flow");
-    this.startMobileAppSession("14.2", "iPhone 11", true);
     new DeviceSupportUtility().openApp();
     // Perform the actions
     this.stopMobileAppSession();
 
     // Started Web Flow
     LOGGER.info("Starting Web application flow");
-    this.startBrowserSession();
     // Perform the web actions
     this.stopWebSession();
     // Finished Web flow
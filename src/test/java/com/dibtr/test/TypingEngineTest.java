@@ -0,0 +1,84 @@
+package com.dibtr.test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.TypingEngine;
+import com.dibtr.util.TypingEngine.Mode;
+
+/**
+ * Types into a field double which records every sendKeys round trip.
+ */
+public class TypingEngineTest {
+  private static final By SUGGESTIONS = By.xpath("//XCUIElementTypeTable[@name='suggestions']");
+  private final List<String> sent = new ArrayList<>();
+  private final AtomicInteger suggestionPolls = new AtomicInteger();
+  private final TypingEngine engine = new TypingEngine(Mode.BULK, 8, 0, 2);
+  private WebElement field;
+
+  @BeforeMethod
+  public void resetField() {
+    sent.clear();
+    suggestionPolls.set(0);
+    field = (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {WebElement.class}, (proxy, method, args) -> {
+          if (method.getName().equals("sendKeys")) {
+            sent.add(String.join("", (CharSequence[]) args[0]));
+          }
+          return null;
+        });
+  }
+
+  private WebDriver driverShowingSuggestionsAfter(int polls) {
+    return (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] {WebDriver.class}, (proxy, method, args) -> {
+          if (method.getName().equals("findElements") && args[0].equals(SUGGESTIONS)) {
+            return suggestionPolls.incrementAndGet() > polls ? Collections.singletonList(field)
+                : Collections.emptyList();
+          }
+          throw new UnsupportedOperationException(method.getName());
+        });
+  }
+
+  @Test(groups = {"Unit"})
+  public void bulkSendsTheValueInOneRoundTrip() {
+    engine.type(null, field, "qa.automation+ios@example.com", Mode.BULK, null, "email");
+    Assert.assertEquals(sent.size(), 1);
+    Assert.assertEquals(engine.get("email").getCount(), 1);
+    Assert.assertEquals(engine.get("email").getCharacters(), 29);
+  }
+
+  @Test(groups = {"Unit"})
+  public void chunkedKeepsSurrogatePairsTogether() {
+    engine.type(null, field, "Meet at\uD83D\uDE00 in the lobby", Mode.CHUNKED, null, "message");
+    Assert.assertEquals(sent.size(), 3);
+    Assert.assertEquals(sent.get(0), "Meet at\uD83D\uDE00");
+    Assert.assertEquals(sent.get(1), " in the ");
+    Assert.assertEquals(String.join("", sent), "Meet at\uD83D\uDE00 in the lobby");
+  }
+
+  @Test(groups = {"Unit"})
+  public void autocompleteWaitsForSuggestions() {
+    engine.type(driverShowingSuggestionsAfter(3), field, "Lond", Mode.AUTOCOMPLETE, SUGGESTIONS,
+        "city");
+    Assert.assertEquals(sent.size(), 1);
+    Assert.assertEquals(suggestionPolls.get(), 4);
+  }
+
+  @Test(groups = {"Unit"})
+  public void missingSuggestionsTimeOutAndAreStillTimed() {
+    Assert.expectThrows(TimeoutException.class, () -> engine.type(
+        driverShowingSuggestionsAfter(Integer.MAX_VALUE), field, "Zz", Mode.AUTOCOMPLETE,
+        SUGGESTIONS, "city-missing"));
+    Assert.assertTrue(engine.get("city-missing").getAverageMillis() >= 2000);
+  }
+}
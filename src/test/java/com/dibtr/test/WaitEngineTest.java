@@ -0,0 +1,67 @@
+package com.dibtr.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.WebDriver;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import com.dibtr.util.PollingSchedule;
+import com.dibtr.util.WaitEngine;
+import com.dibtr.util.WaitStatistics;
+
+/**
+ * Feeds untilStable with rects of an element sliding into place.
+ */
+public class WaitEngineTest {
+  private final WaitEngine engine = new WaitEngine(PollingSchedule.fixed(10), 3, 10, 500);
+  private final AtomicInteger samples = new AtomicInteger();
+
+  @BeforeMethod
+  public void resetSamples() {
+    samples.set(0);
+  }
+
+  private Rectangle slidingPanel(int movingSamples) {
+    int sample = samples.incrementAndGet();
+    int y = Math.max(600 - 100 * sample, 600 - 100 * movingSamples);
+    return new Rectangle(0, y, 40, 320);
+  }
+
+  @Test(groups = {"Unit"})
+  public void returnsOnceConsecutiveSamplesMatch() {
+    Rectangle settled = engine.untilStable(null, (WebDriver driver) -> slidingPanel(4),
+        "WaitEngineTest.settles");
+    Assert.assertEquals(settled.getY(), 200);
+    Assert.assertEquals(samples.get(), 6, "4 moving samples, then 2 more matching the 4th");
+    Assert.assertEquals(WaitStatistics.getInstance().get("WaitEngineTest.settles").getTimeouts(),
+        0);
+  }
+
+  @Test(groups = {"Unit"})
+  public void lookupErrorsCountAsMovement() {
+    Rectangle settled = engine.untilStable(null, (WebDriver driver) -> {
+      if (samples.get() == 2) {
+        samples.incrementAndGet();
+        throw new NoSuchElementException("re-rendered");
+      }
+      return slidingPanel(1);
+    }, "WaitEngineTest.errors");
+    Assert.assertEquals(settled.getY(), 500);
+    Assert.assertEquals(samples.get(), 6);
+  }
+
+  @Test(groups = {"Unit"})
+  public void givesUpAfterTheMaximumWithTheLastSample() {
+    long start = System.nanoTime();
+    Rectangle last = engine.untilStable(null, (WebDriver driver) -> slidingPanel(1000),
+        "WaitEngineTest.moving");
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    Assert.assertEquals(last.getY(), 600 - 100 * samples.get());
+    Assert.assertTrue(elapsedMillis >= 500 && elapsedMillis < 2000, elapsedMillis + " ms");
+    Assert.assertEquals(WaitStatistics.getInstance().get("WaitEngineTest.moving").getTimeouts(),
+        1);
+  }
+}
@@ -0,0 +1,191 @@
+package com.dibtr.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Stalls the writer thread on a gate event so the producer's buffer fills up. Events record
+ * themselves when the writer formats them. The test lives in the pipeline's package because
+ * enqueue is not public.
+ */
+public class AsyncLogPipelineTest {
+  private static final AllureLogger LOGGER = new AllureLogger(AsyncLogPipelineTest.class);
+
+  private final Queue<String> written = new ConcurrentLinkedQueue<>();
+  private CountDownLatch writerStalled;
+  private CountDownLatch gateOpen;
+  private ExecutorService producer;
+  private AsyncLogPipeline pipeline;
+
+  @BeforeMethod
+  public void createProducer() {
+    written.clear();
+    writerStalled = new CountDownLatch(1);
+    gateOpen = new CountDownLatch(1);
+    producer = Executors.newSingleThreadExecutor();
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void stopPipeline() {
+    gateOpen.countDown();
+    producer.shutdownNow();
+    if (pipeline != null) {
+      pipeline.shutdown();
+      pipeline = null;
+    }
+  }
+
+  private AsyncLogPipeline.LogEvent event(AllureLogger.Level level, String name) {
+    return new AsyncLogPipeline.LogEvent(LOGGER, level, null, "{}",
+        new Object[] {new RecordedArgument(name, false)});
+  }
+
+  private void enqueue(String... names) throws Exception {
+    producer.submit(() -> {
+      for (String name : names) {
+        pipeline.enqueue(event(AllureLogger.Level.INFO, name));
+      }
+    }).get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Queues the gate event from the producer thread and waits until the writer holds it.
+   */
+  private void stallWriter() throws Exception {
+    producer.submit(() -> pipeline.enqueue(new AsyncLogPipeline.LogEvent(LOGGER,
+        AllureLogger.Level.INFO, null, "{}", new Object[] {new RecordedArgument("gate", true)})))
+        .get(5, TimeUnit.SECONDS);
+    Assert.assertTrue(writerStalled.await(5, TimeUnit.SECONDS), "writer picked up the gate");
+  }
+
+  private static void assertStillBlocked(Future<?> enqueue) throws Exception {
+    try {
+      enqueue.get(200, TimeUnit.MILLISECONDS);
+      Assert.fail("enqueue returned although the buffer is full");
+    } catch (TimeoutException e) {
+      // still waiting for room
+    }
+  }
+
+  private void flush() throws Exception {
+    producer.submit(pipeline::flush).get(5, TimeUnit.SECONDS);
+  }
+
+  @Test(groups = {"Unit"})
+  public void blockWaitsForRoomAndLosesNothing() throws Exception {
+    pipeline = new AsyncLogPipeline(4, 1, AsyncLogPipeline.OverflowPolicy.BLOCK);
+    stallWriter();
+    enqueue("e1", "e2", "e3", "e4");
+    Future<?> blocked =
+        producer.submit(() -> pipeline.enqueue(event(AllureLogger.Level.INFO, "e5")));
+    assertStillBlocked(blocked);
+
+    gateOpen.countDown();
+    blocked.get(5, TimeUnit.SECONDS);
+    flush();
+    Assert.assertEquals(new ArrayList<>(written), Arrays.asList("gate", "e1", "e2", "e3", "e4",
+        "e5"));
+    Assert.assertEquals(pipeline.getDropped(), 0);
+  }
+
+  @Test(groups = {"Unit"})
+  public void dropOldestDiscardsTheOldestQueuedEvents() throws Exception {
+    pipeline = new AsyncLogPipeline(4, 1, AsyncLogPipeline.OverflowPolicy.DROP_OLDEST);
+    stallWriter();
+    enqueue("e1", "e2", "e3", "e4", "e5", "e6");
+    Assert.assertEquals(pipeline.getDropped(), 2);
+
+    gateOpen.countDown();
+    flush();
+    Assert.assertEquals(new ArrayList<>(written), Arrays.asList("gate", "e3", "e4", "e5", "e6"));
+  }
+
+  @Test(groups = {"Unit"})
+  public void dropDebugOnlyDiscardsTraceEvents() throws Exception {
+    pipeline = new AsyncLogPipeline(4, 1, AsyncLogPipeline.OverflowPolicy.DROP_DEBUG);
+    stallWriter();
+    enqueue("e1", "e2", "e3", "e4");
+    producer.submit(() -> pipeline.enqueue(event(AllureLogger.Level.TRACE, "trace")))
+        .get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(pipeline.getDropped(), 1, "trace event dropped without waiting");
+    Future<?> blocked =
+        producer.submit(() -> pipeline.enqueue(event(AllureLogger.Level.WARN, "warning")));
+    assertStillBlocked(blocked);
+
+    gateOpen.countDown();
+    blocked.get(5, TimeUnit.SECONDS);
+    flush();
+    Assert.assertEquals(new ArrayList<>(written), Arrays.asList("gate", "e1", "e2", "e3", "e4",
+        "warning"));
+    Assert.assertEquals(pipeline.getDropped(), 1);
+  }
+
+  @Test(groups = {"Unit"})
+  public void shutdownDrainsEveryThread() throws Exception {
+    pipeline = new AsyncLogPipeline(256, 16, AsyncLogPipeline.OverflowPolicy.BLOCK);
+    stallWriter();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      String prefix = "t" + t + "-";
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 100; i++) {
+          pipeline.enqueue(event(AllureLogger.Level.INFO, prefix + i));
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join(5000);
+    }
+    Assert.assertEquals(written.size(), 0, "writer is still stalled");
+
+    gateOpen.countDown();
+    pipeline.shutdown();
+    Assert.assertEquals(written.size(), 401, "every queued event written before shutdown returns");
+    for (int t = 0; t < 4; t++) {
+      Assert.assertTrue(written.contains("t" + t + "-99"));
+    }
+  }
+
+  /**
+   * Log argument recording itself when the writer formats it. The gate holds the writer until the
+   * test opens it.
+   */
+  private final class RecordedArgument {
+    private final String name;
+    private final boolean gate;
+
+    private RecordedArgument(String name, boolean gate) {
+      this.name = name;
+      this.gate = gate;
+    }
+
+    @Override
+    public String toString() {
+      if (gate) {
+        writerStalled.countDown();
+        try {
+          gateOpen.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      written.add(name);
+      return name;
+    }
+  }
+}